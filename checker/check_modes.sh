@@ -0,0 +1,52 @@
+#!/bin/bash
+# Runs the simulation on the inputs of checker/resources/modes with every way of loading the
+# input, and checks that each one gives the expected output, or fails the expected way; then
+# checks that the steady months of a reference input do not allocate memory
+#
+# usage: checker/check_modes.sh [classpath of the jackson jars]
+# by default, the jars are taken from .idea, where the project file expects them
+
+cd "$(dirname "$0")/.." || exit 1
+JACKSON=${1:-$(ls .idea/jackson-*.jar 2>/dev/null | tr '\n' ':')}
+MODES_DIR=checker/resources/modes
+OUT=$(mktemp -d)
+trap 'rm -rf "$OUT"' EXIT
+
+javac -nowarn -d "$OUT/classes" -cp "$JACKSON" $(find src -name '*.java') || exit 1
+CP="$OUT/classes:$JACKSON"
+LOADING_MODES=("" "--streaming-input" "--parallel-input" "--databind"
+               "--databind --streaming-input")
+failures=0
+
+fail() {
+    echo "FAIL: $*"
+    failures=$((failures + 1))
+}
+
+# the sparse monthly updates come with their months in decreasing order
+for mode in "${LOADING_MODES[@]}"; do
+    if ! java -cp "$CP" Main $MODES_DIR/in/sparse_reversed.json "$OUT/out.json" $mode; then
+        fail "sparse_reversed [$mode] ended with an exception"
+    elif ! cmp -s "$OUT/out.json" $MODES_DIR/ref/sparse_reversed.json; then
+        fail "sparse_reversed [$mode] gave a different output"
+    fi
+done
+
+# the dense monthly updates end two months before the last turn
+for mode in "${LOADING_MODES[@]}"; do
+    if java -cp "$CP" Main $MODES_DIR/in/short_dense.json "$OUT/out.json" $mode \
+            2> "$OUT/err.txt"; then
+        fail "short_dense [$mode] was accepted"
+    elif ! grep -q "Missing monthly update for turn 4" "$OUT/err.txt"; then
+        fail "short_dense [$mode] failed the wrong way: $(head -n 1 "$OUT/err.txt")"
+    fi
+done
+
+# the steady months allocate nothing; the check needs the JVM to run without a JIT compiler
+if ! java -Xint -cp "$CP" Main checker/resources/in/complex_1.json "$OUT/out.json" \
+        --check-allocations 2> "$OUT/err.txt"; then
+    fail "check-allocations failed: $(head -n 1 "$OUT/err.txt")"
+fi
+
+echo "$failures failures"
+[ $failures -eq 0 ]
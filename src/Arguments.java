@@ -0,0 +1,85 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Command line arguments of the simulation: the input and output files, optionally followed
+ * by options of the form --name or --name=value
+ * <p>
+ * Only the known options are accepted, so that a misspelt one fails the run instead of being
+ * silently ignored
+ */
+final class Arguments {
+    private final String inputPath;
+    private final String outputPath;
+    private final Map<String, String> options;
+
+    /**
+     * @param args         the command line arguments
+     * @param knownOptions the names of the accepted options, including the leading dashes
+     * @throws IllegalArgumentException if an option is malformed or unknown
+     */
+    Arguments(final String[] args, final Set<String> knownOptions) {
+        inputPath = args[0];
+        outputPath = args[1];
+        options = new LinkedHashMap<>();
+
+        for (int i = 2; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Invalid option: " + arg);
+            }
+
+            int separator = arg.indexOf('=');
+            String name = separator < 0 ? arg : arg.substring(0, separator);
+            if (!knownOptions.contains(name)) {
+                throw new IllegalArgumentException("Unknown option: " + name);
+            }
+            options.put(name, separator < 0 ? "" : arg.substring(separator + 1));
+        }
+    }
+
+    /**
+     * Rejects the options that a mode of the simulation cannot honour, the same way as the
+     * unknown ones, so that they do not get silently ignored
+     *
+     * @param accepted the names of the options the mode honours, including the leading dashes
+     * @throws IllegalArgumentException if any other option was given
+     */
+    void acceptOnly(final Set<String> accepted) {
+        for (String name : options.keySet()) {
+            if (!accepted.contains(name)) {
+                throw new IllegalArgumentException("Unknown option: " + name);
+            }
+        }
+    }
+
+    String getInputPath() {
+        return inputPath;
+    }
+
+    String getOutputPath() {
+        return outputPath;
+    }
+
+    /**
+     * Checks whether or not an option was given
+     *
+     * @param name the name of the option, including the leading dashes
+     * @return true if the option is present, false otherwise
+     */
+    boolean hasOption(final String name) {
+        return options.containsKey(name);
+    }
+
+    /**
+     * Get the value of an option of the form --name=value
+     *
+     * @param name         the name of the option, including the leading dashes
+     * @param defaultValue the value used when the option is missing
+     * @return the value of the option
+     */
+    String getOption(final String name, final String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+}
@@ -1,31 +1,261 @@
-import fileio.Input;
+import business.ExecutionPlan;
+import entities.ConsumerStorage;
+import fileio.BinaryResultWriter;
+import fileio.DeltaStreamWriter;
+import fileio.ExecutionMetricsWriter;
 import fileio.InputParser;
+import fileio.OutputProjection;
 import fileio.OutputWriter;
+import fileio.SamplingReportWriter;
+import fileio.ShardedOutputWriter;
+import fileio.SimulationInput;
 import simulation.MonthlySimulation;
+import simulation.PlanCalibration;
+import simulation.SamplingEstimate;
+import simulation.ShardedSimulation;
+import simulation.TurnDeltaTracker;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 
 /**
  * Entry point to the simulation
  */
 public final class Main {
+    private static final String STREAMING_INPUT_OPTION = "--streaming-input";
+    private static final String PARALLEL_INPUT_OPTION = "--parallel-input";
+    private static final String DATABIND_OPTION = "--databind";
+    private static final String DELTA_STREAM_OPTION = "--delta-stream";
+    private static final String PROJECTION_OPTION = "--project";
+    private static final String BINARY_OUTPUT_OPTION = "--binary-output";
+    private static final String CHECK_ALLOCATIONS_OPTION = "--check-allocations";
+    private static final String OFF_HEAP_OPTION = "--off-heap";
+    private static final String PARALLEL_TRANSACTIONS_OPTION = "--parallel-transactions";
+    private static final String FAST_FORWARD_OPTION = "--fast-forward";
+    private static final String COMPRESS_CONSUMERS_OPTION = "--compress-consumers";
+    private static final String SAMPLE_OPTION = "--sample";
+    private static final String SAMPLE_EXACT_OPTION = "--sample-exact";
+    private static final String ADAPTIVE_OPTION = "--adaptive";
+    private static final String METRICS_OPTION = "--metrics";
+    private static final String SHARDS_OPTION = "--shards";
+    private static final Set<String> KNOWN_OPTIONS = Set.of(STREAMING_INPUT_OPTION,
+            PARALLEL_INPUT_OPTION, DATABIND_OPTION, DELTA_STREAM_OPTION, PROJECTION_OPTION,
+            BINARY_OUTPUT_OPTION, CHECK_ALLOCATIONS_OPTION, OFF_HEAP_OPTION,
+            PARALLEL_TRANSACTIONS_OPTION, FAST_FORWARD_OPTION, COMPRESS_CONSUMERS_OPTION,
+            SAMPLE_OPTION, SAMPLE_EXACT_OPTION, ADAPTIVE_OPTION, METRICS_OPTION, SHARDS_OPTION);
+    private static final Set<String> SHARDS_MODE_OPTIONS = Set.of(STREAMING_INPUT_OPTION,
+            PARALLEL_INPUT_OPTION, DATABIND_OPTION, PROJECTION_OPTION, SHARDS_OPTION);
+    private static final Set<String> SAMPLE_MODE_OPTIONS = Set.of(STREAMING_INPUT_OPTION,
+            PARALLEL_INPUT_OPTION, DATABIND_OPTION, PARALLEL_TRANSACTIONS_OPTION, SAMPLE_OPTION,
+            SAMPLE_EXACT_OPTION);
+    private static final int DEFAULT_WARM_UP_MONTHS = 1;
+    private static final int DEFAULT_SAMPLE_RATE = 100;
+    private static final int DEFAULT_REPLICATES = 10;
+    private static final long DEFAULT_SAMPLE_SEED = 1;
 
     private Main() {
     }
 
     /**
      * Main function which reads the input file and starts simulation
+     * <p>
+     * The input file is either JSON or in the binary columnar format written by
+     * BinaryInputConverter. With the --streaming-input option, the monthly updates of a JSON
+     * input are read one month at a time, as the simulation advances, instead of being loaded
+     * up front; binary inputs are always read this way. With the --parallel-input option, the
+     * consumers and producers of a JSON input are decoded in parallel
+     * <p>
+     * JSON is read and written with hand-written codecs; the --databind option switches back
+     * to Jackson databind
+     * <p>
+     * With the --delta-stream=file option, the changes made in every month are also written
+     * to the given file as NDJSON, while the simulation runs
+     * <p>
+     * With the --project=projection option, only the sections, entities and fields of the
+     * output selected by the projection are written (see OutputProjection). With the
+     * --binary-output option, the result is written in the binary columnar format read by
+     * BinaryResult instead of JSON
+     * <p>
+     * With the --check-allocations[=months] option, the simulation fails if one of its steady
+     * months allocates memory, after the given number of warm-up months; the check needs the
+     * JVM to run without a JIT compiler (java -Xint, see AllocationCheck)
+     * <p>
+     * With the --off-heap option, the consumers are kept in direct memory instead of the heap;
+     * with --off-heap=file, they are kept in the given memory-mapped file, which lets the
+     * population outgrow the physical memory (see ConsumerStorage)
+     * <p>
+     * With the --parallel-transactions option, the salaries and the contract payments of the
+     * consumers are split across the common fork-join pool; the result is the same as that
+     * of the sequential engine
+     * <p>
+     * With the --fast-forward option, the months in which the consumers and the distributors
+     * only receive and pay the same amounts as in the previous month are run at once, up to
+     * the next update, contract expiry or bankruptcy; the result is the same as that of
+     * simulating every month (see MonthlySimulation)
+     * <p>
+     * With the --compress-consumers option, the consumers whose state is identical are kept
+     * and simulated as a single weighted row, which is split only when their states diverge;
+     * the result is still written for every consumer, the same as without the option (see
+     * ConsumerStore)
+     * <p>
+     * With the --sample[=rate[,replicates[,seed]]] option, the simulation is approximate: it
+     * is run for every replicate over a stratified sample of one consumer in every rate, each
+     * standing for the consumers that were not drawn, and a report of the estimated outcomes of
+     * the distributors, with their confidence bounds, is written instead of the result (see
+     * SamplingEstimate); with the --sample-exact option, the exact simulation is run as well
+     * and the report compares the estimates with its outcomes. Only the input options and
+     * --parallel-transactions apply, the others fail the run the same way as an unknown option
+     * <p>
+     * With the --adaptive[=file] option, every run of the salaries, the payments of the
+     * consumers and of the distributors, the selection of the producers and the writing of the
+     * output chooses, from the live number of consumers, distributors and distributors whose
+     * producers changed, whether it is worth running on the common fork-join pool; the
+     * thresholds are calibrated by micro-benchmarks on the first run and kept in the given
+     * file, by default next to the output file (see PlanCalibration). With the --metrics=file
+     * option, which implies --adaptive, the plan and its choices are written to the given file
+     * <p>
+     * With the --shards[=count] option, the consumers are split across the given number of
+     * worker processes, by default one for every processor, which run their transactions while
+     * the main process keeps the distributors and the producers (see ShardedSimulation); the
+     * result is the same. Only the input options and the output projection apply, the others
+     * fail the run the same way as an unknown option; with --databind, only the input is read
+     * with Jackson databind
+     *
+     * <p>
+     * An unknown option fails the run
      *
-     * @param args input and output files
+     * @param args input and output files, followed by options
      * @throws Exception might error when reading/writing/opening files, parsing JSON
      */
     public static void main(final String[] args) throws Exception {
-        InputParser inputParser = new InputParser(args[0]);
-        Input input = inputParser.loadInput();
+        Arguments arguments = new Arguments(args, KNOWN_OPTIONS);
+        boolean databind = arguments.hasOption(DATABIND_OPTION);
+        InputParser inputParser = new InputParser(arguments.getInputPath(), databind);
+        OutputProjection projection = arguments.hasOption(PROJECTION_OPTION)
+                ? OutputProjection.parse(arguments.getOption(PROJECTION_OPTION, ""))
+                : OutputProjection.all();
+
+        if (arguments.hasOption(SAMPLE_OPTION)) {
+            arguments.acceptOnly(SAMPLE_MODE_OPTIONS);
+            SamplingEstimate estimate = samplingEstimateOf(arguments, inputParser);
+            new SamplingReportWriter(arguments.getOutputPath())
+                    .writeReport(estimate, estimate.run());
+            return;
+        }
+        if (arguments.hasOption(SHARDS_OPTION)) {
+            arguments.acceptOnly(SHARDS_MODE_OPTIONS);
+            runSharded(arguments, inputParser, projection);
+            return;
+        }
+
+        ExecutionPlan plan = executionPlanOf(arguments);
+        MonthlySimulation simulation;
+        try (SimulationInput input = inputParser.openInput(loadingModeOf(arguments));
+             DeltaStreamWriter deltaWriter = arguments.hasOption(DELTA_STREAM_OPTION)
+                     ? new DeltaStreamWriter(arguments.getOption(DELTA_STREAM_OPTION, ""))
+                     : null) {
+            simulation = new MonthlySimulation(input, consumerStorageOf(arguments),
+                    arguments.hasOption(COMPRESS_CONSUMERS_OPTION));
+            if (arguments.hasOption(PARALLEL_TRANSACTIONS_OPTION)) {
+                simulation.runTransactionsIn(ForkJoinPool.commonPool());
+            }
+            if (plan != null) {
+                simulation.adaptExecution(ForkJoinPool.commonPool(), plan);
+            }
+            if (arguments.hasOption(FAST_FORWARD_OPTION)) {
+                simulation.fastForwardQuiescentMonths();
+            }
+            if (deltaWriter != null) {
+                simulation.addTurnListener(new TurnDeltaTracker(deltaWriter));
+            }
+            if (arguments.hasOption(CHECK_ALLOCATIONS_OPTION)) {
+                String warmUpMonths = arguments.getOption(CHECK_ALLOCATIONS_OPTION, "");
+                simulation.checkAllocations(warmUpMonths.isEmpty()
+                        ? DEFAULT_WARM_UP_MONTHS : Integer.parseInt(warmUpMonths));
+            }
+            simulation.start();
+        }
+
+        if (arguments.hasOption(BINARY_OUTPUT_OPTION)) {
+            new BinaryResultWriter(arguments.getOutputPath()).writeResult(simulation.getDatabase());
+        } else {
+            OutputWriter outputWriter =
+                    new OutputWriter(arguments.getOutputPath(), databind, projection);
+            if (plan != null) {
+                outputWriter.encodeIn(ForkJoinPool.commonPool(), plan);
+            }
+            outputWriter.writeOutput(simulation.getDatabase());
+        }
+
+        if (arguments.hasOption(METRICS_OPTION)) {
+            new ExecutionMetricsWriter(arguments.getOption(METRICS_OPTION, ""))
+                    .writeMetrics(plan);
+        }
+    }
+
+    private static void runSharded(final Arguments arguments, final InputParser inputParser,
+                                   final OutputProjection projection) throws IOException {
+        String count = arguments.getOption(SHARDS_OPTION, "");
+        int shards = count.isEmpty()
+                ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(count);
+        try (SimulationInput input = inputParser.openInput(loadingModeOf(arguments));
+             ShardedSimulation simulation = new ShardedSimulation(input, shards)) {
+            simulation.start();
+            new ShardedOutputWriter(arguments.getOutputPath(), projection)
+                    .writeOutput(simulation.getDatabase(), simulation.getChannels());
+        }
+    }
 
-        MonthlySimulation simulation = new MonthlySimulation(input);
-        simulation.start();
+    private static ExecutionPlan executionPlanOf(final Arguments arguments) throws IOException {
+        if (!arguments.hasOption(ADAPTIVE_OPTION) && !arguments.hasOption(METRICS_OPTION)) {
+            return null;
+        }
+
+        String calibrationFile = arguments.getOption(ADAPTIVE_OPTION, "");
+        if (calibrationFile.isEmpty()) {
+            calibrationFile = PlanCalibration.defaultPath(arguments.getOutputPath());
+        }
+        return PlanCalibration.loadOrMeasure(calibrationFile, ForkJoinPool.commonPool());
+    }
+
+    private static ConsumerStorage consumerStorageOf(final Arguments arguments)
+            throws IOException {
+        if (!arguments.hasOption(OFF_HEAP_OPTION)) {
+            return ConsumerStorage.onHeap();
+        }
+
+        String spillFile = arguments.getOption(OFF_HEAP_OPTION, "");
+        return spillFile.isEmpty() ? ConsumerStorage.offHeap() : ConsumerStorage.mapped(spillFile);
+    }
+
+    private static SamplingEstimate samplingEstimateOf(final Arguments arguments,
+                                                       final InputParser inputParser) {
+        String[] values = arguments.getOption(SAMPLE_OPTION, "").split(",");
+        int sampleRate = values[0].isEmpty() ? DEFAULT_SAMPLE_RATE : Integer.parseInt(values[0]);
+        int replicates = values.length > 1 ? Integer.parseInt(values[1]) : DEFAULT_REPLICATES;
+        long seed = values.length > 2 ? Long.parseLong(values[2]) : DEFAULT_SAMPLE_SEED;
+
+        InputParser.LoadingMode loadingMode = loadingModeOf(arguments);
+        SamplingEstimate estimate = new SamplingEstimate(
+                () -> inputParser.openInput(loadingMode), sampleRate, replicates, seed);
+        if (arguments.hasOption(PARALLEL_TRANSACTIONS_OPTION)) {
+            estimate.runTransactionsIn(ForkJoinPool.commonPool());
+        }
+        if (arguments.hasOption(SAMPLE_EXACT_OPTION)) {
+            estimate.compareWithExact();
+        }
+        return estimate;
+    }
 
-        OutputWriter outputWriter = new OutputWriter(args[1]);
-        outputWriter.writeOutput(simulation.getDatabase());
+    private static InputParser.LoadingMode loadingModeOf(final Arguments arguments) {
+        if (arguments.hasOption(STREAMING_INPUT_OPTION)) {
+            return InputParser.LoadingMode.STREAMING;
+        }
+        if (arguments.hasOption(PARALLEL_INPUT_OPTION)) {
+            return InputParser.LoadingMode.PARALLEL;
+        }
+        return InputParser.LoadingMode.WHOLE;
     }
 }
@@ -0,0 +1,54 @@
+package business;
+
+import entities.ConsumerStore;
+
+/**
+ * A stage of a month that works on every consumer that is not bankrupt, one row at a time
+ * <p>
+ * The stages run over blocks of consecutive active rows (see Transactions.runConsumerStages),
+ * and a stage only touches the rows of the block it is given, apart from the state it keeps
+ * for every chunk of rows, which it merges once all the rows were visited. The stages fused
+ * into the same pass visit every block one after the other, so a stage sees the rows of its
+ * block as the previous stages left them, but cannot rely on any other row being visited yet
+ */
+public interface ConsumerStage {
+    /**
+     * Prepares the stage for a pass over the consumers, on the calling thread
+     *
+     * @param consumers the store of consumers
+     * @param chunks    the number of chunks the rows are split in
+     */
+    default void begin(ConsumerStore consumers, int chunks) {
+    }
+
+    /**
+     * Runs the stage over a block of consecutive rows, all of them in the same chunk
+     *
+     * @param consumers the store of consumers
+     * @param chunk     the chunk of the rows
+     * @param from      the first row
+     * @param to        the row after the last one
+     */
+    void run(ConsumerStore consumers, int chunk, int from, int to);
+
+    /**
+     * Ends the pass over the consumers, on the calling thread, once all the rows were visited;
+     * the state kept for every chunk is merged here, in the order of the chunks
+     *
+     * @param consumers the store of consumers
+     */
+    default void end(ConsumerStore consumers) {
+    }
+
+    /**
+     * Checks whether or not the stage has to visit the rows in increasing order, on a single
+     * thread, because it changes state shared by the rows (like the contracts of the
+     * distributors)
+     *
+     * @return true if the rows have to be visited in order, false if the chunks may run in
+     *         parallel
+     */
+    default boolean isOrdered() {
+        return false;
+    }
+}
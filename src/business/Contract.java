@@ -1,48 +1,50 @@
 package business;
 
 import entities.Consumer;
+import entities.ConsumerStore;
 import entities.Distributor;
 
 /**
  * Class for modeling a contract between a consumer and a distributor
+ * <p>
+ * A contract is a view of the row of its consumer in a ConsumerStore, where the price and
+ * the remaining months of the contract are kept; like the view of the consumer, it refers to
+ * the consumer by its index in the store
  */
 public final class Contract {
-    private final Consumer consumer;
+    private final ConsumerStore store;
+    private final int consumer;
     private final Distributor distributor;
-    private final Integer price;
-    private Integer remainedContractMonths;
 
-    public Contract(final Consumer consumer,
-                    final Distributor distributor,
-                    final Integer remainedContractMonths,
-                    final Integer price) {
+    public Contract(final ConsumerStore store,
+                    final int consumer,
+                    final Distributor distributor) {
+        this.store = store;
         this.consumer = consumer;
         this.distributor = distributor;
-        this.remainedContractMonths = remainedContractMonths;
-        this.price = price;
     }
 
     public Consumer getConsumer() {
-        return consumer;
+        return store.getConsumer(consumer);
     }
 
     public Distributor getDistributor() {
         return distributor;
     }
 
-    public Integer getPrice() {
-        return price;
+    public int getPrice() {
+        return store.getContractPrice(store.getConsumerRow(consumer));
     }
 
-    public Integer getRemainedContractMonths() {
-        return remainedContractMonths;
+    public int getRemainedContractMonths() {
+        return store.getRemainedContractMonths(store.getConsumerRow(consumer));
     }
 
     /**
      * Decreases number of remaining months in the contract
      */
     public void decreaseRemainedContractMonths() {
-        remainedContractMonths--;
+        store.decreaseRemainedContractMonths(store.separate(consumer));
     }
 
     /**
@@ -50,7 +52,7 @@ public final class Contract {
      *
      * @return true if the remaining contract months are 0, false otherwise
      */
-    public Boolean ended() {
-        return remainedContractMonths.equals(0);
+    public boolean ended() {
+        return store.hasContractEnded(store.getConsumerRow(consumer));
     }
 }
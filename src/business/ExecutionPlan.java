@@ -0,0 +1,178 @@
+package business;
+
+/**
+ * Chooses, for every run of a phase of the simulation, whether it runs sequentially or in
+ * parallel, from the live size of its work and from costs calibrated on the machine (see
+ * simulation.PlanCalibration)
+ * <p>
+ * Every phase has a cost per unit of work (a consumer row, a distributor, a producer ranked for
+ * a distributor, an output record), and running a phase in parallel has a fixed overhead, that
+ * of handing chunks to the pool and waiting for them. A run is parallel when the time it saves,
+ * spread over the threads of the pool, is larger than the overhead; the tiny simulations then
+ * stay sequential, while the large ones use every core
+ * <p>
+ * The plan also counts its choices, by phase, for the metrics of the simulation; counting
+ * allocates nothing, so the plan may be asked every month
+ */
+public final class ExecutionPlan {
+    private static final int PHASES = Phase.values().length;
+
+    private final int parallelism;
+    private final double overheadNanos;
+    private final double[] unitCostNanos;
+    private final boolean measured;
+    private final long[] sequentialRuns;
+    private final long[] parallelRuns;
+    private final long[] lastWork;
+    private final boolean[] lastParallel;
+
+    /**
+     * @param parallelism   the number of threads of the pool the parallel phases run on
+     * @param overheadNanos the time it takes to run a parallel phase that has no work
+     * @param unitCostNanos the time a unit of work of every phase takes, by the ordinal of
+     *                      the phases
+     * @param measured      whether the costs were measured by this run, or loaded
+     */
+    public ExecutionPlan(final int parallelism, final double overheadNanos,
+                         final double[] unitCostNanos, final boolean measured) {
+        this.parallelism = parallelism;
+        this.overheadNanos = overheadNanos;
+        this.unitCostNanos = unitCostNanos.clone();
+        this.measured = measured;
+        sequentialRuns = new long[PHASES];
+        parallelRuns = new long[PHASES];
+        lastWork = new long[PHASES];
+        lastParallel = new boolean[PHASES];
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public double getOverheadNanos() {
+        return overheadNanos;
+    }
+
+    /**
+     * Checks whether the costs of the plan were measured by this run, or loaded from the
+     * calibration of a previous one
+     */
+    public boolean isMeasured() {
+        return measured;
+    }
+
+    /**
+     * Get the time a unit of work of the phase takes, in nanoseconds
+     */
+    public double getUnitCostNanos(final Phase phase) {
+        return unitCostNanos[phase.ordinal()];
+    }
+
+    /**
+     * Get the least work for which a run of the phase is parallel
+     *
+     * @return the work, or Long.MAX_VALUE if the phase is always sequential
+     */
+    public long getThreshold(final Phase phase) {
+        double saving = getUnitCostNanos(phase) * (1 - 1.0 / parallelism);
+        if (saving <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return (long) Math.min(Math.floor(overheadNanos / saving) + 1, Long.MAX_VALUE);
+    }
+
+    /**
+     * Chooses how a run of a phase executes, and counts the choice
+     *
+     * @param phase the phase
+     * @param work  the units of work of the run
+     * @return true if the run is parallel, false if it is sequential
+     */
+    public boolean choose(final Phase phase, final long work) {
+        boolean parallel = isWorthParallel(work, getUnitCostNanos(phase));
+        record(phase, work, parallel);
+        return parallel;
+    }
+
+    /**
+     * Checks whether a run of the given cost per unit of work saves more than the overhead of
+     * running it in parallel; used for runs of several phases fused together, whose costs add
+     * up, which then record their choice for every phase
+     *
+     * @param work          the units of work of the run
+     * @param unitCostNanos the time a unit of work takes
+     * @return true if the run should be parallel
+     */
+    public boolean isWorthParallel(final long work, final double unitCostNanos) {
+        return parallelism > 1 && work * unitCostNanos * (1 - 1.0 / parallelism) > overheadNanos;
+    }
+
+    /**
+     * Counts the choice made for a run of a phase
+     */
+    public void record(final Phase phase, final long work, final boolean parallel) {
+        int index = phase.ordinal();
+        if (parallel) {
+            parallelRuns[index]++;
+        } else {
+            sequentialRuns[index]++;
+        }
+        lastWork[index] = work;
+        lastParallel[index] = parallel;
+    }
+
+    /**
+     * Get the number of runs of the phase that were sequential
+     */
+    public long getSequentialRuns(final Phase phase) {
+        return sequentialRuns[phase.ordinal()];
+    }
+
+    /**
+     * Get the number of runs of the phase that were parallel
+     */
+    public long getParallelRuns(final Phase phase) {
+        return parallelRuns[phase.ordinal()];
+    }
+
+    /**
+     * Get the work of the last run of a phase
+     */
+    public long getLastWork(final Phase phase) {
+        return lastWork[phase.ordinal()];
+    }
+
+    /**
+     * Checks whether the last run of a phase was parallel
+     */
+    public boolean wasLastParallel(final Phase phase) {
+        return lastParallel[phase.ordinal()];
+    }
+
+    /**
+     * The phases whose execution the plan chooses, with the unit their work is counted in
+     */
+    public enum Phase {
+        /**
+         * The consumers receive their incomes; a unit is a row of the consumer store
+         */
+        SALARIES,
+        /**
+         * The consumers pay their contracts; a unit is a row of the consumer store
+         */
+        PAYMENTS,
+        /**
+         * The distributors pay their costs; a unit is a distributor
+         */
+        DISTRIBUTOR_PAYMENTS,
+        /**
+         * The distributors whose producers changed rank the producers again; a unit is a
+         * producer ranked for a distributor
+         */
+        PRODUCER_SELECTION,
+        /**
+         * The result is written; a unit is a consumer or a contract
+         */
+        OUTPUT
+    }
+}
@@ -5,8 +5,13 @@ import entities.Consumer;
 import entities.Distributor;
 import entities.Producer;
 
+import java.util.List;
+
 /**
  * Helper class that is used for computing different formulas
+ * <p>
+ * All the formulas work on primitives, so they can be applied every month without
+ * allocating
  */
 public final class Formulas {
 
@@ -20,7 +25,7 @@ public final class Formulas {
      * @param contractPrice the price of the customer's contract
      * @return the sum that the customer will have to pay the following month
      */
-    public static Integer computeDuePayment(final Integer contractPrice) {
+    public static int computeDuePayment(final int contractPrice) {
         return Math.toIntExact(
                 Math.round(Math.floor(Constants.ADDITIONAL_PAYMENT_RATIO * contractPrice))
         );
@@ -28,11 +33,15 @@ public final class Formulas {
 
     /**
      * Computes the price the distributor has to pay at the end of the month
+     * <p>
+     * The number of consumers of the distributor counts every consumer of a compressed store
+     * or of a weighted sample once for every consumer of the population it stands for (see
+     * ConsumerStore.getMultiplicity), as does the price of its contracts
      *
      * @param distributor the distributor that pays
      * @return the price to pay
      */
-    public static Integer computeDistributorPayment(final Distributor distributor) {
+    public static int computeDistributorPayment(final Distributor distributor) {
         Distributor.Costs costs = distributor.getCosts();
         return costs.getInfrastructureCost()
                 + costs.getProductionCost() * distributor.getNumberOfConsumers();
@@ -45,7 +54,7 @@ public final class Formulas {
      * @param value  the value to change the budget by; can be positive or negative
      * @return the new budget
      */
-    public static Integer computeNewBudgetOf(final BusinessEntity entity, final Integer value) {
+    public static int computeNewBudgetOf(final BusinessEntity entity, final int value) {
         return entity.getBudget() + value;
     }
 
@@ -57,7 +66,7 @@ public final class Formulas {
      * @param consumer the consumer whose payment cost is computed
      * @return the sum the consumer has to pay
      */
-    public static Integer getTotalConsumerCost(final Consumer consumer) {
+    public static int getTotalConsumerCost(final Consumer consumer) {
         return consumer.getContract().getPrice() + consumer.getDebt().getDuePayment();
     }
 
@@ -67,11 +76,11 @@ public final class Formulas {
      * @param distributor the distributor whose contract price is computed
      * @return the price of the contract
      */
-    public static Integer computePriceOfContract(final Distributor distributor) {
-        Integer profit = computeProfit(distributor);
+    public static int computePriceOfContract(final Distributor distributor) {
+        int profit = computeProfit(distributor);
         Distributor.Costs costs = distributor.getCosts();
 
-        if (distributor.getNumberOfConsumers().equals(0)) {
+        if (distributor.getNumberOfConsumers() == 0) {
             return costs.getInfrastructureCost()
                     + costs.getProductionCost()
                     + profit;
@@ -79,7 +88,7 @@ public final class Formulas {
 
         return Math.toIntExact(
                 Math.round(Math.floor(
-                        costs.getInfrastructureCost().floatValue()
+                        (float) costs.getInfrastructureCost()
                                 / distributor.getNumberOfConsumers()
                                 + costs.getProductionCost()
                                 + profit
@@ -93,7 +102,7 @@ public final class Formulas {
      * @param distributor the distributor's profit to compute
      * @return the value of the profit
      */
-    public static Integer computeProfit(final Distributor distributor) {
+    public static int computeProfit(final Distributor distributor) {
         return Math.toIntExact(
                 Math.round(Math.floor(Constants.PROFIT_RATIO
                         * distributor.getCosts().getProductionCost()))
@@ -106,20 +115,49 @@ public final class Formulas {
      * @param distributor the distributor to compute the cost for
      * @return the production cost
      */
-    public static Integer computeProductionCost(final Distributor distributor) {
+    public static int computeProductionCost(final Distributor distributor) {
+        List<Producer> producers = distributor.getProducersInfo().getProducers();
         double cost = 0.0;
-        for (Producer producer : distributor.getProducersInfo().getProducers()) {
-            Producer.EnergyInfo energyInfo = producer.getEnergyInfo();
+        for (int i = 0; i < producers.size(); i++) {
+            Producer.EnergyInfo energyInfo = producers.get(i).getEnergyInfo();
             cost += energyInfo.getEnergyPerDistributor() * energyInfo.getPriceKW();
         }
 
         return Math.toIntExact(Math.round(Math.floor(cost * Constants.PRODUCTION_COST_RATIO)));
     }
 
+    /**
+     * Computes for how many months a value that changes by the same step every month stays
+     * within the given bounds, counting from the month after the current one
+     *
+     * @param start the current value
+     * @param step  the change of the value in every month
+     * @param lower the lowest value allowed
+     * @param upper the highest value allowed
+     * @return the number of months, at most Integer.MAX_VALUE, or 0 if the value leaves the
+     *         bounds in the very next month
+     */
+    public static int monthsWithin(final long start, final long step, final long lower,
+                                   final long upper) {
+        if (start + step < lower || start + step > upper) {
+            return 0;
+        }
+
+        long months;
+        if (step > 0) {
+            months = (upper - start) / step;
+        } else if (step < 0) {
+            months = (start - lower) / -step;
+        } else {
+            months = Integer.MAX_VALUE;
+        }
+        return (int) Math.min(months, Integer.MAX_VALUE);
+    }
+
     private static final class Constants {
-        static final Double ADDITIONAL_PAYMENT_RATIO = 1.2;
-        static final Double PROFIT_RATIO = 0.2;
-        static final Double PRODUCTION_COST_RATIO = 0.1;
+        static final double ADDITIONAL_PAYMENT_RATIO = 1.2;
+        static final double PROFIT_RATIO = 0.2;
+        static final double PRODUCTION_COST_RATIO = 0.1;
 
         private Constants() {
         }
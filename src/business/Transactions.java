@@ -1,23 +1,130 @@
 package business;
 
-import entities.Consumer;
+import entities.ConsumerStore;
 import entities.Distributor;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
+/**
+ * The transactions of a month; the consumer side runs straight over the rows of the consumers
+ * of the store that are not bankrupt
+ * <p>
+ * Transactions only keep scratch arrays between calls, so a single instance is reused for
+ * every month of a simulation; none of the phases of the sequential engine allocates, unless
+ * the population grows. The bulk of the consumer side runs as kernels of the consumer store,
+ * which are branch-free loops over the columns when the consumers are kept on the heap
+ * <p>
+ * The salaries and the payments of the consumers are also stages (see ConsumerStage), which
+ * runConsumerStages fuses with other stages into a single pass over blocks of rows, such as
+ * the signing of the contracts in the rounds of MonthPipeline
+ * <p>
+ * A row of a compressed store stands for all the consumers that share it, so its payments are
+ * credited once for every one of them (see ConsumerStore.getMultiplicity)
+ * <p>
+ * In the parallel engine, the consumer side is split in chunks of consecutive rows that run
+ * on a fork-join pool. Every consumer only touches its own row, apart from the payments made
+ * to distributors, so every chunk adds the payments it makes into its own array of credits,
+ * one per distributor. Once all chunks are done, the credits are added to the budgets of the
+ * distributors in the order of the chunks; since the budgets only change by integer sums
+ * in this phase, they end up exactly as in the sequential engine, whatever the number of
+ * threads. The consumers that go bankrupt are collected the same way, and recorded as events of
+ * the consumer store in the order of the chunks, which is the order of the rows; the store then
+ * drops them from the active rows the transactions run over. The payments of the distributors
+ * depend on each other through the contracts they remove, so they are always made in order;
+ * only their costs, which do not, may be computed on the pool beforehand
+ * <p>
+ * Given an execution plan, the parallel engine chooses for every pass, from the number of
+ * active rows (or of distributors, for their payments), whether it is worth running on the
+ * pool at all; the passes too small to pay for the overhead of the pool run sequentially
+ */
 public final class Transactions {
+    private static final int MIN_CHUNK_ROWS = 1 << 14;
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int BLOCK_ROWS = 1 << 12;
+
+    private final ForkJoinPool pool;
+    private final ExecutionPlan plan;
+    private final ConsumerStage salariesStage;
+    private final ConsumerStage paymentsStage;
+    private final ConsumerStage[] salariesStages;
+    private final ConsumerStage[] paymentsStages;
+    private int[][] chunkCredits;
+    private int[] paid;
+    private int[] bankruptRows;
+    private int[] chunkBankruptcies;
+    private long[] revenues;
+    private int[] distributorCosts;
+
+    /**
+     * Creates the sequential engine, which runs every phase on the calling thread
+     */
+    public Transactions() {
+        this(null);
+    }
+
+    /**
+     * Creates the parallel engine
+     *
+     * @param pool the pool the chunks of consumers run on, or null for the sequential engine
+     */
+    public Transactions(final ForkJoinPool pool) {
+        this(pool, null);
+    }
+
+    /**
+     * Creates the parallel engine, which runs on the pool only the passes the plan chooses to
+     *
+     * @param pool          the pool the chunks of consumers run on
+     * @param executionPlan the plan that chooses how every pass runs, or null to run every
+     *                      pass large enough on the pool
+     */
+    public Transactions(final ForkJoinPool pool, final ExecutionPlan executionPlan) {
+        this.pool = pool;
+        plan = executionPlan;
+        chunkCredits = new int[0][];
+        paid = new int[0];
+        bankruptRows = new int[0];
+        chunkBankruptcies = new int[0];
+        revenues = new long[0];
+        distributorCosts = new int[0];
+        salariesStage = new SalariesStage();
+        paymentsStage = new PaymentsStage();
+        salariesStages = new ConsumerStage[] {salariesStage};
+        paymentsStages = new ConsumerStage[] {paymentsStage};
+    }
+
+    /**
+     * Get the stage that adds the monthly incomes to the budgets of the consumers
+     */
+    public ConsumerStage getSalariesStage() {
+        return salariesStage;
+    }
+
+    /**
+     * Get the stage in which the consumers pay their contracts (see payContracts)
+     */
+    public ConsumerStage getPaymentsStage() {
+        return paymentsStage;
+    }
+
+    /**
+     * Checks whether or not the chunks of consumers may run in parallel; they never do when
+     * the plan only has a single thread
+     */
+    public boolean isParallel() {
+        return pool != null && (plan == null || plan.getParallelism() > 1);
+    }
+
     /**
      * Add monthly incomes to non-bankrupt consumers
      *
-     * @param consumers the list of consumers to add salaries to
+     * @param consumers the store of consumers to add salaries to
      */
-    public void addSalaries(List<Consumer> consumers) {
-        for (Consumer consumer : consumers) {
-            if (consumer.getBankrupt()) {
-                continue;
-            }
-            consumer.setBudget(Formulas.computeNewBudgetOf(consumer, consumer.getMonthlyIncome()));
-        }
+    public void addSalaries(ConsumerStore consumers) {
+        runConsumerStages(consumers, salariesStages);
     }
 
     /**
@@ -27,63 +134,197 @@ public final class Transactions {
      * A consumer should pay their whole bill (current month contract price and overdue payment,
      * if applicable) and if they cannot, they will try to postpone the payment for a month.
      *
-     * @param consumers the list of current consumers
+     * @param consumers the store of current consumers
      */
-    public void payContracts(List<Consumer> consumers) {
-        for (Consumer consumer : consumers) {
-            if (consumer.getBankrupt()) {
-                continue;
+    public void payContracts(ConsumerStore consumers) {
+        runConsumerStages(consumers, paymentsStages);
+    }
+
+    /**
+     * Runs the given stages fused into a single pass over the consumers that are not bankrupt
+     * <p>
+     * The active rows are split in chunks, which run on the pool in the parallel engine, unless
+     * one of the stages is ordered; every chunk goes over its active rows in blocks of at most
+     * BLOCK_ROWS rows, and runs every stage, in order, over a block before moving on to the
+     * next one, so the columns of a block are still in the cache for the later stages. The
+     * stages begin before the pass and end after it, in order
+     *
+     * @param consumers the store of consumers
+     * @param stages    the stages, in the order they run over every block
+     */
+    public void runConsumerStages(final ConsumerStore consumers, final ConsumerStage[] stages) {
+        boolean ordered = false;
+        for (ConsumerStage stage : stages) {
+            ordered |= stage.isOrdered();
+        }
+        int chunks = numberOfChunks(consumers.size(), stages, ordered);
+
+        for (ConsumerStage stage : stages) {
+            stage.begin(consumers, chunks);
+        }
+        if (chunks == 1) {
+            runBlocks(consumers, stages, 0, 0, consumers.size());
+        } else {
+            runInChunks(consumers.size(), chunks, (chunk, from, to) ->
+                    runBlocks(consumers, stages, chunk, from, to));
+        }
+        for (ConsumerStage stage : stages) {
+            stage.end(consumers);
+        }
+    }
+
+    private static void runBlocks(final ConsumerStore consumers, final ConsumerStage[] stages,
+                                  final int chunk, final int from, final int to) {
+        for (int span = consumers.findActiveSpan(from); span < consumers.getActiveSpans();
+             span++) {
+            int start = Math.max(from, consumers.getActiveSpanStart(span));
+            if (start >= to) {
+                return;
             }
+            int end = Math.min(to, consumers.getActiveSpanEnd(span));
 
-            Integer totalCost = Formulas.getTotalConsumerCost(consumer);
-            Distributor distributor = consumer.getContract().getDistributor();
-
-            if (consumer.getBudget() < totalCost) {
-                tryPostponing(consumer);
-            } else {
-                consumer.setBudget(Formulas.computeNewBudgetOf(consumer, -totalCost));
-                distributor.setBudget(Formulas
-                        .computeNewBudgetOf(distributor, consumer.getContract().getPrice()));
-                if (consumer.hasDuePayment()) {
-                    Distributor distributorOwed = consumer.getDebt().getDistributorOwed();
-                    distributorOwed.setBudget(Formulas
-                            .computeNewBudgetOf(distributorOwed,
-                                    consumer.getDebt().getDuePayment()));
-                    consumer.removeDebt();
+            for (int block = start; block < end; block += BLOCK_ROWS) {
+                int blockEnd = Math.min(end, block + BLOCK_ROWS);
+                for (ConsumerStage stage : stages) {
+                    stage.run(consumers, chunk, block, blockEnd);
                 }
             }
+        }
+    }
+
+    /**
+     * Makes a consumer that cannot pay its bill postpone the payment, if it can
+     *
+     * @return true if the consumer went bankrupt, false if it postponed the payment
+     */
+    private boolean postponeOrGoBankrupt(final ConsumerStore consumers, final int row,
+                                         final int[] credits) {
+        int contractDistributor = consumers.getContractDistributor(row);
+        int contractPrice = consumers.getContractPrice(row);
+
+        if (consumers.getDuePayment(row) == 0) {
+            consumers.postponePayment(row, Formulas.computeDuePayment(contractPrice),
+                    contractDistributor);
+            return false;
+        }
+
+        int duePayment = consumers.getDuePayment(row);
+        int distributorOwed = consumers.getDistributorOwed(row);
+
+        if (contractDistributor != distributorOwed) {
+            if (consumers.getBudget(row) < duePayment) {
+                consumers.setBankrupt(row, true);
+                return true;
+            }
+
+            consumers.setBudget(row, consumers.getBudget(row) - duePayment);
+            credits[distributorOwed] += duePayment * consumers.getMultiplicity(row);
 
-            consumer.getContract().decreaseRemainedContractMonths();
+            consumers.postponePayment(row, Formulas.computeDuePayment(contractPrice),
+                    contractDistributor);
+            return false;
         }
+
+        consumers.setBankrupt(row, true);
+        return true;
     }
 
-    private void tryPostponing(final Consumer consumer) {
-        if (!consumer.hasDuePayment()) {
-            Integer contractPrice = consumer.getContract().getPrice();
-            Integer duePayment = Formulas.computeDuePayment(contractPrice);
-            consumer.postponePayment(duePayment, consumer.getContract().getDistributor());
-            return;
+    /**
+     * Adds the credits of a chunk to the budgets of the distributors and clears them
+     */
+    private void applyCredits(final ConsumerStore consumers, final int[] credits) {
+        for (int i = 0; i < credits.length; i++) {
+            if (credits[i] == 0) {
+                continue;
+            }
+            Distributor distributor = consumers.getDistributor(i);
+            distributor.setBudget(Formulas.computeNewBudgetOf(distributor, credits[i]));
+            credits[i] = 0;
         }
+    }
 
-        Integer duePayment = consumer.getDebt().getDuePayment();
-        Distributor distributorOwed = consumer.getDebt().getDistributorOwed();
+    /**
+     * Get the credit arrays of the given number of chunks, reusing those of the previous months
+     */
+    private int[][] creditsOf(final int chunks, final int distributors) {
+        if (chunkCredits.length < chunks
+                || chunkCredits.length > 0 && chunkCredits[0].length != distributors) {
+            chunkCredits = new int[chunks][distributors];
+        }
+        return chunkCredits;
+    }
 
-        if (!consumer.getContract().getDistributor().equals(distributorOwed)) {
-            if (consumer.getBudget() < duePayment) {
-                consumer.setBankrupt(true);
-                return;
+    private int numberOfChunks(final int rows, final ConsumerStage[] stages,
+                               final boolean ordered) {
+        if (pool == null) {
+            return 1;
+        }
+        if (plan != null) {
+            return choosePass(rows, stages, ordered)
+                    ? Math.max(Math.min(rows, pool.getParallelism() * CHUNKS_PER_THREAD), 1) : 1;
+        }
+        if (ordered) {
+            return 1;
+        }
+        int chunks = Math.min((rows + MIN_CHUNK_ROWS - 1) / MIN_CHUNK_ROWS,
+                pool.getParallelism() * CHUNKS_PER_THREAD);
+        return Math.max(chunks, 1);
+    }
+
+    /**
+     * Asks the plan whether a pass over the given rows runs on the pool; the costs of the
+     * stages fused in the pass add up, and the choice is recorded for the phase of each
+     */
+    private boolean choosePass(final int rows, final ConsumerStage[] stages,
+                               final boolean ordered) {
+        double unitCost = 0;
+        for (ConsumerStage stage : stages) {
+            ExecutionPlan.Phase phase = phaseOf(stage);
+            if (phase != null) {
+                unitCost += plan.getUnitCostNanos(phase);
             }
+        }
 
-            consumer.setBudget(Formulas.computeNewBudgetOf(consumer, -duePayment));
-            distributorOwed.setBudget(Formulas.computeNewBudgetOf(distributorOwed, duePayment));
+        boolean parallel = !ordered && plan.isWorthParallel(rows, unitCost);
+        for (ConsumerStage stage : stages) {
+            ExecutionPlan.Phase phase = phaseOf(stage);
+            if (phase != null) {
+                plan.record(phase, rows, parallel);
+            }
+        }
+        return parallel;
+    }
 
-            consumer.postponePayment(
-                    Formulas.computeDuePayment(consumer.getContract().getPrice()),
-                    consumer.getContract().getDistributor());
-            return;
+    private ExecutionPlan.Phase phaseOf(final ConsumerStage stage) {
+        if (stage == salariesStage) {
+            return ExecutionPlan.Phase.SALARIES;
         }
+        if (stage == paymentsStage) {
+            return ExecutionPlan.Phase.PAYMENTS;
+        }
+        return null;
+    }
 
-        consumer.setBankrupt(true);
+    private static int chunkStart(final int rows, final int chunk, final int chunks) {
+        return (int) ((long) rows * chunk / chunks);
+    }
+
+    /**
+     * Runs a phase over the given number of rows on the pool, split in the given number of
+     * chunks of consecutive rows; a single chunk is run directly by the callers, which saves
+     * the capturing lambda
+     */
+    private void runInChunks(final int rows, final int chunks, final ChunkPhase phase) {
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[chunks];
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int index = chunk;
+            int from = chunkStart(rows, chunk, chunks);
+            int to = chunkStart(rows, chunk + 1, chunks);
+            tasks[chunk] = pool.submit(() -> phase.run(index, from, to));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
     }
 
     /**
@@ -91,24 +332,201 @@ public final class Transactions {
      * Makes a distributor bankrupt if they cannot pay
      *
      * @param distributors the list of distributors that pay their costs
+     * @param consumers    the store of consumers, whose contracts with distributors that go
+     *                     bankrupt are removed
      */
-    public void distributorPayments(List<Distributor> distributors) {
-        for (Distributor distributor : distributors) {
+    public void distributorPayments(List<Distributor> distributors, ConsumerStore consumers) {
+        int size = distributors.size();
+        boolean precomputed = pool != null && plan != null
+                && plan.choose(ExecutionPlan.Phase.DISTRIBUTOR_PAYMENTS, size);
+        if (precomputed) {
+            computeCosts(distributors);
+        }
+
+        for (int i = 0; i < size; i++) {
+            Distributor distributor = distributors.get(i);
             if (distributor.getBankrupt()) {
                 continue;
             }
 
-            Integer cost = Formulas.computeDistributorPayment(distributor);
+            int cost = precomputed ? distributorCosts[i]
+                    : Formulas.computeDistributorPayment(distributor);
             distributor.setBudget(Formulas.computeNewBudgetOf(distributor, -cost));
 
             if (distributor.getBudget() < 0) {
                 distributor.setBankrupt(true);
-                Distributor.ContractsInfo contractsInfo = distributor.getContractsInfo();
+                consumers.removeContractsOf(distributor);
+            }
+        }
+    }
+
+    /**
+     * Computes the costs of the distributors that are not bankrupt on the pool; the cost of a
+     * distributor only depends on its own contracts, which the bankruptcies of the others do
+     * not remove
+     */
+    private void computeCosts(final List<Distributor> distributors) {
+        int size = distributors.size();
+        if (distributorCosts.length < size) {
+            distributorCosts = new int[size];
+        }
+        int[] costs = distributorCosts;
+        runInChunks(size, Math.max(Math.min(size, pool.getParallelism() * CHUNKS_PER_THREAD), 1),
+                (chunk, from, to) -> {
+                    for (int i = from; i < to; i++) {
+                        Distributor distributor = distributors.get(i);
+                        if (!distributor.getBankrupt()) {
+                            costs[i] = Formulas.computeDistributorPayment(distributor);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Counts the months, starting with the given one, whose transactions can be run at once:
+     * the consumers are quiescent (see ConsumerStore.countQuiescentMonths), so every
+     * distributor is paid the same revenue and pays the same costs in every month, and no
+     * distributor runs out of money or overflows its budget along the way
+     *
+     * @param consumers    the store of consumers
+     * @param distributors the distributors of the simulation
+     * @param turn         the current month, counted from 0
+     * @param maxMonths    the most months to count
+     * @return the number of months, 0 if the transactions of the current month have to be
+     *         run one by one
+     */
+    public int countQuiescentMonths(final ConsumerStore consumers,
+                                    final List<Distributor> distributors, final int turn,
+                                    final int maxMonths) {
+        if (revenues.length != distributors.size()) {
+            revenues = new long[distributors.size()];
+        }
+        Arrays.fill(revenues, 0);
+
+        int months = consumers.countQuiescentMonths(turn, maxMonths, revenues);
+        for (int i = 0; i < distributors.size() && months > 0; i++) {
+            Distributor distributor = distributors.get(i);
+            if (distributor.getBankrupt()) {
+                continue;
+            }
+            if (revenues[i] > Integer.MAX_VALUE) {
+                return 0;
+            }
+
+            // the budget never drops below 0 and has room for the revenue of the next month
+            int cost = Formulas.computeDistributorPayment(distributor);
+            months = Math.min(months, Formulas.monthsWithin(distributor.getBudget(),
+                    revenues[i] - cost, 0, Math.min(Integer.MAX_VALUE,
+                            (long) Integer.MAX_VALUE - cost)));
+        }
+        return months;
+    }
+
+    /**
+     * Runs the transactions of the given number of months at once; the months have to be
+     * counted by the last call of countQuiescentMonths, whose revenues are used
+     *
+     * @param consumers    the store of consumers
+     * @param distributors the distributors of the simulation
+     * @param months       the number of months
+     */
+    public void runQuiescentMonths(final ConsumerStore consumers,
+                                   final List<Distributor> distributors, final int months) {
+        consumers.advanceQuiescentMonths(months);
+        for (int i = 0; i < distributors.size(); i++) {
+            Distributor distributor = distributors.get(i);
+            if (distributor.getBankrupt()) {
+                continue;
+            }
+
+            long change = months * (revenues[i] - Formulas.computeDistributorPayment(distributor));
+            distributor.setBudget((int) (distributor.getBudget() + change));
+        }
+    }
+
+    /**
+     * Adds the monthly incomes to the budgets of the consumers
+     */
+    private static final class SalariesStage implements ConsumerStage {
+        @Override
+        public void run(final ConsumerStore consumers, final int chunk, final int from,
+                        final int to) {
+            consumers.addSalaries(from, to);
+        }
+    }
+
+    /**
+     * Pays the contracts of the consumers in two passes over every block: the consumers that
+     * can afford their bills pay them in a single pass (see ConsumerStore.payAffordableBills),
+     * then their payments are credited to the distributors and the other consumers try
+     * postponing
+     * <p>
+     * The consumers that go bankrupt are written after the first row of their chunk in
+     * bankruptRows, so the chunks never write over each other; they are recorded as events of
+     * the store, along with the credits of the chunk, once the pass is over
+     */
+    private final class PaymentsStage implements ConsumerStage {
+        private int chunks;
+        private int[][] credits;
+
+        @Override
+        public void begin(final ConsumerStore consumers, final int numberOfChunks) {
+            chunks = numberOfChunks;
+            credits = creditsOf(chunks, consumers.getNumberOfDistributors());
+            if (paid.length < consumers.size()) {
+                paid = new int[Math.max(consumers.size(), paid.length * 2)];
+                bankruptRows = new int[paid.length];
+            }
+            if (chunkBankruptcies.length < chunks) {
+                chunkBankruptcies = new int[chunks];
+            }
+        }
+
+        @Override
+        public void run(final ConsumerStore consumers, final int chunk, final int from,
+                        final int to) {
+            int[] chunkCredit = credits[chunk];
+            int chunkFrom = chunkStart(consumers.size(), chunk, chunks);
+            consumers.payAffordableBills(from, to, paid);
+
+            for (int row = from; row < to; row++) {
+                if (paid[row] != 0) {
+                    int multiplicity = consumers.getMultiplicity(row);
+                    chunkCredit[consumers.getContractDistributor(row)] +=
+                            consumers.getContractPrice(row) * multiplicity;
+                    int duePayment = consumers.getDuePayment(row);
+                    if (duePayment != 0) {
+                        chunkCredit[consumers.getDistributorOwed(row)] +=
+                                duePayment * multiplicity;
+                        consumers.removeDebt(row);
+                    }
+                } else if (!consumers.isBankrupt(row)
+                        && postponeOrGoBankrupt(consumers, row, chunkCredit)) {
+                    bankruptRows[chunkFrom + chunkBankruptcies[chunk]++] = row;
+                }
+            }
+        }
 
-                contractsInfo.getContracts().forEach(contract ->
-                        contract.getConsumer().setContract(null));
-                contractsInfo.getContracts().clear();
+        @Override
+        public void end(final ConsumerStore consumers) {
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                applyCredits(consumers, credits[chunk]);
+
+                int from = chunkStart(consumers.size(), chunk, chunks);
+                for (int i = 0; i < chunkBankruptcies[chunk]; i++) {
+                    consumers.addBankruptcy(bankruptRows[from + i]);
+                }
+                chunkBankruptcies[chunk] = 0;
             }
+            consumers.deactivateBankruptConsumers();
         }
     }
+
+    /**
+     * A phase of the transactions, run over a chunk of consecutive rows
+     */
+    @FunctionalInterface
+    private interface ChunkPhase {
+        void run(int chunk, int from, int to);
+    }
 }
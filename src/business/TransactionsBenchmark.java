@@ -0,0 +1,130 @@
+package business;
+
+import entities.ConsumerStorage;
+import entities.ConsumerStore;
+import entities.Distributor;
+import fileio.ConsumerInput;
+import fileio.DistributorInput;
+import strategies.EnergyChoiceStrategyType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tool that compares the branch-free kernels of the monthly transactions with the scalar loops
+ * <p>
+ * Two identical synthetic populations are kept on the heap, one using the kernels and the
+ * other the scalar loops, and both go through the same months of salaries and contract
+ * payments; every round times each of them in turn, after which the populations are checked
+ * to have ended up identical. The times are printed per consumer and month
+ */
+public final class TransactionsBenchmark {
+    private static final int DEFAULT_CONSUMERS = 1 << 20;
+    private static final int DEFAULT_MONTHS = 20;
+    private static final int DEFAULT_ROUNDS = 10;
+    private static final int DISTRIBUTORS = 16;
+    private static final int CONTRACT_LENGTH = 1_000_000;
+    private static final int MAX_INFRASTRUCTURE_COST = 60;
+    private static final int MAX_BUDGET = 400;
+    private static final int MAX_INCOME = 80;
+    private static final long SEED = 42;
+
+    private TransactionsBenchmark() {
+    }
+
+    /**
+     * Runs the comparison and prints its results
+     *
+     * @param args optionally, the number of consumers, of months per round and of rounds
+     */
+    public static void main(final String[] args) {
+        int consumers = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_CONSUMERS;
+        int months = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MONTHS;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ROUNDS;
+
+        ConsumerStore kernelStore = createPopulation(ConsumerStorage.onHeap(), consumers);
+        ConsumerStore scalarStore = createPopulation(ConsumerStorage.onHeapScalar(), consumers);
+        Transactions transactions = new Transactions();
+
+        for (int round = 1; round <= rounds; round++) {
+            long kernelTime = simulateMonths(transactions, kernelStore, months);
+            long scalarTime = simulateMonths(transactions, scalarStore, months);
+            double perConsumer = (double) consumers * months;
+
+            System.out.printf("round %d: kernels %.3f ns, scalar %.3f ns, speedup %.2fx%n",
+                    round, kernelTime / perConsumer, scalarTime / perConsumer,
+                    (double) scalarTime / kernelTime);
+        }
+
+        if (!samePopulations(kernelStore, scalarStore)) {
+            System.out.println("The kernels and the scalar loops gave different results");
+            System.exit(1);
+        }
+        System.out.println("The kernels and the scalar loops gave identical results");
+    }
+
+    /**
+     * Creates a population with random budgets and incomes, whose consumers have contracts
+     * with distributors of different prices; the same population is created every time
+     */
+    private static ConsumerStore createPopulation(final ConsumerStorage storage,
+                                                  final int consumers) {
+        Random random = new Random(SEED);
+        List<Distributor> distributors = new ArrayList<>();
+        for (int id = 0; id < DISTRIBUTORS; id++) {
+            DistributorInput input = new DistributorInput();
+            input.setId(id);
+            input.setContractLength(CONTRACT_LENGTH);
+            input.setInitialBudget(0);
+            input.setInitialInfrastructureCost(1 + random.nextInt(MAX_INFRASTRUCTURE_COST));
+            input.setEnergyNeededKW(0);
+            input.setProducerStrategy(EnergyChoiceStrategyType.GREEN);
+
+            Distributor distributor = new Distributor(input);
+            distributor.refreshPrices();
+            distributors.add(distributor);
+        }
+
+        ConsumerStore store = new ConsumerStore(distributors, storage);
+        for (int id = 0; id < consumers; id++) {
+            ConsumerInput input = new ConsumerInput();
+            input.setId(id);
+            input.setInitialBudget(random.nextInt(MAX_BUDGET));
+            input.setMonthlyIncome(random.nextInt(MAX_INCOME));
+            store.add(input);
+            store.signContract(id, distributors.get(random.nextInt(DISTRIBUTORS)));
+        }
+        return store;
+    }
+
+    private static long simulateMonths(final Transactions transactions,
+                                       final ConsumerStore store, final int months) {
+        long start = System.nanoTime();
+        for (int month = 0; month < months; month++) {
+            transactions.addSalaries(store);
+            transactions.payContracts(store);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static boolean samePopulations(final ConsumerStore first,
+                                           final ConsumerStore second) {
+        for (int row = 0; row < first.size(); row++) {
+            if (first.getBudget(row) != second.getBudget(row)
+                    || first.isBankrupt(row) != second.isBankrupt(row)
+                    || first.getDuePayment(row) != second.getDuePayment(row)
+                    || first.getDistributorOwed(row) != second.getDistributorOwed(row)
+                    || first.getRemainedContractMonths(row)
+                    != second.getRemainedContractMonths(row)) {
+                return false;
+            }
+        }
+        for (int i = 0; i < first.getNumberOfDistributors(); i++) {
+            if (first.getDistributor(i).getBudget() != second.getDistributor(i).getBudget()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,165 @@
+package entities;
+
+import java.util.Arrays;
+
+/**
+ * The rows of the consumers that are not bankrupt, as spans of consecutive rows in increasing
+ * order; a span may also hold short runs of bankrupt rows
+ * <p>
+ * New consumers extend the last span, and the consumers that go bankrupt are cut out of their
+ * spans, so the monthly transactions mostly visit the consumers that are still active, while
+ * still running over ranges of consecutive rows. The spans are rebuilt into a second pair of
+ * arrays, which are then swapped with the first, so removing rows allocates nothing once the
+ * arrays are large enough
+ */
+final class ActiveRows {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MIN_GAP = 64;
+
+    private final ConsumerStore store;
+    private int[] starts;
+    private int[] ends;
+    private int[] nextStarts;
+    private int[] nextEnds;
+    private int spans;
+
+    ActiveRows(final ConsumerStore store) {
+        this.store = store;
+        starts = new int[INITIAL_CAPACITY];
+        ends = new int[INITIAL_CAPACITY];
+        nextStarts = new int[INITIAL_CAPACITY];
+        nextEnds = new int[INITIAL_CAPACITY];
+        spans = 0;
+    }
+
+    int getSpans() {
+        return spans;
+    }
+
+    int getStart(final int span) {
+        return starts[span];
+    }
+
+    int getEnd(final int span) {
+        return ends[span];
+    }
+
+    /**
+     * Finds the first span that ends after the given row
+     *
+     * @return the index of the span, or the number of spans if there is none
+     */
+    int findSpan(final int row) {
+        int low = 0;
+        int high = spans;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ends[middle] <= row) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Adds a row after all the others
+     */
+    void add(final int row) {
+        if (spans > 0 && ends[spans - 1] == row) {
+            ends[spans - 1]++;
+            return;
+        }
+
+        if (spans == starts.length) {
+            starts = Arrays.copyOf(starts, spans * 2);
+            ends = Arrays.copyOf(ends, spans * 2);
+            store.countGrowth();
+        }
+        starts[spans] = row;
+        ends[spans] = row + 1;
+        spans++;
+    }
+
+    /**
+     * Removes the given rows, which have to be active until their bankrupt flag was set, in
+     * increasing order and without duplicates
+     * <p>
+     * A removed row only splits its span when it joins a run of at least MIN_GAP bankrupt rows;
+     * shorter runs stay inside the span, where the kernels skip them for less than it costs to
+     * start a new span. Runs at the edges of a span are always cut off. Since no run inside a
+     * span ever reaches MIN_GAP rows, finding the run of a removed row looks at a bounded number
+     * of neighbours
+     *
+     * @param rows  the array holding the rows
+     * @param from  the index of the first row to remove
+     * @param count the number of rows to remove
+     */
+    void remove(final int[] rows, final int from, final int count) {
+        if (count == 0) {
+            return;
+        }
+        ensureNextCapacity(spans + count);
+
+        int nextSpans = 0;
+        int removed = from;
+        for (int span = 0; span < spans; span++) {
+            int start = starts[span];
+            int end = ends[span];
+            while (removed < from + count && rows[removed] < end) {
+                int row = rows[removed++];
+                if (row < start) {
+                    continue;
+                }
+
+                int runStart = row;
+                while (runStart > start && store.isBankrupt(runStart - 1)) {
+                    runStart--;
+                }
+                int runEnd = row + 1;
+                while (runEnd < end && store.isBankrupt(runEnd)) {
+                    runEnd++;
+                }
+
+                if (runStart == start) {
+                    start = runEnd;
+                } else if (runEnd == end) {
+                    end = runStart;
+                } else if (runEnd - runStart >= MIN_GAP) {
+                    nextStarts[nextSpans] = start;
+                    nextEnds[nextSpans++] = runStart;
+                    start = runEnd;
+                }
+            }
+            if (start < end) {
+                nextStarts[nextSpans] = start;
+                nextEnds[nextSpans++] = end;
+            }
+        }
+
+        int[] swap = starts;
+        starts = nextStarts;
+        nextStarts = swap;
+        swap = ends;
+        ends = nextEnds;
+        nextEnds = swap;
+        spans = nextSpans;
+    }
+
+    /**
+     * Makes sure the arrays the spans are rebuilt into, and the ones they are swapped with,
+     * have room for the given number of spans
+     */
+    private void ensureNextCapacity(final int capacity) {
+        if (nextStarts.length >= capacity && starts.length >= capacity) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, starts.length * 2);
+        starts = Arrays.copyOf(starts, newCapacity);
+        ends = Arrays.copyOf(ends, newCapacity);
+        nextStarts = new int[newCapacity];
+        nextEnds = new int[newCapacity];
+        store.countGrowth();
+    }
+}
@@ -5,37 +5,35 @@ import java.util.Objects;
 
 /**
  * Abstract class that the Consumer and Distributor extend
+ * <p>
+ * Subclasses decide where the id, budget and bankrupt flag are stored; all of them are
+ * primitives, so the simulation can read and update them without boxing
  */
 public abstract class BusinessEntity implements EnergyEntity {
-    private final Integer id;
-    private Boolean isBankrupt;
-    private Integer budget;
-
-    public BusinessEntity(final Integer id, final Integer budget) {
-        this.id = id;
-        this.budget = budget;
-        isBankrupt = false;
-    }
-
-    public final Integer getId() {
-        return id;
-    }
-
-    public final Integer getBudget() {
-        return budget;
-    }
-
-    public final void setBudget(final Integer budget) {
-        this.budget = budget;
-    }
-
-    public final Boolean getBankrupt() {
-        return isBankrupt;
-    }
-
-    public final void setBankrupt(final Boolean bankrupt) {
-        isBankrupt = bankrupt;
-    }
+    /**
+     * Get the id of the entity
+     */
+    public abstract int getId();
+
+    /**
+     * Get the budget of the entity
+     */
+    public abstract int getBudget();
+
+    /**
+     * Set the budget of the entity
+     */
+    public abstract void setBudget(int budget);
+
+    /**
+     * Checks whether or not the entity is bankrupt
+     */
+    public abstract boolean getBankrupt();
+
+    /**
+     * Set the bankrupt flag of the entity
+     */
+    public abstract void setBankrupt(boolean bankrupt);
 
     @Override
     public final boolean equals(final Object o) {
@@ -46,13 +44,13 @@ public abstract class BusinessEntity implements EnergyEntity {
             return false;
         }
         BusinessEntity that = (BusinessEntity) o;
-        return id.equals(that.id)
-                && Objects.equals(isBankrupt, that.isBankrupt)
-                && Objects.equals(budget, that.budget);
+        return getId() == that.getId()
+                && getBankrupt() == that.getBankrupt()
+                && getBudget() == that.getBudget();
     }
 
     @Override
     public final int hashCode() {
-        return Objects.hash(id, isBankrupt, budget);
+        return Objects.hash(getId(), getBankrupt(), getBudget());
     }
 }
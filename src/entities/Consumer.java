@@ -1,37 +1,90 @@
 package entities;
 
 import business.Contract;
-import fileio.ConsumerInput;
 
 /**
  * Class used for modeling a Consumer
  * Contains their monthly income, their contract and their debt
+ * <p>
+ * A consumer is a view of its row in a ConsumerStore, where all its data is kept; the view
+ * refers to the consumer by its index in the store, so that it follows the consumer when a
+ * compressed store moves it out of a shared row, which it does before every change made
+ * through the view
  */
 public final class Consumer extends BusinessEntity {
-    private final Integer monthlyIncome;
-    private final Debt debt;
-    private Contract contract;
+    private final ConsumerStore store;
+    private final int index;
 
-    public Consumer(final ConsumerInput input) {
-        super(input.getId(), input.getInitialBudget());
-        monthlyIncome = input.getMonthlyIncome();
-        debt = new Debt(0, null);
+    Consumer(final ConsumerStore store, final int index) {
+        this.store = store;
+        this.index = index;
     }
 
-    public Integer getMonthlyIncome() {
-        return monthlyIncome;
+    public ConsumerStore getStore() {
+        return store;
     }
 
-    public Contract getContract() {
-        return contract;
+    public int getIndex() {
+        return index;
+    }
+
+    public int getRow() {
+        return store.getConsumerRow(index);
+    }
+
+    @Override
+    public int getId() {
+        return store.getConsumerId(index);
+    }
+
+    @Override
+    public int getBudget() {
+        return store.getBudget(getRow());
+    }
+
+    @Override
+    public void setBudget(final int budget) {
+        store.setBudget(store.separate(index), budget);
+    }
+
+    @Override
+    public boolean getBankrupt() {
+        return store.isBankrupt(getRow());
+    }
+
+    @Override
+    public void setBankrupt(final boolean bankrupt) {
+        store.setBankrupt(store.separate(index), bankrupt);
     }
 
-    public void setContract(final Contract contract) {
-        this.contract = contract;
+    public int getMonthlyIncome() {
+        return store.getMonthlyIncome(getRow());
     }
 
+    /**
+     * Get the current contract of the consumer
+     *
+     * @return a view of the contract, or null if the consumer has no contract
+     */
+    public Contract getContract() {
+        int row = getRow();
+        if (!store.hasContract(row)) {
+            return null;
+        }
+        return new Contract(store, index,
+                store.getDistributor(store.getContractDistributor(row)));
+    }
+
+    /**
+     * Get the debt of the consumer
+     *
+     * @return a snapshot of the debt
+     */
     public Debt getDebt() {
-        return debt;
+        int row = getRow();
+        int distributorOwed = store.getDistributorOwed(row);
+        return new Debt(store.getDuePayment(row), distributorOwed == ConsumerStore.NO_DISTRIBUTOR
+                ? null : store.getDistributor(distributorOwed));
     }
 
 
@@ -40,8 +93,8 @@ public final class Consumer extends BusinessEntity {
      *
      * @return true if the consumer has to pay from the previous month, false otherwise
      */
-    public Boolean hasDuePayment() {
-        return debt.duePayment != 0;
+    public boolean hasDuePayment() {
+        return store.getDuePayment(getRow()) != 0;
     }
 
 
@@ -51,16 +104,7 @@ public final class Consumer extends BusinessEntity {
      * @param distributor the distributor to sign the contract with
      */
     public void signContractWith(final Distributor distributor) {
-        // if the consumer has 0 months left on the contract
-        if (contract != null) {
-            Distributor oldDistributor = getContract().getDistributor();
-            oldDistributor.getContractsInfo().getContracts().remove(getContract());
-        }
-
-        Distributor.ContractsInfo contractsInfo = distributor.getContractsInfo();
-        contract = new Contract(this, distributor,
-                contractsInfo.getContractLength(), contractsInfo.getContractPrice());
-        contractsInfo.getContracts().add(contract);
+        store.signContract(store.separate(index), distributor);
     }
 
     /**
@@ -69,17 +113,15 @@ public final class Consumer extends BusinessEntity {
      * @param duePayment      the amount of money to pay next month
      * @param distributorOwed the distributor that is owed the money
      */
-    public void postponePayment(final Integer duePayment, final Distributor distributorOwed) {
-        debt.duePayment = duePayment;
-        debt.distributorOwed = distributorOwed;
+    public void postponePayment(final int duePayment, final Distributor distributorOwed) {
+        store.postponePayment(store.separate(index), duePayment, distributorOwed.getId());
     }
 
     /**
      * Removes the debt of the consumer by setting their postponed payment to 0
      */
     public void removeDebt() {
-        debt.duePayment = 0;
-        debt.distributorOwed = null;
+        store.removeDebt(store.separate(index));
     }
 
     /**
@@ -87,16 +129,16 @@ public final class Consumer extends BusinessEntity {
      * and the distributor that is owed the money
      */
     public static final class Debt {
-        private Integer duePayment;
-        private Distributor distributorOwed;
+        private final int duePayment;
+        private final Distributor distributorOwed;
 
-        public Debt(final Integer duePayment,
+        public Debt(final int duePayment,
                     final Distributor distributorOwed) {
             this.duePayment = duePayment;
             this.distributorOwed = distributorOwed;
         }
 
-        public Integer getDuePayment() {
+        public int getDuePayment() {
             return duePayment;
         }
 
@@ -0,0 +1,224 @@
+package entities;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The consumers of a compressed ConsumerStore, grouped in classes of consumers whose whole
+ * state is identical; every class is a single row of the store, simulated once, whose weight
+ * is the number of consumers it stands for
+ * <p>
+ * Every consumer has a weight of its own, the number of consumers of the population it stands
+ * for: 1, unless the store holds a weighted sample of the population (see ConsumerSample). The
+ * weight of a class is the sum of the weights of its consumers
+ * <p>
+ * Consumers are numbered by their index, in the order they were added to the store. Every
+ * consumer knows the row of its class, and the consumers of a class are chained in increasing
+ * order of their indices. A new consumer joins a class that was added since the last signing
+ * of contracts and is still in the state of a new consumer with the same budget and income;
+ * since the simulation treats the consumers of a row alike, a class only splits when one of
+ * its consumers is changed on its own (see ConsumerStore.separate)
+ * <p>
+ * The signing in which the contract of every row was signed is kept as well, counting every
+ * renewal of contracts and every contract signed on its own: the contracts of a distributor
+ * signed in the same renewal are next to each other in its list, so their consumers are listed
+ * in the order of their indices, as if every consumer had a row of its own
+ */
+final class ConsumerClasses {
+    /**
+     * Consumer that ends the chain of the consumers of a class
+     */
+    static final int NO_CONSUMER = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int INCOME_BITS = 32;
+
+    private final ConsumerStore store;
+    private final Map<Long, Integer> newClasses;
+    private int[] weights;
+    private int[] members;
+    private int[] firstConsumers;
+    private int[] lastConsumers;
+    private int[] signings;
+    private int[] rows;
+    private int[] ids;
+    private int[] consumerWeights;
+    private int[] nextConsumers;
+    private int size;
+
+    ConsumerClasses(final ConsumerStore store) {
+        this.store = store;
+        newClasses = new HashMap<>();
+        weights = new int[INITIAL_CAPACITY];
+        members = new int[INITIAL_CAPACITY];
+        firstConsumers = new int[INITIAL_CAPACITY];
+        lastConsumers = new int[INITIAL_CAPACITY];
+        signings = new int[INITIAL_CAPACITY];
+        rows = new int[INITIAL_CAPACITY];
+        ids = new int[INITIAL_CAPACITY];
+        consumerWeights = new int[INITIAL_CAPACITY];
+        nextConsumers = new int[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    /**
+     * Get the number of consumers
+     */
+    int size() {
+        return size;
+    }
+
+    int getRow(final int consumer) {
+        return rows[consumer];
+    }
+
+    int getId(final int consumer) {
+        return ids[consumer];
+    }
+
+    int getNextConsumer(final int consumer) {
+        return nextConsumers[consumer];
+    }
+
+    int getWeight(final int row) {
+        return weights[row];
+    }
+
+    int getMembers(final int row) {
+        return members[row];
+    }
+
+    int getConsumerWeight(final int consumer) {
+        return consumerWeights[consumer];
+    }
+
+    int getFirstConsumer(final int row) {
+        return firstConsumers[row];
+    }
+
+    int getSigning(final int row) {
+        return signings[row];
+    }
+
+    void setSigning(final int row, final int signing) {
+        signings[row] = signing;
+    }
+
+    /**
+     * Finds the class a new consumer with the given budget and income can join
+     *
+     * @return the row of the class, or -1 if there is none
+     */
+    int findClass(final int budget, final int monthlyIncome) {
+        Integer row = newClasses.get(keyOf(budget, monthlyIncome));
+        if (row == null || !store.isNewConsumer(row, budget, monthlyIncome)) {
+            return -1;
+        }
+        return row;
+    }
+
+    /**
+     * Adds a consumer in a class of its own
+     *
+     * @param row    the row of the class
+     * @param id     the id of the consumer
+     * @param weight the number of consumers it stands for
+     */
+    void addClass(final int row, final int id, final int weight) {
+        ensureRowCapacity(row);
+        int consumer = addConsumer(row, id, weight);
+        weights[row] = weight;
+        members[row] = 1;
+        firstConsumers[row] = consumer;
+        lastConsumers[row] = consumer;
+        newClasses.put(keyOf(store.getBudget(row), store.getMonthlyIncome(row)), row);
+    }
+
+    /**
+     * Adds a consumer to an existing class
+     *
+     * @param row    the row of the class
+     * @param id     the id of the consumer
+     * @param weight the number of consumers it stands for
+     */
+    void joinClass(final int row, final int id, final int weight) {
+        int consumer = addConsumer(row, id, weight);
+        nextConsumers[lastConsumers[row]] = consumer;
+        lastConsumers[row] = consumer;
+        weights[row] += weight;
+        members[row]++;
+    }
+
+    /**
+     * Forgets the classes new consumers can join, once their contracts are signed
+     */
+    void closeNewClasses() {
+        newClasses.clear();
+    }
+
+    /**
+     * Moves a consumer out of its class, into a class of its own in the given row
+     *
+     * @param consumer the consumer
+     * @param row      the row of its new class
+     */
+    void moveToClass(final int consumer, final int row) {
+        int oldRow = rows[consumer];
+        if (firstConsumers[oldRow] == consumer) {
+            firstConsumers[oldRow] = nextConsumers[consumer];
+        } else {
+            int previous = firstConsumers[oldRow];
+            while (nextConsumers[previous] != consumer) {
+                previous = nextConsumers[previous];
+            }
+            nextConsumers[previous] = nextConsumers[consumer];
+            if (lastConsumers[oldRow] == consumer) {
+                lastConsumers[oldRow] = previous;
+            }
+        }
+        weights[oldRow] -= consumerWeights[consumer];
+        members[oldRow]--;
+
+        ensureRowCapacity(row);
+        rows[consumer] = row;
+        nextConsumers[consumer] = NO_CONSUMER;
+        weights[row] = consumerWeights[consumer];
+        members[row] = 1;
+        firstConsumers[row] = consumer;
+        lastConsumers[row] = consumer;
+        signings[row] = signings[oldRow];
+    }
+
+    private void ensureRowCapacity(final int row) {
+        if (row < weights.length) {
+            return;
+        }
+        int capacity = Math.max(row + 1, weights.length * 2);
+        weights = Arrays.copyOf(weights, capacity);
+        members = Arrays.copyOf(members, capacity);
+        firstConsumers = Arrays.copyOf(firstConsumers, capacity);
+        lastConsumers = Arrays.copyOf(lastConsumers, capacity);
+        signings = Arrays.copyOf(signings, capacity);
+        store.countGrowth();
+    }
+
+    private int addConsumer(final int row, final int id, final int weight) {
+        if (size == rows.length) {
+            rows = Arrays.copyOf(rows, size * 2);
+            ids = Arrays.copyOf(ids, size * 2);
+            consumerWeights = Arrays.copyOf(consumerWeights, size * 2);
+            nextConsumers = Arrays.copyOf(nextConsumers, size * 2);
+            store.countGrowth();
+        }
+        rows[size] = row;
+        ids[size] = id;
+        consumerWeights[size] = weight;
+        nextConsumers[size] = NO_CONSUMER;
+        return size++;
+    }
+
+    private static long keyOf(final int budget, final int monthlyIncome) {
+        return ((long) budget << INCOME_BITS) | Integer.toUnsignedLong(monthlyIncome);
+    }
+}
@@ -0,0 +1,173 @@
+package entities;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Storage of the fields of the consumers of a ConsumerStore, as fixed-width records of ints
+ * indexed by the row of the consumer
+ * <p>
+ * Every record has the id, budget, monthly income and bankrupt flag of the consumer, its debt
+ * (the postponed payment and the index of the distributor owed it) and its contract (the index
+ * of the distributor, the price and the remaining months), along with the rows of the consumers
+ * whose contracts with the same distributor were signed just before and just after its own and
+ * the month in which its contract expires.
+ * The records are kept either on the
+ * heap, as one int array for every field, or off the heap, in pages of direct memory or of a
+ * memory-mapped file; off the heap, the consumers cost the garbage collector nothing, and with
+ * a file they can even outgrow the physical memory
+ */
+public abstract class ConsumerStorage {
+    static final int ID = 0;
+    static final int BUDGET = 1;
+    static final int MONTHLY_INCOME = 2;
+    static final int BANKRUPT = 3;
+    static final int DUE_PAYMENT = 4;
+    static final int DISTRIBUTOR_OWED = 5;
+    static final int CONTRACT_DISTRIBUTOR = 6;
+    static final int CONTRACT_PRICE = 7;
+    static final int REMAINED_CONTRACT_MONTHS = 8;
+    static final int PREVIOUS_CONTRACT_ROW = 9;
+    static final int NEXT_CONTRACT_ROW = 10;
+    static final int CONTRACT_EXPIRY = 11;
+    static final int FIELDS = 12;
+
+    /**
+     * Creates a storage that keeps the records on the heap
+     */
+    public static ConsumerStorage onHeap() {
+        return new HeapConsumerStorage(true);
+    }
+
+    /**
+     * Creates a storage that keeps the records on the heap, but runs the monthly transactions
+     * with the scalar loops instead of the branch-free kernels; only meant for comparing the
+     * two (see TransactionsBenchmark)
+     */
+    public static ConsumerStorage onHeapScalar() {
+        return new HeapConsumerStorage(false);
+    }
+
+    /**
+     * Creates a storage that keeps the records in direct memory, outside the heap
+     */
+    public static ConsumerStorage offHeap() {
+        return new OffHeapConsumerStorage(null);
+    }
+
+    /**
+     * Creates a storage that keeps the records in a memory-mapped file, which the operating
+     * system pages in and out as needed; the file is deleted when the JVM exits
+     *
+     * @param path the path of the file, which is overwritten
+     * @return the storage
+     * @throws IOException in case the file cannot be created
+     */
+    public static ConsumerStorage mapped(final String path) throws IOException {
+        FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        return new OffHeapConsumerStorage(channel);
+    }
+
+    /**
+     * Get the number of records the storage has room for
+     */
+    abstract int capacity();
+
+    /**
+     * Makes room for more records, keeping the existing ones
+     *
+     * @param rows the number of records the storage needs room for
+     */
+    abstract void grow(int rows);
+
+    /**
+     * Get a field of a record
+     *
+     * @param row   the row of the record
+     * @param field the index of the field
+     * @return the value of the field
+     */
+    abstract int get(int row, int field);
+
+    /**
+     * Set a field of a record
+     *
+     * @param row   the row of the record
+     * @param field the index of the field
+     * @param value the new value of the field
+     */
+    abstract void set(int row, int field, int value);
+
+    /**
+     * Adds the monthly income to the budget of every consumer of the given rows that is not
+     * bankrupt
+     * <p>
+     * This is the scalar version, which works one record at a time on any storage; storages
+     * whose layout allows it replace it with a branch-free kernel
+     *
+     * @param from the first row
+     * @param to   the row after the last one
+     */
+    void addSalaries(final int from, final int to) {
+        for (int row = from; row < to; row++) {
+            if (get(row, BANKRUPT) == 0) {
+                set(row, BUDGET, get(row, BUDGET) + get(row, MONTHLY_INCOME));
+            }
+        }
+    }
+
+    /**
+     * Makes every consumer of the given rows that is not bankrupt pay its whole bill (the
+     * contract price and the postponed payment), if its budget allows it, and counts a month
+     * of its contract
+     * <p>
+     * This is the scalar version, which works one record at a time on any storage; storages
+     * whose layout allows it replace it with a branch-free kernel
+     *
+     * @param from the first row
+     * @param to   the row after the last one
+     * @param paid set to 1 for the rows that paid their bill and to 0 for the others
+     */
+    void payAffordableBills(final int from, final int to, final int[] paid) {
+        for (int row = from; row < to; row++) {
+            paid[row] = 0;
+            if (get(row, BANKRUPT) != 0) {
+                continue;
+            }
+
+            int totalCost = get(row, CONTRACT_PRICE) + get(row, DUE_PAYMENT);
+            if (get(row, BUDGET) >= totalCost) {
+                set(row, BUDGET, get(row, BUDGET) - totalCost);
+                paid[row] = 1;
+            }
+            set(row, REMAINED_CONTRACT_MONTHS, get(row, REMAINED_CONTRACT_MONTHS) - 1);
+        }
+    }
+
+    /**
+     * Runs the given number of months at once for every consumer of the given rows that is not
+     * bankrupt, each of which receives its income and pays its contract price in every one
+     * of the months; the caller makes sure none of them runs out of money or overflows its
+     * budget along the way
+     *
+     * @param from   the first row
+     * @param to     the row after the last one
+     * @param months the number of months
+     */
+    void advanceMonths(final int from, final int to, final int months) {
+        for (int row = from; row < to; row++) {
+            if (get(row, BANKRUPT) != 0) {
+                continue;
+            }
+
+            long change = (long) months * ((long) get(row, MONTHLY_INCOME)
+                    - get(row, CONTRACT_PRICE));
+            set(row, BUDGET, (int) (get(row, BUDGET) + change));
+            set(row, REMAINED_CONTRACT_MONTHS, get(row, REMAINED_CONTRACT_MONTHS) - months);
+        }
+    }
+}
@@ -0,0 +1,864 @@
+package entities;
+
+import business.Formulas;
+import fileio.ConsumerInput;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Storage of all the consumers of a simulation, as records of primitives indexed by the row
+ * of the consumer (its position in the list of consumers)
+ * <p>
+ * Every consumer has its budget, monthly income and bankrupt flag, its debt (the postponed
+ * payment and the index of the distributor that is owed it) and its contract (the index of the
+ * distributor, the price and the remaining months) stored in a record of a ConsumerStorage,
+ * either on the heap or off it. Distributors are referred to by their index in the list of
+ * distributors of the simulation, which is also their id. The monthly transactions run straight
+ * over the spans of rows that hold the consumers that are not bankrupt, while Consumer and
+ * Contract objects are only views of a row, created when asked for, for the code that works
+ * with whole entities
+ * <p>
+ * Bankruptcies are recorded as events (see addBankruptcy): the bankrupt consumers are then
+ * taken out of the active spans and their contracts removed, without scanning the store
+ * <p>
+ * A compressed store keeps the consumers whose whole state is identical in a single row, whose
+ * multiplicity is the number of its consumers (see ConsumerClasses): the row is simulated
+ * once, and its payments and contracts count once for every consumer. Consumers are then
+ * referred to by their index, in the order they were added, which is mapped to their row; the
+ * views of the consumers and of the contracts are still one for every consumer
+ */
+public final class ConsumerStore {
+    /**
+     * Distributor index of a consumer without a contract or without a debt
+     */
+    public static final int NO_DISTRIBUTOR = -1;
+
+    /**
+     * Row that ends the list of contracts of a distributor
+     */
+    public static final int NO_ROW = -1;
+
+    private static final int INITIAL_BANKRUPTCIES = 16;
+
+    private final List<Distributor> distributors;
+    private final ConsumerStorage storage;
+    private final List<Consumer> views;
+    private final ContractRenewals renewals;
+    private final ActiveRows activeRows;
+    private final ConsumerClasses classes;
+    private int[] bankruptRows;
+    private int bankruptCount;
+    private int deactivatedCount;
+    private int size;
+    private int growths;
+    private int signingTurn;
+    private int signings;
+    private int[] signingTurns;
+    private Distributor renewalDistributor;
+    private int dueRows;
+    private int nextDueRow;
+
+    /**
+     * Creates a store that keeps its consumers on the heap
+     *
+     * @param distributors the distributors of the simulation, indexed by their id
+     */
+    public ConsumerStore(final List<Distributor> distributors) {
+        this(distributors, ConsumerStorage.onHeap());
+    }
+
+    /**
+     * @param distributors the distributors of the simulation, indexed by their id
+     * @param storage      the storage of the records of the consumers
+     */
+    public ConsumerStore(final List<Distributor> distributors, final ConsumerStorage storage) {
+        this(distributors, storage, false);
+    }
+
+    /**
+     * @param distributors the distributors of the simulation, indexed by their id
+     * @param storage      the storage of the records of the consumers
+     * @param compressed   whether or not the consumers whose state is identical share a row
+     */
+    public ConsumerStore(final List<Distributor> distributors, final ConsumerStorage storage,
+                         final boolean compressed) {
+        this.distributors = distributors;
+        this.storage = storage;
+        views = new ConsumersView();
+        renewals = new ContractRenewals(this);
+        activeRows = new ActiveRows(this);
+        bankruptRows = new int[INITIAL_BANKRUPTCIES];
+        classes = compressed ? new ConsumerClasses(this) : null;
+        size = 0;
+        signingTurn = -1;
+    }
+
+    /**
+     * Adds a consumer, without debt and without a contract, at the end of the store
+     * <p>
+     * In a compressed store, the consumer joins the row of a consumer added since the last
+     * signing of contracts, if that consumer is still in the state of a new one, with the same
+     * budget and income
+     *
+     * @param input the input of the consumer
+     * @return the view of the new consumer
+     */
+    public Consumer add(final ConsumerInput input) {
+        return add(input, 1);
+    }
+
+    /**
+     * Adds a consumer that stands for a number of consumers of the population, like add does;
+     * its payments and contract count once for every one of them (see ConsumerSample)
+     *
+     * @param input  the input of the consumer
+     * @param weight the number of consumers it stands for, 1 unless the store is compressed
+     * @return the view of the new consumer
+     */
+    public Consumer add(final ConsumerInput input, final int weight) {
+        if (classes == null && weight != 1) {
+            throw new IllegalArgumentException("Only a compressed store keeps weighted consumers");
+        }
+        if (classes != null) {
+            int row = classes.findClass(input.getInitialBudget(), input.getMonthlyIncome());
+            if (row >= 0) {
+                classes.joinClass(row, input.getId(), weight);
+                return new Consumer(this, classes.size() - 1);
+            }
+        }
+
+        int row = newRow();
+        storage.set(row, ConsumerStorage.ID, input.getId());
+        storage.set(row, ConsumerStorage.BUDGET, input.getInitialBudget());
+        storage.set(row, ConsumerStorage.MONTHLY_INCOME, input.getMonthlyIncome());
+        storage.set(row, ConsumerStorage.BANKRUPT, 0);
+        storage.set(row, ConsumerStorage.DUE_PAYMENT, 0);
+        storage.set(row, ConsumerStorage.DISTRIBUTOR_OWED, NO_DISTRIBUTOR);
+        storage.set(row, ConsumerStorage.CONTRACT_DISTRIBUTOR, NO_DISTRIBUTOR);
+        storage.set(row, ConsumerStorage.CONTRACT_PRICE, 0);
+        storage.set(row, ConsumerStorage.REMAINED_CONTRACT_MONTHS, 0);
+        storage.set(row, ConsumerStorage.PREVIOUS_CONTRACT_ROW, NO_ROW);
+        storage.set(row, ConsumerStorage.NEXT_CONTRACT_ROW, NO_ROW);
+        storage.set(row, ConsumerStorage.CONTRACT_EXPIRY, ContractRenewals.NO_EXPIRY);
+        renewals.leftWithoutContract(row);
+        activeRows.add(row);
+
+        if (classes == null) {
+            return new Consumer(this, row);
+        }
+        classes.addClass(row, input.getId(), weight);
+        return new Consumer(this, classes.size() - 1);
+    }
+
+    private int newRow() {
+        if (size == storage.capacity()) {
+            storage.grow(size + 1);
+            growths++;
+        }
+        return size++;
+    }
+
+    /**
+     * Checks whether or not the consumer in the given row is in the state of a consumer that
+     * was just added with the given budget and income
+     */
+    boolean isNewConsumer(final int row, final int budget, final int monthlyIncome) {
+        return getBudget(row) == budget && getMonthlyIncome(row) == monthlyIncome
+                && !isBankrupt(row) && getDuePayment(row) == 0
+                && getDistributorOwed(row) == NO_DISTRIBUTOR && !hasContract(row)
+                && getContractPrice(row) == 0 && getRemainedContractMonths(row) == 0
+                && getContractExpiry(row) == ContractRenewals.NO_EXPIRY;
+    }
+
+    /**
+     * Moves a consumer out of the row it shares with other consumers, if it does, into a row
+     * of its own at the end of the store, which starts as a copy of the shared one; the
+     * consumer then keeps its place among the contracts of its distributor and in the renewals
+     * of contracts
+     * <p>
+     * The simulation treats the consumers of a row alike, so this is only needed before the
+     * state of a single consumer changes, through its view
+     *
+     * @param consumer the index of the consumer
+     * @return the row of the consumer, after the move
+     */
+    public int separate(final int consumer) {
+        if (classes == null) {
+            return consumer;
+        }
+        int row = classes.getRow(consumer);
+        if (classes.getMembers(row) == 1) {
+            return row;
+        }
+
+        int newRow = newRow();
+        for (int field = 0; field < ConsumerStorage.FIELDS; field++) {
+            storage.set(newRow, field, storage.get(row, field));
+        }
+        classes.moveToClass(consumer, newRow);
+        storage.set(newRow, ConsumerStorage.ID, classes.getId(consumer));
+        storage.set(row, ConsumerStorage.ID, classes.getId(classes.getFirstConsumer(row)));
+
+        if (!isBankrupt(newRow)) {
+            activeRows.add(newRow);
+        }
+        if (hasContract(newRow)) {
+            distributors.get(getContractDistributor(newRow)).getContractsInfo()
+                    .insertConsumerRowAfter(row, newRow);
+            if (isBankrupt(newRow) && isPendingBankruptcy(row)) {
+                addDeactivatedBankruptcy(newRow);
+            }
+        } else if (!isBankrupt(newRow)) {
+            renewals.leftWithoutContract(newRow);
+        }
+        if (getContractExpiry(newRow) != ContractRenewals.NO_EXPIRY) {
+            renewals.expiresIn(newRow, getContractExpiry(newRow));
+        }
+        return newRow;
+    }
+
+    void countGrowth() {
+        growths++;
+    }
+
+    /**
+     * Get the number of times the storage of the store, or one of the arrays of the contract
+     * renewals, had to grow
+     * <p>
+     * They only grow when they run out of room, and the contracts of the distributors are
+     * linked through the rows of their consumers, so once the population and the renewals of
+     * every month settle, signing and paying contracts allocates nothing
+     *
+     * @return the number of times they grew since the store was created
+     */
+    public int getGrowths() {
+        return growths;
+    }
+
+    /**
+     * Get the number of rows in the store, which is the number of consumers unless the store
+     * is compressed
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether or not the consumers whose state is identical share a row
+     */
+    public boolean isCompressed() {
+        return classes != null;
+    }
+
+    /**
+     * Get the number of consumers in the store
+     */
+    public int getNumberOfConsumers() {
+        return classes == null ? size : classes.size();
+    }
+
+    /**
+     * Get the row of the consumer with the given index
+     */
+    public int getConsumerRow(final int consumer) {
+        return classes == null ? consumer : classes.getRow(consumer);
+    }
+
+    /**
+     * Get the id of the consumer with the given index
+     */
+    public int getConsumerId(final int consumer) {
+        return classes == null ? getId(consumer) : classes.getId(consumer);
+    }
+
+    /**
+     * Get the number of consumers of the population the given row stands for: the number of
+     * consumers that share it, or the sum of their weights in a weighted sample
+     */
+    public int getMultiplicity(final int row) {
+        return classes == null ? 1 : classes.getWeight(row);
+    }
+
+    /**
+     * Get the number of consumers of the population the consumer with the given index stands
+     * for
+     */
+    public int getWeight(final int consumer) {
+        return classes == null ? 1 : classes.getConsumerWeight(consumer);
+    }
+
+    /**
+     * Get the first consumer, in the order of their indices, that shares the given row
+     */
+    public int getFirstConsumer(final int row) {
+        return classes == null ? row : classes.getFirstConsumer(row);
+    }
+
+    /**
+     * Get the consumer after the given one, in the order of their indices, that shares its row
+     *
+     * @return the index of the consumer, or -1 if there is none
+     */
+    public int getNextConsumer(final int consumer) {
+        return classes == null ? ConsumerClasses.NO_CONSUMER : classes.getNextConsumer(consumer);
+    }
+
+    /**
+     * Get the number of the signing in which the contract of the consumers in the given row
+     * was signed, counting every renewal of contracts and every contract signed on its own;
+     * only kept by a compressed store
+     */
+    public int getSigning(final int row) {
+        return classes.getSigning(row);
+    }
+
+    /**
+     * Makes the store record the month in which every contract is signed, which is only
+     * needed to merge the contracts of stores kept by different processes in the order they
+     * were signed (see simulation.ShardWorker)
+     */
+    public void recordSigningTurns() {
+        signingTurns = new int[Math.max(size, 1)];
+    }
+
+    /**
+     * Get the month in which the contract of the consumer in the given row was signed, counted
+     * from 0, or -1 for the initial round; only recorded when asked to (see recordSigningTurns)
+     */
+    public int getSigningTurn(final int row) {
+        return signingTurns[row];
+    }
+
+    /**
+     * Get the views of all consumers, in the order they were added
+     *
+     * @return a read-only list of the consumers
+     */
+    public List<Consumer> getConsumers() {
+        return views;
+    }
+
+    /**
+     * Get the view of the consumer with the given index
+     */
+    public Consumer getConsumer(final int consumer) {
+        return new Consumer(this, consumer);
+    }
+
+    /**
+     * Get the distributor with the given index
+     */
+    public Distributor getDistributor(final int index) {
+        return distributors.get(index);
+    }
+
+    /**
+     * Get the number of distributors of the simulation
+     */
+    public int getNumberOfDistributors() {
+        return distributors.size();
+    }
+
+    /**
+     * Get the id of the consumer in the given row
+     */
+    public int getId(final int row) {
+        return storage.get(row, ConsumerStorage.ID);
+    }
+
+    /**
+     * Get the budget of the consumer in the given row
+     */
+    public int getBudget(final int row) {
+        return storage.get(row, ConsumerStorage.BUDGET);
+    }
+
+    /**
+     * Set the budget of the consumer in the given row
+     */
+    public void setBudget(final int row, final int budget) {
+        storage.set(row, ConsumerStorage.BUDGET, budget);
+    }
+
+    /**
+     * Get the monthly income of the consumer in the given row
+     */
+    public int getMonthlyIncome(final int row) {
+        return storage.get(row, ConsumerStorage.MONTHLY_INCOME);
+    }
+
+    /**
+     * Checks whether or not the consumer in the given row is bankrupt
+     */
+    public boolean isBankrupt(final int row) {
+        return storage.get(row, ConsumerStorage.BANKRUPT) != 0;
+    }
+
+    /**
+     * Set the bankrupt flag of the consumer in the given row
+     */
+    public void setBankrupt(final int row, final boolean isBankrupt) {
+        storage.set(row, ConsumerStorage.BANKRUPT, isBankrupt ? 1 : 0);
+    }
+
+    /**
+     * Records that the consumer in the given row went bankrupt, after its bankrupt flag was
+     * set; within a month, the bankruptcies have to be recorded in the order of the rows
+     * <p>
+     * The consumer stays among the active rows until deactivateBankruptConsumers is called, and
+     * keeps its contract until removeBankruptConsumersContracts is called
+     */
+    public void addBankruptcy(final int row) {
+        if (bankruptCount == bankruptRows.length) {
+            bankruptRows = Arrays.copyOf(bankruptRows, bankruptRows.length * 2);
+            growths++;
+        }
+        bankruptRows[bankruptCount++] = row;
+    }
+
+    private boolean isPendingBankruptcy(final int row) {
+        for (int i = 0; i < bankruptCount; i++) {
+            if (bankruptRows[i] == row) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records the bankruptcy of a consumer that is not among the active rows, so that its
+     * contract is removed with the others; the rows still to deactivate keep their order
+     */
+    private void addDeactivatedBankruptcy(final int row) {
+        if (bankruptCount == bankruptRows.length) {
+            bankruptRows = Arrays.copyOf(bankruptRows, bankruptRows.length * 2);
+            growths++;
+        }
+        System.arraycopy(bankruptRows, deactivatedCount, bankruptRows, deactivatedCount + 1,
+                bankruptCount - deactivatedCount);
+        bankruptRows[deactivatedCount++] = row;
+        bankruptCount++;
+    }
+
+    /**
+     * Takes the consumers whose bankruptcies were recorded since the last call out of the
+     * active rows
+     */
+    public void deactivateBankruptConsumers() {
+        activeRows.remove(bankruptRows, deactivatedCount, bankruptCount - deactivatedCount);
+        deactivatedCount = bankruptCount;
+    }
+
+    /**
+     * Removes the contracts of the consumers whose bankruptcies were recorded since the last
+     * call, from both the consumers and their distributors
+     */
+    public void removeBankruptConsumersContracts() {
+        for (int i = 0; i < bankruptCount; i++) {
+            unlinkContract(bankruptRows[i]);
+        }
+        bankruptCount = 0;
+        deactivatedCount = 0;
+    }
+
+    /**
+     * Get the number of active spans, the spans of consecutive rows that hold all the consumers
+     * that are not bankrupt
+     * <p>
+     * Consumers that went bankrupt are only taken out of the spans by
+     * deactivateBankruptConsumers, and even then a span may keep short runs of bankrupt
+     * consumers (see ActiveRows)
+     */
+    public int getActiveSpans() {
+        return activeRows.getSpans();
+    }
+
+    /**
+     * Get the first row of an active span
+     */
+    public int getActiveSpanStart(final int span) {
+        return activeRows.getStart(span);
+    }
+
+    /**
+     * Get the row after the last one of an active span
+     */
+    public int getActiveSpanEnd(final int span) {
+        return activeRows.getEnd(span);
+    }
+
+    /**
+     * Finds the first active span that ends after the given row
+     *
+     * @return the index of the span, or the number of spans if there is none
+     */
+    public int findActiveSpan(final int row) {
+        return activeRows.findSpan(row);
+    }
+
+    /**
+     * Get the payment the consumer in the given row postponed from the previous month
+     *
+     * @return the postponed payment, or 0 if the consumer has no debt
+     */
+    public int getDuePayment(final int row) {
+        return storage.get(row, ConsumerStorage.DUE_PAYMENT);
+    }
+
+    /**
+     * Get the index of the distributor owed the postponed payment of the consumer
+     *
+     * @return the index of the distributor, or NO_DISTRIBUTOR if the consumer has no debt
+     */
+    public int getDistributorOwed(final int row) {
+        return storage.get(row, ConsumerStorage.DISTRIBUTOR_OWED);
+    }
+
+    /**
+     * Adds the monthly income to the budget of every consumer of the given rows that is not
+     * bankrupt
+     *
+     * @param from the first row
+     * @param to   the row after the last one
+     */
+    public void addSalaries(final int from, final int to) {
+        storage.addSalaries(from, to);
+    }
+
+    /**
+     * Makes every consumer of the given rows that is not bankrupt pay its whole bill (the
+     * contract price and the postponed payment), if its budget allows it, and counts a month
+     * of its contract; the payments are not credited to the distributors and the debts of the
+     * consumers that paid are not removed, which is left to the caller
+     *
+     * @param from the first row
+     * @param to   the row after the last one
+     * @param paid set to 1 for the rows that paid their bill and to 0 for the others
+     */
+    public void payAffordableBills(final int from, final int to, final int[] paid) {
+        storage.payAffordableBills(from, to, paid);
+    }
+
+    /**
+     * Counts the months, starting with the given one, in which every consumer that is not
+     * bankrupt receives its income and pays its contract price, and nothing else happens to it:
+     * no consumer waits for a contract, has a debt or sees its contract expire, and no budget
+     * falls short of its bill or overflows
+     * <p>
+     * In such months the budget of every consumer changes by the same amount every month, so
+     * they can be run at once by advanceQuiescentMonths
+     *
+     * @param turn      the current month, counted from 0
+     * @param maxMonths the most months to count
+     * @param revenues  the array, indexed by the distributors, to which the contract prices
+     *                  the distributors are paid in every month are added, once for every
+     *                  consumer of a row
+     * @return the number of months, 0 if the current month is not quiescent
+     */
+    public int countQuiescentMonths(final int turn, final int maxMonths, final long[] revenues) {
+        if (renewals.hasConsumersWithoutContract() || bankruptCount > 0) {
+            return 0;
+        }
+
+        int months = maxMonths;
+        for (int span = 0; span < activeRows.getSpans() && months > 0; span++) {
+            for (int row = activeRows.getStart(span); row < activeRows.getEnd(span); row++) {
+                if (isBankrupt(row)) {
+                    continue;
+                }
+                int price = getContractPrice(row);
+                if (!hasContract(row) || getDuePayment(row) != 0 || price < 0) {
+                    return 0;
+                }
+
+                int expiry = getContractExpiry(row);
+                if (expiry != ContractRenewals.NO_EXPIRY) {
+                    months = Math.min(months, Math.max(expiry - turn, 0));
+                }
+                months = Math.min(months, Formulas.monthsWithin(getBudget(row),
+                        (long) getMonthlyIncome(row) - price, 0, Integer.MAX_VALUE - price));
+                revenues[getContractDistributor(row)] += (long) price * getMultiplicity(row);
+            }
+        }
+        return months;
+    }
+
+    /**
+     * Runs the given number of quiescent months (see countQuiescentMonths) at once for the
+     * consumers; the payments are not credited to the distributors, which is left to the
+     * caller
+     *
+     * @param months the number of months
+     */
+    public void advanceQuiescentMonths(final int months) {
+        for (int span = 0; span < activeRows.getSpans(); span++) {
+            storage.advanceMonths(activeRows.getStart(span), activeRows.getEnd(span), months);
+        }
+    }
+
+    /**
+     * Postpones the payment of a bill by the consumer in the given row
+     *
+     * @param row             the row of the consumer
+     * @param duePayment      the amount of money to pay next month
+     * @param distributorOwed the index of the distributor that is owed the money
+     */
+    public void postponePayment(final int row, final int duePayment,
+                                final int distributorOwed) {
+        storage.set(row, ConsumerStorage.DUE_PAYMENT, duePayment);
+        storage.set(row, ConsumerStorage.DISTRIBUTOR_OWED, distributorOwed);
+    }
+
+    /**
+     * Removes the debt of the consumer in the given row
+     */
+    public void removeDebt(final int row) {
+        storage.set(row, ConsumerStorage.DUE_PAYMENT, 0);
+        storage.set(row, ConsumerStorage.DISTRIBUTOR_OWED, NO_DISTRIBUTOR);
+    }
+
+    /**
+     * Checks whether or not the consumer in the given row has a contract
+     */
+    public boolean hasContract(final int row) {
+        return storage.get(row, ConsumerStorage.CONTRACT_DISTRIBUTOR) != NO_DISTRIBUTOR;
+    }
+
+    /**
+     * Get the index of the distributor the consumer in the given row has a contract with
+     *
+     * @return the index of the distributor, or NO_DISTRIBUTOR if the consumer has no contract
+     */
+    public int getContractDistributor(final int row) {
+        return storage.get(row, ConsumerStorage.CONTRACT_DISTRIBUTOR);
+    }
+
+    /**
+     * Get the monthly price of the contract of the consumer in the given row
+     */
+    public int getContractPrice(final int row) {
+        return storage.get(row, ConsumerStorage.CONTRACT_PRICE);
+    }
+
+    /**
+     * Get the number of months left from the contract of the consumer in the given row
+     */
+    public int getRemainedContractMonths(final int row) {
+        return storage.get(row, ConsumerStorage.REMAINED_CONTRACT_MONTHS);
+    }
+
+    /**
+     * Decreases the number of remaining months in the contract of the consumer in the given row
+     */
+    public void decreaseRemainedContractMonths(final int row) {
+        storage.set(row, ConsumerStorage.REMAINED_CONTRACT_MONTHS,
+                storage.get(row, ConsumerStorage.REMAINED_CONTRACT_MONTHS) - 1);
+    }
+
+    /**
+     * Checks whether or not the contract of the consumer in the given row has just ended
+     *
+     * @return true if the remaining contract months are 0, false otherwise
+     */
+    public boolean hasContractEnded(final int row) {
+        return storage.get(row, ConsumerStorage.REMAINED_CONTRACT_MONTHS) == 0;
+    }
+
+    int getContractExpiry(final int row) {
+        return storage.get(row, ConsumerStorage.CONTRACT_EXPIRY);
+    }
+
+    /**
+     * Get the row of the consumer whose contract with the same distributor was signed just
+     * before the contract of the consumer in the given row
+     *
+     * @return the row, or NO_ROW if the contract is the first one of its distributor
+     */
+    public int getPreviousContractRow(final int row) {
+        return storage.get(row, ConsumerStorage.PREVIOUS_CONTRACT_ROW);
+    }
+
+    /**
+     * Get the row of the consumer whose contract with the same distributor was signed just
+     * after the contract of the consumer in the given row
+     *
+     * @return the row, or NO_ROW if the contract is the last one of its distributor
+     */
+    public int getNextContractRow(final int row) {
+        return storage.get(row, ConsumerStorage.NEXT_CONTRACT_ROW);
+    }
+
+    void setPreviousContractRow(final int row, final int previousRow) {
+        storage.set(row, ConsumerStorage.PREVIOUS_CONTRACT_ROW, previousRow);
+    }
+
+    void setNextContractRow(final int row, final int nextRow) {
+        storage.set(row, ConsumerStorage.NEXT_CONTRACT_ROW, nextRow);
+    }
+
+    /**
+     * Signs contracts between a distributor and every consumer that is not bankrupt and either
+     * has no contract or whose contract has just ended, in the order of the rows
+     * <p>
+     * Only the consumers collected by the contract renewals for the month are visited (see
+     * ContractRenewals), so the cost of the signing follows the number of contracts that
+     * change instead of the size of the population
+     *
+     * @param distributor the distributor to sign the contracts with
+     * @param turn        the current month, counted from 0, or -1 for the initial round
+     */
+    public void renewContracts(final Distributor distributor, final int turn) {
+        collectRenewals(distributor, turn);
+        renewContracts(0, size);
+    }
+
+    /**
+     * Collects the consumers that may need a new contract in the given month, whose contracts
+     * are then signed with the given distributor by renewContracts, block after block of rows
+     *
+     * @param distributor the distributor to sign the contracts with
+     * @param turn        the current month, counted from 0, or -1 for the initial round
+     */
+    public void collectRenewals(final Distributor distributor, final int turn) {
+        signingTurn = turn;
+        signings++;
+        renewalDistributor = distributor;
+        if (classes != null) {
+            classes.closeNewClasses();
+        }
+        dueRows = renewals.collectDueRows(turn);
+        nextDueRow = 0;
+    }
+
+    /**
+     * Signs the contracts collected by the last call of collectRenewals for the consumers of
+     * the given rows that are not bankrupt and either have no contract or whose contract has
+     * just ended
+     * <p>
+     * The blocks of rows have to be given in increasing order; the collected rows that come
+     * before a block and are not in any block are those of bankrupt consumers, which are
+     * skipped
+     *
+     * @param from the first row
+     * @param to   the row after the last one
+     */
+    public void renewContracts(final int from, final int to) {
+        while (nextDueRow < dueRows) {
+            int row = renewals.getDueRow(nextDueRow);
+            if (row >= to) {
+                return;
+            }
+            nextDueRow++;
+            if (row < from || isBankrupt(row)) {
+                continue;
+            }
+            if (!hasContract(row) || hasContractEnded(row)) {
+                sign(row, renewalDistributor);
+            }
+        }
+    }
+
+    /**
+     * Signs a contract between the consumer in the given row and a distributor, at the
+     * current price and length of the distributor's contracts; the previous contract of the
+     * consumer, if any, is removed from its distributor
+     * <p>
+     * The contract is scheduled for renewal in the month it expires, counted from the month of
+     * the last renewal of contracts
+     *
+     * @param row         the row of the consumer
+     * @param distributor the distributor to sign the contract with
+     */
+    public void signContract(final int row, final Distributor distributor) {
+        signings++;
+        sign(row, distributor);
+    }
+
+    private void sign(final int row, final Distributor distributor) {
+        unlinkContract(row);
+
+        Distributor.ContractsInfo contractsInfo = distributor.getContractsInfo();
+        int contractLength = contractsInfo.getContractLength();
+        storage.set(row, ConsumerStorage.CONTRACT_DISTRIBUTOR, distributor.getId());
+        storage.set(row, ConsumerStorage.CONTRACT_PRICE, contractsInfo.getContractPrice());
+        storage.set(row, ConsumerStorage.REMAINED_CONTRACT_MONTHS, contractLength);
+        contractsInfo.addConsumerRow(this, row);
+        if (classes != null) {
+            classes.setSigning(row, signings);
+        }
+        if (signingTurns != null) {
+            if (row >= signingTurns.length) {
+                signingTurns = Arrays.copyOf(signingTurns, Math.max(row + 1,
+                        signingTurns.length * 2));
+            }
+            signingTurns[row] = signingTurn;
+        }
+
+        if (contractLength > 0) {
+            storage.set(row, ConsumerStorage.CONTRACT_EXPIRY, signingTurn + contractLength);
+            renewals.expiresIn(row, signingTurn + contractLength);
+        } else {
+            storage.set(row, ConsumerStorage.CONTRACT_EXPIRY, ContractRenewals.NO_EXPIRY);
+        }
+    }
+
+    /**
+     * Removes the contract of the consumer in the given row, if it has one, from both the
+     * consumer and its distributor; the consumer is then queued for the next renewal of
+     * contracts
+     */
+    public void removeContract(final int row) {
+        if (unlinkContract(row)) {
+            renewals.leftWithoutContract(row);
+        }
+    }
+
+    private boolean unlinkContract(final int row) {
+        int contractDistributor = getContractDistributor(row);
+        if (contractDistributor == NO_DISTRIBUTOR) {
+            return false;
+        }
+
+        distributors.get(contractDistributor).getContractsInfo().removeConsumerRow(row);
+        storage.set(row, ConsumerStorage.CONTRACT_DISTRIBUTOR, NO_DISTRIBUTOR);
+        storage.set(row, ConsumerStorage.CONTRACT_EXPIRY, ContractRenewals.NO_EXPIRY);
+        return true;
+    }
+
+    /**
+     * Removes all the contracts of a distributor, from both the distributor and its consumers,
+     * which are queued for the next renewal of contracts
+     *
+     * @param distributor the distributor whose contracts are removed
+     */
+    public void removeContractsOf(final Distributor distributor) {
+        Distributor.ContractsInfo contractsInfo = distributor.getContractsInfo();
+        for (int row = contractsInfo.getFirstConsumerRow(); row != NO_ROW;
+             row = getNextContractRow(row)) {
+            storage.set(row, ConsumerStorage.CONTRACT_DISTRIBUTOR, NO_DISTRIBUTOR);
+            storage.set(row, ConsumerStorage.CONTRACT_EXPIRY, ContractRenewals.NO_EXPIRY);
+            renewals.leftWithoutContract(row);
+        }
+        contractsInfo.clearConsumerRows();
+    }
+
+    /**
+     * Read-only list of consumer views, by the index of the consumers
+     */
+    private final class ConsumersView extends AbstractList<Consumer> {
+        @Override
+        public Consumer get(final int index) {
+            if (index >= getNumberOfConsumers()) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return new Consumer(ConsumerStore.this, index);
+        }
+
+        @Override
+        public int size() {
+            return getNumberOfConsumers();
+        }
+    }
+}
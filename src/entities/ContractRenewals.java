@@ -0,0 +1,164 @@
+package entities;
+
+import java.util.Arrays;
+
+/**
+ * The consumers that may need a new contract in a month: those whose contracts expire in that
+ * month, kept in a timing wheel by the month of expiry, and those left without a contract (new
+ * consumers and the consumers of bankrupt distributors), kept in a queue
+ * <p>
+ * The wheel has a slot for every month modulo WHEEL_SIZE; a contract that expires further away
+ * waits in its slot for the right round. Entries are never removed when a contract changes:
+ * the month of expiry of a contract is kept in the record of its consumer, and an entry only
+ * counts in the month its consumer's contract expires. The rows collected for a month are a
+ * superset of those that need a contract, sorted and without duplicates, so the caller signs
+ * them in the order of the rows after checking them, as if it had scanned the whole store
+ */
+final class ContractRenewals {
+    /**
+     * Month of expiry of the contracts that never expire (those of length 0 or less, whose
+     * remaining months never get back to 0) and of the consumers without a contract
+     */
+    static final int NO_EXPIRY = Integer.MIN_VALUE;
+
+    private static final int WHEEL_SIZE = 64;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final ConsumerStore store;
+    private final int[][] wheel;
+    private final int[] slotSizes;
+    private int[] withoutContract;
+    private int withoutContractSize;
+    private int[] dueRows;
+
+    ContractRenewals(final ConsumerStore store) {
+        this.store = store;
+        wheel = new int[WHEEL_SIZE][INITIAL_CAPACITY];
+        slotSizes = new int[WHEEL_SIZE];
+        withoutContract = new int[INITIAL_CAPACITY];
+        dueRows = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Schedules the contract of the consumer in the given row to be renewed in the given month
+     */
+    void expiresIn(final int row, final int turn) {
+        int slot = turn & WHEEL_MASK;
+        if (slotSizes[slot] == wheel[slot].length) {
+            wheel[slot] = Arrays.copyOf(wheel[slot], wheel[slot].length * 2);
+            store.countGrowth();
+        }
+        wheel[slot][slotSizes[slot]++] = row;
+    }
+
+    /**
+     * Queues the consumer in the given row, which was left without a contract, for the next
+     * signing of contracts
+     */
+    void leftWithoutContract(final int row) {
+        if (withoutContractSize == withoutContract.length) {
+            withoutContract = Arrays.copyOf(withoutContract, withoutContract.length * 2);
+            store.countGrowth();
+        }
+        withoutContract[withoutContractSize++] = row;
+    }
+
+    /**
+     * Checks whether or not some consumers are queued for the next signing of contracts
+     */
+    boolean hasConsumersWithoutContract() {
+        return withoutContractSize > 0;
+    }
+
+    /**
+     * Collects the rows that may need a new contract in the given month, emptying the queue of
+     * consumers without a contract and the slot of the month
+     *
+     * @param turn the month
+     * @return the number of rows collected, which are given by getDueRow
+     */
+    int collectDueRows(final int turn) {
+        int slot = turn & WHEEL_MASK;
+        int[] entries = wheel[slot];
+        ensureDueCapacity(slotSizes[slot] + withoutContractSize);
+
+        int dueSize = 0;
+        int kept = 0;
+        for (int i = 0; i < slotSizes[slot]; i++) {
+            int row = entries[i];
+            int expiry = store.getContractExpiry(row);
+            if (expiry == turn) {
+                dueRows[dueSize++] = row;
+            } else if (expiry > turn && (expiry & WHEEL_MASK) == slot) {
+                entries[kept++] = row;
+            }
+        }
+        slotSizes[slot] = kept;
+
+        System.arraycopy(withoutContract, 0, dueRows, dueSize, withoutContractSize);
+        dueSize += withoutContractSize;
+        withoutContractSize = 0;
+
+        sort(dueRows, dueSize);
+        return removeDuplicates(dueRows, dueSize);
+    }
+
+    /**
+     * Get one of the rows collected by the last call of collectDueRows
+     */
+    int getDueRow(final int index) {
+        return dueRows[index];
+    }
+
+    private void ensureDueCapacity(final int capacity) {
+        if (dueRows.length < capacity) {
+            dueRows = new int[Math.max(capacity, dueRows.length * 2)];
+            store.countGrowth();
+        }
+    }
+
+    /**
+     * Sorts the first rows of the array with a heapsort, which allocates nothing (unlike
+     * Arrays.sort, which may allocate a buffer to merge the sorted runs it finds)
+     */
+    private static void sort(final int[] rows, final int size) {
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(rows, i, size);
+        }
+        for (int end = size - 1; end > 0; end--) {
+            int largest = rows[0];
+            rows[0] = rows[end];
+            rows[end] = largest;
+            siftDown(rows, 0, end);
+        }
+    }
+
+    private static void siftDown(final int[] rows, final int start, final int size) {
+        int parent = start;
+        int value = rows[parent];
+        int child = 2 * parent + 1;
+        while (child < size) {
+            if (child + 1 < size && rows[child + 1] > rows[child]) {
+                child++;
+            }
+            if (value >= rows[child]) {
+                break;
+            }
+            rows[parent] = rows[child];
+            parent = child;
+            child = 2 * parent + 1;
+        }
+        rows[parent] = value;
+    }
+
+    private static int removeDuplicates(final int[] rows, final int size) {
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique == 0 || rows[unique - 1] != rows[i]) {
+                rows[unique++] = rows[i];
+            }
+        }
+        return unique;
+    }
+}
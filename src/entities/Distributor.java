@@ -7,8 +7,12 @@ import strategies.ChooseProducersStrategy;
 import strategies.EnergyChoiceStrategyType;
 import strategies.StrategyFactory;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -17,15 +21,49 @@ import java.util.Observer;
  * about the production and infrastructure costs and about their producers
  */
 public final class Distributor extends BusinessEntity implements Observer {
+    private final int id;
+    private boolean isBankrupt;
+    private int budget;
     private final ContractsInfo contractsInfo;
     private final Costs costs;
     private final ProducersInfo producersInfo;
+    private boolean producersChanged;
+    private int pricedInfrastructureCost;
+    private int pricedNumberOfConsumers;
 
     public Distributor(final DistributorInput input) {
-        super(input.getId(), input.getInitialBudget());
+        id = input.getId();
+        budget = input.getInitialBudget();
+        isBankrupt = false;
         contractsInfo = new ContractsInfo(input.getContractLength());
         costs = new Costs(input.getInitialInfrastructureCost());
         producersInfo = new ProducersInfo(input.getEnergyNeededKW(), input.getProducerStrategy());
+        producersChanged = true;
+    }
+
+    @Override
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public int getBudget() {
+        return budget;
+    }
+
+    @Override
+    public void setBudget(final int budget) {
+        this.budget = budget;
+    }
+
+    @Override
+    public boolean getBankrupt() {
+        return isBankrupt;
+    }
+
+    @Override
+    public void setBankrupt(final boolean bankrupt) {
+        isBankrupt = bankrupt;
     }
 
     public ContractsInfo getContractsInfo() {
@@ -43,18 +81,42 @@ public final class Distributor extends BusinessEntity implements Observer {
     /**
      * Get the current number of consumers of the distributor
      *
-     * @return an Integer specifying the current number of consumers
+     * @return the current number of consumers
      */
-    public Integer getNumberOfConsumers() {
-        return contractsInfo.contracts.size();
+    public int getNumberOfConsumers() {
+        return contractsInfo.numberOfContracts;
     }
 
     /**
-     * Recomputes the cost of the distributor's contract
+     * Recomputes the cost of the distributor's contract, if anything it depends on changed
+     * since the last time: the producers or their energy, the infrastructure cost or the
+     * number of consumers
+     *
+     * @return true if the price of the contract changed, false otherwise
      */
-    public void refreshPrices() {
+    public boolean refreshPrices() {
+        if (!needsRepricing()) {
+            return false;
+        }
+        producersChanged = false;
+        pricedInfrastructureCost = costs.infrastructureCost;
+        pricedNumberOfConsumers = contractsInfo.numberOfContracts;
+
+        int previousPrice = contractsInfo.contractPrice;
         costs.productionCost = Formulas.computeProductionCost(this);
         contractsInfo.contractPrice = Formulas.computePriceOfContract(this);
+        return contractsInfo.contractPrice != previousPrice;
+    }
+
+    /**
+     * Checks whether or not anything the prices of the distributor depend on changed since
+     * they were last computed
+     *
+     * @return true if the next call of refreshPrices recomputes them, false otherwise
+     */
+    public boolean needsRepricing() {
+        return producersChanged || costs.infrastructureCost != pricedInfrastructureCost
+                || contractsInfo.numberOfContracts != pricedNumberOfConsumers;
     }
 
     /**
@@ -67,55 +129,276 @@ public final class Distributor extends BusinessEntity implements Observer {
     @Override
     public void update(final Observable o, final Object arg) {
         producersInfo.needToUpdateProducers = true;
+        producersChanged = true;
     }
 
     /**
      * Information about the distributor's contracts, such as current contracts, contract length
      * and price
+     * <p>
+     * The contracts are kept as a doubly-linked list of the rows of their consumers in the
+     * consumer store, in the order in which they were signed; the links are fields of the
+     * consumer rows themselves, so signing and removing a contract take constant time and
+     * allocate nothing
      */
     public static final class ContractsInfo {
-        private final Integer contractLength;
+        private final int contractLength;
         private final List<Contract> contracts;
-        private Integer contractPrice;
+        private int contractPrice;
+        private ConsumerStore store;
+        private int firstConsumerRow;
+        private int lastConsumerRow;
+        private int numberOfContracts;
+        private int remoteContracts;
 
-        public ContractsInfo(Integer contractLength) {
+        public ContractsInfo(int contractLength) {
             this.contractLength = contractLength;
-            contracts = new ArrayList<>();
+            firstConsumerRow = ConsumerStore.NO_ROW;
+            lastConsumerRow = ConsumerStore.NO_ROW;
+            numberOfContracts = 0;
+            contracts = new ContractsView();
         }
 
-        public Integer getContractPrice() {
+        public int getContractPrice() {
             return contractPrice;
         }
 
-        public Integer getContractLength() {
+        /**
+         * Sets the price of the contracts of a replica of the distributor, which is priced by
+         * another process (see simulation.ShardWorker)
+         */
+        public void setContractPrice(final int price) {
+            contractPrice = price;
+        }
+
+        public int getContractLength() {
             return contractLength;
         }
 
+        /**
+         * Get the current contracts of the distributor, in the order in which they were signed
+         * <p>
+         * The list is meant to be iterated; getting a contract by its index walks the list. In
+         * a compressed consumer store, a row stands for the contracts of all its consumers,
+         * which are listed in the order of their indices among the contracts signed in the same
+         * renewal, the order in which they would have been signed had they been in rows of their
+         * own
+         *
+         * @return a read-only list of views of the contracts
+         */
         public List<Contract> getContracts() {
             return contracts;
         }
+
+        public int getNumberOfContracts() {
+            return numberOfContracts;
+        }
+
+        /**
+         * Sets the number of contracts of the distributor kept by the consumer stores of other
+         * processes (see simulation.ShardedSimulation); they count among its contracts, but are
+         * not listed, and are dropped along with the others when the distributor goes bankrupt
+         *
+         * @param count the number of contracts kept elsewhere
+         */
+        public void setRemoteContracts(final int count) {
+            numberOfContracts += count - remoteContracts;
+            remoteContracts = count;
+        }
+
+        /**
+         * Get the row of the consumer of the first contract that is still in place; the rows of
+         * the next ones are given by ConsumerStore.getNextContractRow
+         *
+         * @return the row of the consumer, or ConsumerStore.NO_ROW if there are no contracts
+         */
+        public int getFirstConsumerRow() {
+            return firstConsumerRow;
+        }
+
+        void addConsumerRow(final ConsumerStore consumerStore, final int row) {
+            store = consumerStore;
+            store.setPreviousContractRow(row, lastConsumerRow);
+            store.setNextContractRow(row, ConsumerStore.NO_ROW);
+            if (lastConsumerRow == ConsumerStore.NO_ROW) {
+                firstConsumerRow = row;
+            } else {
+                store.setNextContractRow(lastConsumerRow, row);
+            }
+            lastConsumerRow = row;
+            numberOfContracts += store.getMultiplicity(row);
+        }
+
+        /**
+         * Links the row of a consumer that was moved out of a shared row right after it, so
+         * that its contract keeps its place (see ConsumerStore.separate); the number of
+         * contracts does not change
+         */
+        void insertConsumerRowAfter(final int row, final int newRow) {
+            int next = store.getNextContractRow(row);
+            store.setPreviousContractRow(newRow, row);
+            store.setNextContractRow(newRow, next);
+            store.setNextContractRow(row, newRow);
+            if (next == ConsumerStore.NO_ROW) {
+                lastConsumerRow = newRow;
+            } else {
+                store.setPreviousContractRow(next, newRow);
+            }
+        }
+
+        void removeConsumerRow(final int row) {
+            int previous = store.getPreviousContractRow(row);
+            int next = store.getNextContractRow(row);
+
+            if (previous == ConsumerStore.NO_ROW) {
+                firstConsumerRow = next;
+            } else {
+                store.setNextContractRow(previous, next);
+            }
+            if (next == ConsumerStore.NO_ROW) {
+                lastConsumerRow = previous;
+            } else {
+                store.setPreviousContractRow(next, previous);
+            }
+            numberOfContracts -= store.getMultiplicity(row);
+        }
+
+        void clearConsumerRows() {
+            firstConsumerRow = ConsumerStore.NO_ROW;
+            lastConsumerRow = ConsumerStore.NO_ROW;
+            numberOfContracts = 0;
+            remoteContracts = 0;
+        }
+
+        /**
+         * Read-only list of contract views over the linked consumer rows
+         */
+        private final class ContractsView extends AbstractList<Contract> {
+            @Override
+            public Contract get(final int index) {
+                if (index < 0 || index >= numberOfContracts) {
+                    throw new IndexOutOfBoundsException(index);
+                }
+                if (store.isCompressed()) {
+                    Iterator<Contract> iterator = iterator();
+                    for (int i = 0; i < index; i++) {
+                        iterator.next();
+                    }
+                    return iterator.next();
+                }
+                int row = firstConsumerRow;
+                for (int i = 0; i < index; i++) {
+                    row = store.getNextContractRow(row);
+                }
+                return contractOf(row);
+            }
+
+            @Override
+            public Iterator<Contract> iterator() {
+                if (store != null && store.isCompressed()) {
+                    return new SigningsIterator();
+                }
+                return new Iterator<>() {
+                    private int row = firstConsumerRow;
+
+                    @Override
+                    public boolean hasNext() {
+                        return row != ConsumerStore.NO_ROW;
+                    }
+
+                    @Override
+                    public Contract next() {
+                        if (row == ConsumerStore.NO_ROW) {
+                            throw new NoSuchElementException();
+                        }
+                        Contract contract = contractOf(row);
+                        row = store.getNextContractRow(row);
+                        return contract;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return numberOfContracts;
+            }
+
+            private Contract contractOf(final int row) {
+                Distributor distributor = store.getDistributor(store.getContractDistributor(row));
+                return new Contract(store, store.getFirstConsumer(row), distributor);
+            }
+        }
+
+        /**
+         * Iterator over the contracts of a compressed consumer store, which expands the rows
+         * signed in the same renewal into their consumers, sorted by their indices
+         */
+        private final class SigningsIterator implements Iterator<Contract> {
+            private static final int INITIAL_CAPACITY = 16;
+
+            private int row = firstConsumerRow;
+            private int[] consumers = new int[INITIAL_CAPACITY];
+            private int signingSize;
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < signingSize || row != ConsumerStore.NO_ROW;
+            }
+
+            @Override
+            public Contract next() {
+                if (next == signingSize) {
+                    if (row == ConsumerStore.NO_ROW) {
+                        throw new NoSuchElementException();
+                    }
+                    collectSigning();
+                }
+                int consumer = consumers[next++];
+                Distributor distributor = store.getDistributor(store.getContractDistributor(
+                        store.getConsumerRow(consumer)));
+                return new Contract(store, consumer, distributor);
+            }
+
+            private void collectSigning() {
+                signingSize = 0;
+                next = 0;
+                int signing = store.getSigning(row);
+                while (row != ConsumerStore.NO_ROW && store.getSigning(row) == signing) {
+                    for (int consumer = store.getFirstConsumer(row); consumer >= 0;
+                         consumer = store.getNextConsumer(consumer)) {
+                        if (signingSize == consumers.length) {
+                            consumers = Arrays.copyOf(consumers, signingSize * 2);
+                        }
+                        consumers[signingSize++] = consumer;
+                    }
+                    row = store.getNextContractRow(row);
+                }
+                Arrays.sort(consumers, 0, signingSize);
+            }
+        }
     }
 
     /**
      * Information about the distributor's infrastructure and production costs
      */
     public static final class Costs {
-        private Integer infrastructureCost;
-        private Integer productionCost;
+        private int infrastructureCost;
+        private int productionCost;
 
-        public Costs(Integer infrastructureCost) {
+        public Costs(int infrastructureCost) {
             this.infrastructureCost = infrastructureCost;
         }
 
-        public Integer getInfrastructureCost() {
+        public int getInfrastructureCost() {
             return infrastructureCost;
         }
 
-        public void setInfrastructureCost(Integer infrastructureCost) {
+        public void setInfrastructureCost(int infrastructureCost) {
             this.infrastructureCost = infrastructureCost;
         }
 
-        public Integer getProductionCost() {
+        public int getProductionCost() {
             return productionCost;
         }
     }
@@ -125,13 +408,13 @@ public final class Distributor extends BusinessEntity implements Observer {
      * choosing producers, and the list of current producers that give energy to the distributor
      */
     public static final class ProducersInfo {
-        private final Integer energyNeededKW;
+        private final int energyNeededKW;
         private final List<Producer> producers;
         private final EnergyChoiceStrategyType strategyType;
         private final ChooseProducersStrategy producersStrategy;
-        private Boolean needToUpdateProducers;
+        private boolean needToUpdateProducers;
 
-        public ProducersInfo(Integer energyNeededKW, EnergyChoiceStrategyType strategyType) {
+        public ProducersInfo(int energyNeededKW, EnergyChoiceStrategyType strategyType) {
             this.energyNeededKW = energyNeededKW;
             this.strategyType = strategyType;
             producers = new ArrayList<>();
@@ -143,7 +426,7 @@ public final class Distributor extends BusinessEntity implements Observer {
             return producers;
         }
 
-        public Integer getEnergyNeededKW() {
+        public int getEnergyNeededKW() {
             return energyNeededKW;
         }
 
@@ -155,11 +438,11 @@ public final class Distributor extends BusinessEntity implements Observer {
             return producersStrategy;
         }
 
-        public Boolean getNeedToUpdateProducers() {
+        public boolean getNeedToUpdateProducers() {
             return needToUpdateProducers;
         }
 
-        public void setNeedToUpdateProducers(final Boolean needToUpdateProducers) {
+        public void setNeedToUpdateProducers(final boolean needToUpdateProducers) {
             this.needToUpdateProducers = needToUpdateProducers;
         }
     }
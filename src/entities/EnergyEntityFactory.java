@@ -5,6 +5,8 @@ import fileio.DistributorInput;
 import fileio.EnergyEntityInput;
 import fileio.ProducerInput;
 
+import java.util.List;
+
 /**
  * Singleton Factory pattern for creating energy entities
  */
@@ -28,6 +30,9 @@ public final class EnergyEntityFactory {
 
     /**
      * Factory pattern for creating either a consumer or a distributor
+     * <p>
+     * Consumers are stored in a ConsumerStore; a consumer created here gets a store of its own,
+     * while the consumers of a simulation are added straight to the store of its database
      *
      * @param type  a consumer, a distributor or a producer
      * @param input the specific input, either a consumer input or a distributor input
@@ -36,7 +41,7 @@ public final class EnergyEntityFactory {
     public EnergyEntity createEnergyEntity(final EnergyEntityType type,
                                            final EnergyEntityInput input) {
         return switch (type) {
-            case CONSUMER -> new Consumer((ConsumerInput) input);
+            case CONSUMER -> new ConsumerStore(List.of()).add((ConsumerInput) input);
             case DISTRIBUTOR -> new Distributor((DistributorInput) input);
             case PRODUCER -> new Producer((ProducerInput) input);
         };
@@ -0,0 +1,93 @@
+package entities;
+
+import java.util.Arrays;
+
+/**
+ * Consumer records kept on the heap, as one int array for every field
+ * <p>
+ * The monthly transactions run as kernels over the columns: straight loops without branches,
+ * whose conditions are turned into masks (the bankrupt flag is 0 or 1), which the JIT compiler
+ * turns into SIMD instructions
+ */
+final class HeapConsumerStorage extends ConsumerStorage {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int SIGN_BIT = Integer.SIZE - 1;
+
+    private final int[][] columns;
+    private final boolean kernels;
+
+    /**
+     * @param kernels whether the transactions run as branch-free kernels or as the scalar
+     *                loops of ConsumerStorage
+     */
+    HeapConsumerStorage(final boolean kernels) {
+        columns = new int[FIELDS][INITIAL_CAPACITY];
+        this.kernels = kernels;
+    }
+
+    @Override
+    int capacity() {
+        return columns[ID].length;
+    }
+
+    @Override
+    void grow(final int rows) {
+        int capacity = Math.max(rows, capacity() * 2);
+        for (int field = 0; field < FIELDS; field++) {
+            columns[field] = Arrays.copyOf(columns[field], capacity);
+        }
+    }
+
+    @Override
+    int get(final int row, final int field) {
+        return columns[field][row];
+    }
+
+    @Override
+    void set(final int row, final int field, final int value) {
+        columns[field][row] = value;
+    }
+
+    @Override
+    void addSalaries(final int from, final int to) {
+        if (!kernels) {
+            super.addSalaries(from, to);
+            return;
+        }
+
+        int[] budgets = columns[BUDGET];
+        int[] incomes = columns[MONTHLY_INCOME];
+        int[] bankrupt = columns[BANKRUPT];
+        for (int row = from; row < to; row++) {
+            budgets[row] += incomes[row] & (bankrupt[row] - 1);
+        }
+    }
+
+    @Override
+    void payAffordableBills(final int from, final int to, final int[] paid) {
+        if (!kernels) {
+            super.payAffordableBills(from, to, paid);
+            return;
+        }
+
+        int[] budgets = columns[BUDGET];
+        int[] bankrupt = columns[BANKRUPT];
+        int[] duePayments = columns[DUE_PAYMENT];
+        int[] prices = columns[CONTRACT_PRICE];
+        int[] remainedMonths = columns[REMAINED_CONTRACT_MONTHS];
+        for (int row = from; row < to; row++) {
+            int active = 1 - bankrupt[row];
+            int budget = budgets[row];
+            int totalCost = prices[row] + duePayments[row];
+            int difference = budget - totalCost;
+            // budget < totalCost, as 1 or 0, without overflowing
+            int cannotPay =
+                    (difference ^ ((budget ^ totalCost) & (difference ^ budget))) >>> SIGN_BIT;
+            int pays = active & (cannotPay ^ 1);
+
+            budgets[row] = budget - (totalCost & -pays);
+            paid[row] = pays;
+            remainedMonths[row] -= active;
+        }
+    }
+}
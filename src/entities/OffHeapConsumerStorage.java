@@ -0,0 +1,82 @@
+package entities;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Consumer records kept off the heap, in pages of direct memory or of a memory-mapped file
+ * <p>
+ * Every page holds the records of a fixed number of rows, one after the other, so growing the
+ * storage only adds pages and never copies the existing records; a page is a single
+ * ByteBuffer, which keeps the pages small enough for the int indices of the buffers no matter
+ * how many consumers there are
+ */
+final class OffHeapConsumerStorage extends ConsumerStorage {
+    private static final int PAGE_SHIFT = 16;
+    private static final int PAGE_ROWS = 1 << PAGE_SHIFT;
+    private static final int ROW_MASK = PAGE_ROWS - 1;
+    private static final int RECORD_BYTES = FIELDS * Integer.BYTES;
+    private static final int PAGE_BYTES = PAGE_ROWS * RECORD_BYTES;
+    private static final int INITIAL_PAGES = 4;
+
+    private final FileChannel channel;
+    private ByteBuffer[] pages;
+    private int numberOfPages;
+
+    /**
+     * @param channel the channel of the file the pages are mapped from, or null to allocate
+     *                the pages in direct memory
+     */
+    OffHeapConsumerStorage(final FileChannel channel) {
+        this.channel = channel;
+        pages = new ByteBuffer[INITIAL_PAGES];
+        numberOfPages = 0;
+    }
+
+    @Override
+    int capacity() {
+        return numberOfPages * PAGE_ROWS;
+    }
+
+    @Override
+    void grow(final int rows) {
+        while (capacity() < rows) {
+            if (numberOfPages == pages.length) {
+                pages = Arrays.copyOf(pages, pages.length * 2);
+            }
+            pages[numberOfPages] = newPage(numberOfPages).order(ByteOrder.nativeOrder());
+            numberOfPages++;
+        }
+    }
+
+    private ByteBuffer newPage(final int page) {
+        if (channel == null) {
+            return ByteBuffer.allocateDirect(PAGE_BYTES);
+        }
+
+        try {
+            return channel.map(FileChannel.MapMode.READ_WRITE, (long) page * PAGE_BYTES,
+                    PAGE_BYTES);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    int get(final int row, final int field) {
+        return pages[row >>> PAGE_SHIFT].getInt(offsetOf(row, field));
+    }
+
+    @Override
+    void set(final int row, final int field, final int value) {
+        pages[row >>> PAGE_SHIFT].putInt(offsetOf(row, field), value);
+    }
+
+    private static int offsetOf(final int row, final int field) {
+        return (row & ROW_MASK) * RECORD_BYTES + field * Integer.BYTES;
+    }
+}
@@ -2,7 +2,10 @@ package entities;
 
 import fileio.ProducerInput;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Observable;
 
@@ -10,24 +13,39 @@ import java.util.Observable;
  * Class used for modeling a producer, contains information regarding the provided energy,
  * the current distributors that get energy from the producer and also maintains a list of
  * monthly stats
+ * <p>
+ * The monthly stats are kept as two primitive columns, the month of every record and the
+ * snapshot of distributors it refers to; a new snapshot is only taken in the months in which
+ * the distributors of the producer change, so adding the record of a month without changes
+ * allocates nothing
  */
 public final class Producer extends Observable implements EnergyEntity {
-    private final Integer id;
+    private static final int INITIAL_STATS_CAPACITY = 16;
+
+    private final int id;
     private final EnergyInfo energyInfo;
     private final DistributorsInfo distributorsInfo;
     private final List<MonthlyStats> monthlyStats;
+    private final List<List<Integer>> distributorsSnapshots;
+    private int[] statsMonths;
+    private int[] statsSnapshots;
+    private int numberOfStats;
 
 
     public Producer(final ProducerInput producerInput) {
         id = producerInput.getId();
-        monthlyStats = new ArrayList<>();
+        monthlyStats = new MonthlyStatsView();
+        distributorsSnapshots = new ArrayList<>();
+        statsMonths = new int[INITIAL_STATS_CAPACITY];
+        statsSnapshots = new int[INITIAL_STATS_CAPACITY];
+        numberOfStats = 0;
         distributorsInfo = new DistributorsInfo(producerInput.getMaxDistributors());
         energyInfo = new EnergyInfo(producerInput.getPriceKW(),
                 producerInput.getEnergyType(),
                 producerInput.getEnergyPerDistributor());
     }
 
-    public Integer getId() {
+    public int getId() {
         return id;
     }
 
@@ -39,6 +57,11 @@ public final class Producer extends Observable implements EnergyEntity {
         return distributorsInfo;
     }
 
+    /**
+     * Get the monthly stats of the producer, in the order of the months
+     *
+     * @return a read-only list of the records
+     */
     public List<MonthlyStats> getMonthlyStats() {
         return monthlyStats;
     }
@@ -49,19 +72,61 @@ public final class Producer extends Observable implements EnergyEntity {
      *
      * @param energyPerDistributor the new value of the energy per distributor
      */
-    public void changeEnergyPerDistributor(final Integer energyPerDistributor) {
+    public void changeEnergyPerDistributor(final int energyPerDistributor) {
         energyInfo.energyPerDistributor = energyPerDistributor;
         setChanged();
         notifyObservers();
     }
 
+    /**
+     * Makes room for the records of the given number of months, so that adding them does not
+     * need to grow the columns of the monthly stats
+     *
+     * @param months the number of records the producer will hold
+     */
+    public void reserveMonthlyStats(final int months) {
+        if (months > statsMonths.length) {
+            statsMonths = Arrays.copyOf(statsMonths, months);
+            statsSnapshots = Arrays.copyOf(statsSnapshots, months);
+        }
+    }
+
     /**
      * Add record to the list of monthly stats of this producer
      *
      * @param turn the month
      */
-    public void addStatsRecord(final Integer turn) {
-        monthlyStats.add(new MonthlyStats(turn, distributorsInfo.currentDistributors));
+    public void addStatsRecord(final int turn) {
+        if (distributorsInfo.changed || distributorsSnapshots.isEmpty()) {
+            distributorsSnapshots.add(distributorsInfo.snapshotIds());
+            distributorsInfo.changed = false;
+        }
+
+        if (numberOfStats == statsMonths.length) {
+            reserveMonthlyStats(statsMonths.length * 2);
+        }
+        statsMonths[numberOfStats] = turn;
+        statsSnapshots[numberOfStats] = distributorsSnapshots.size() - 1;
+        numberOfStats++;
+    }
+
+    /**
+     * Read-only list of the records of the monthly stats, built from the primitive columns
+     */
+    private final class MonthlyStatsView extends AbstractList<MonthlyStats> {
+        @Override
+        public MonthlyStats get(final int index) {
+            if (index >= numberOfStats) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return new MonthlyStats(statsMonths[index],
+                    distributorsSnapshots.get(statsSnapshots[index]));
+        }
+
+        @Override
+        public int size() {
+            return numberOfStats;
+        }
     }
 
     /**
@@ -69,17 +134,17 @@ public final class Producer extends Observable implements EnergyEntity {
      * and the quantity of the energy
      */
     public static final class EnergyInfo {
-        private final Double priceKW;
+        private final double priceKW;
         private final EnergyType energyType;
-        private Integer energyPerDistributor;
+        private int energyPerDistributor;
 
-        public EnergyInfo(Double priceKW, EnergyType energyType, Integer energyPerDistributor) {
+        public EnergyInfo(double priceKW, EnergyType energyType, int energyPerDistributor) {
             this.priceKW = priceKW;
             this.energyType = energyType;
             this.energyPerDistributor = energyPerDistributor;
         }
 
-        public Double getPriceKW() {
+        public double getPriceKW() {
             return priceKW;
         }
 
@@ -87,7 +152,7 @@ public final class Producer extends Observable implements EnergyEntity {
             return energyType;
         }
 
-        public Integer getEnergyPerDistributor() {
+        public int getEnergyPerDistributor() {
             return energyPerDistributor;
         }
     }
@@ -98,38 +163,78 @@ public final class Producer extends Observable implements EnergyEntity {
      * a list of current distributors that get energy from the producer
      */
     public static final class DistributorsInfo {
-        private final Integer maxDistributors;
+        private final int maxDistributors;
         private final List<Distributor> currentDistributors;
+        private final List<Distributor> readOnlyDistributors;
+        private boolean changed;
 
-        public DistributorsInfo(Integer maxDistributors) {
+        public DistributorsInfo(int maxDistributors) {
             this.maxDistributors = maxDistributors;
             currentDistributors = new ArrayList<>();
+            readOnlyDistributors = Collections.unmodifiableList(currentDistributors);
+            changed = false;
         }
 
-        public Integer getMaxDistributors() {
+        public int getMaxDistributors() {
             return maxDistributors;
         }
 
+        /**
+         * Get the distributors that currently get energy from the producer
+         *
+         * @return a read-only list of the distributors
+         */
         public List<Distributor> getCurrentDistributors() {
-            return currentDistributors;
+            return readOnlyDistributors;
+        }
+
+        /**
+         * Checks whether or not the producer can give energy to one more distributor
+         */
+        public boolean isFull() {
+            return currentDistributors.size() == maxDistributors;
+        }
+
+        /**
+         * Adds a distributor to the ones that get energy from the producer
+         */
+        public void addDistributor(final Distributor distributor) {
+            currentDistributors.add(distributor);
+            changed = true;
+        }
+
+        /**
+         * Removes a distributor from the ones that get energy from the producer
+         */
+        public void removeDistributor(final Distributor distributor) {
+            if (currentDistributors.remove(distributor)) {
+                changed = true;
+            }
+        }
+
+        private List<Integer> snapshotIds() {
+            List<Integer> distributorsIds = new ArrayList<>();
+            currentDistributors.forEach(distributor -> distributorsIds.add(distributor.getId()));
+            Collections.sort(distributorsIds);
+            return Collections.unmodifiableList(distributorsIds);
         }
     }
 
     /**
      * Class used for modeling a single record from the monthly stats list;
-     * consists of the distributors that get energy from the producer in the given month
+     * consists of the distributors that get energy from the producer in the given month,
+     * sorted by their ids
      */
     public static final class MonthlyStats {
-        private final Integer month;
+        private final int month;
         private final List<Integer> distributorsIds;
 
-        public MonthlyStats(Integer month, List<Distributor> distributors) {
+        public MonthlyStats(int month, List<Integer> distributorsIds) {
             this.month = month;
-            distributorsIds = new ArrayList<>();
-            distributors.forEach(distributor -> distributorsIds.add(distributor.getId()));
+            this.distributorsIds = distributorsIds;
         }
 
-        public Integer getMonth() {
+        public int getMonth() {
             return month;
         }
 
@@ -0,0 +1,116 @@
+package fileio;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Sequential reader of primitive values and primitive columns from a channel; whole columns
+ * are copied out of a direct buffer in bulk, so no per-value calls or boxing take place
+ */
+final class BinaryColumnReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+
+    BinaryColumnReader(final ReadableByteChannel channel) {
+        this.channel = channel;
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.flip();
+    }
+
+    /**
+     * Makes sure at least the given number of bytes can be read from the buffer, refilling it
+     * from the channel if needed
+     */
+    private void require(final int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Unexpected end of binary input");
+            }
+        }
+        buffer.flip();
+    }
+
+    byte readByte() throws IOException {
+        require(Byte.BYTES);
+        return buffer.get();
+    }
+
+    int readInt() throws IOException {
+        require(Integer.BYTES);
+        return buffer.getInt();
+    }
+
+    /**
+     * Reads a column of bytes
+     *
+     * @param length the number of values in the column
+     * @return the column
+     * @throws IOException in case the channel ends before the column does
+     */
+    byte[] readByteColumn(final int length) throws IOException {
+        byte[] column = new byte[length];
+        int read = 0;
+        while (read < length) {
+            require(Byte.BYTES);
+            int count = Math.min(length - read, buffer.remaining());
+            buffer.get(column, read, count);
+            read += count;
+        }
+        return column;
+    }
+
+    /**
+     * Reads a column of ints
+     *
+     * @param length the number of values in the column
+     * @return the column
+     * @throws IOException in case the channel ends before the column does
+     */
+    int[] readIntColumn(final int length) throws IOException {
+        int[] column = new int[length];
+        int read = 0;
+        while (read < length) {
+            require(Integer.BYTES);
+            int count = Math.min(length - read, buffer.remaining() / Integer.BYTES);
+            buffer.asIntBuffer().get(column, read, count);
+            buffer.position(buffer.position() + count * Integer.BYTES);
+            read += count;
+        }
+        return column;
+    }
+
+    /**
+     * Reads a column of doubles
+     *
+     * @param length the number of values in the column
+     * @return the column
+     * @throws IOException in case the channel ends before the column does
+     */
+    double[] readDoubleColumn(final int length) throws IOException {
+        double[] column = new double[length];
+        int read = 0;
+        while (read < length) {
+            require(Double.BYTES);
+            int count = Math.min(length - read, buffer.remaining() / Double.BYTES);
+            buffer.asDoubleBuffer().get(column, read, count);
+            buffer.position(buffer.position() + count * Double.BYTES);
+            read += count;
+        }
+        return column;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,217 @@
+package fileio;
+
+import entities.EnergyType;
+import strategies.EnergyChoiceStrategyType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Input stored in the binary columnar format written by BinaryInputConverter
+ * <p>
+ * The file starts with a header (magic number, format version, number of turns), followed by
+ * the consumers, distributors and producers of the initial data and then by the monthly
+ * updates. Only the months in which something changes are stored, each update being preceded
+ * by its month (counted from 1) and the list of updates ending with month 0; files of the
+ * first version of the format store one update for every turn instead, without months. Every
+ * list of entities is stored as its length followed by one column for each field, so loading
+ * the input is a sequential read of primitive columns
+ * <p>
+ * Like the streaming JSON input, the initial data is loaded eagerly and the monthly updates
+ * are read one month at a time, as the simulation advances
+ */
+public final class BinaryInput implements SimulationInput {
+    static final byte[] MAGIC = {'E', 'S', 'B', 'I'};
+    static final int VERSION = 2;
+    static final int END_OF_SCHEDULE = 0;
+
+    private static final int DENSE_VERSION = 1;
+
+    private static final EnergyChoiceStrategyType[] STRATEGY_TYPES =
+            EnergyChoiceStrategyType.values();
+    private static final EnergyType[] ENERGY_TYPES = EnergyType.values();
+
+    private final BinaryColumnReader reader;
+    private final Integer numberOfTurns;
+    private final InitialDataInput initialData;
+    private final boolean sparse;
+    private int nextTurn;
+    private int nextScheduledTurn;
+
+    BinaryInput(final ReadableByteChannel channel) throws IOException {
+        reader = new BinaryColumnReader(channel);
+
+        for (byte magicByte : MAGIC) {
+            if (reader.readByte() != magicByte) {
+                throw new IOException("Not a binary input file");
+            }
+        }
+        int version = reader.readInt();
+        if (version != VERSION && version != DENSE_VERSION) {
+            throw new IOException("Unsupported binary input version: " + version);
+        }
+        sparse = version == VERSION;
+
+        numberOfTurns = reader.readInt();
+        initialData = new InitialDataInput();
+        initialData.setConsumers(readConsumers());
+        initialData.setDistributors(readDistributors());
+        initialData.setProducers(readProducers());
+        nextTurn = 0;
+        if (sparse) {
+            nextScheduledTurn = readNextScheduledTurn(-1);
+        }
+    }
+
+    /**
+     * Reads the month of the next update of a sparse file
+     *
+     * @param previousTurn the turn of the previous update, or -1 if there is none
+     * @return the turn of the next update, or Integer.MAX_VALUE if there are no more updates
+     */
+    private int readNextScheduledTurn(final int previousTurn) throws IOException {
+        int month = reader.readInt();
+        if (month == END_OF_SCHEDULE) {
+            return Integer.MAX_VALUE;
+        }
+        if (month - 1 <= previousTurn) {
+            throw new IOException("The months of the monthly updates are not increasing");
+        }
+        return month - 1;
+    }
+
+    private List<ConsumerInput> readConsumers() throws IOException {
+        int count = reader.readInt();
+        int[] ids = reader.readIntColumn(count);
+        int[] initialBudgets = reader.readIntColumn(count);
+        int[] monthlyIncomes = reader.readIntColumn(count);
+
+        List<ConsumerInput> consumers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ConsumerInput consumer = new ConsumerInput();
+            consumer.setId(ids[i]);
+            consumer.setInitialBudget(initialBudgets[i]);
+            consumer.setMonthlyIncome(monthlyIncomes[i]);
+            consumers.add(consumer);
+        }
+        return consumers;
+    }
+
+    private List<DistributorInput> readDistributors() throws IOException {
+        int count = reader.readInt();
+        int[] ids = reader.readIntColumn(count);
+        int[] contractLengths = reader.readIntColumn(count);
+        int[] initialBudgets = reader.readIntColumn(count);
+        int[] infrastructureCosts = reader.readIntColumn(count);
+        int[] energiesNeeded = reader.readIntColumn(count);
+        byte[] strategies = reader.readByteColumn(count);
+
+        List<DistributorInput> distributors = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            DistributorInput distributor = new DistributorInput();
+            distributor.setId(ids[i]);
+            distributor.setContractLength(contractLengths[i]);
+            distributor.setInitialBudget(initialBudgets[i]);
+            distributor.setInitialInfrastructureCost(infrastructureCosts[i]);
+            distributor.setEnergyNeededKW(energiesNeeded[i]);
+            distributor.setProducerStrategy(STRATEGY_TYPES[strategies[i]]);
+            distributors.add(distributor);
+        }
+        return distributors;
+    }
+
+    private List<ProducerInput> readProducers() throws IOException {
+        int count = reader.readInt();
+        int[] ids = reader.readIntColumn(count);
+        byte[] energyTypes = reader.readByteColumn(count);
+        int[] maxDistributors = reader.readIntColumn(count);
+        double[] pricesKW = reader.readDoubleColumn(count);
+        int[] energiesPerDistributor = reader.readIntColumn(count);
+
+        List<ProducerInput> producers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ProducerInput producer = new ProducerInput();
+            producer.setId(ids[i]);
+            producer.setEnergyType(ENERGY_TYPES[energyTypes[i]]);
+            producer.setMaxDistributors(maxDistributors[i]);
+            producer.setPriceKW(pricesKW[i]);
+            producer.setEnergyPerDistributor(energiesPerDistributor[i]);
+            producers.add(producer);
+        }
+        return producers;
+    }
+
+    private List<DistributorChangesInput> readDistributorChanges() throws IOException {
+        int count = reader.readInt();
+        int[] ids = reader.readIntColumn(count);
+        int[] infrastructureCosts = reader.readIntColumn(count);
+
+        List<DistributorChangesInput> changes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            DistributorChangesInput change = new DistributorChangesInput();
+            change.setId(ids[i]);
+            change.setInfrastructureCost(infrastructureCosts[i]);
+            changes.add(change);
+        }
+        return changes;
+    }
+
+    private List<ProducerChangesInput> readProducerChanges() throws IOException {
+        int count = reader.readInt();
+        int[] ids = reader.readIntColumn(count);
+        int[] energiesPerDistributor = reader.readIntColumn(count);
+
+        List<ProducerChangesInput> changes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ProducerChangesInput change = new ProducerChangesInput();
+            change.setId(ids[i]);
+            change.setEnergyPerDistributor(energiesPerDistributor[i]);
+            changes.add(change);
+        }
+        return changes;
+    }
+
+    @Override
+    public Integer getNumberOfTurns() {
+        return numberOfTurns;
+    }
+
+    @Override
+    public InitialDataInput getInitialData() {
+        return initialData;
+    }
+
+    @Override
+    public MonthlyUpdateInput getMonthlyUpdate(final int turn) {
+        if (turn != nextTurn) {
+            throw new IllegalStateException("Monthly updates can only be read in order,"
+                    + " expected turn " + nextTurn + " but got turn " + turn);
+        }
+
+        nextTurn++;
+        if (sparse && turn != nextScheduledTurn) {
+            return null;
+        }
+
+        try {
+            MonthlyUpdateInput update = new MonthlyUpdateInput();
+            update.setNewConsumers(readConsumers());
+            update.setDistributorChanges(readDistributorChanges());
+            update.setProducerChanges(readProducerChanges());
+            if (sparse) {
+                nextScheduledTurn = readNextScheduledTurn(turn);
+            }
+            return update;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
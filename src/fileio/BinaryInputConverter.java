@@ -0,0 +1,158 @@
+package fileio;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Tool that converts a JSON input file to the binary columnar format read by BinaryInput
+ * <p>
+ * The JSON input is streamed, so the conversion only keeps the initial data and a single
+ * monthly update in memory. Months without changes are left out of the binary file
+ */
+public final class BinaryInputConverter {
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private BinaryInputConverter() {
+    }
+
+    /**
+     * Converts a JSON input file to a binary input file
+     *
+     * @param args the JSON input file and the binary file to write
+     * @throws IOException in case reading the JSON input or writing the binary file fails
+     */
+    public static void main(final String[] args) throws IOException {
+        try (SimulationInput input = new InputParser(args[0]).openStreamingInput()) {
+            convert(input, args[1]);
+        }
+    }
+
+    /**
+     * Writes an input in the binary columnar format
+     *
+     * @param input      the input to convert; all its monthly updates are consumed
+     * @param outputPath the binary file to write, compressed with gzip if its name ends in .gz
+     * @throws IOException in case writing the binary file fails
+     */
+    public static void convert(final SimulationInput input,
+                               final String outputPath) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                FileStreams.openOutput(outputPath), BUFFER_SIZE))) {
+            output.write(BinaryInput.MAGIC);
+            output.writeInt(BinaryInput.VERSION);
+            output.writeInt(input.getNumberOfTurns());
+
+            InitialDataInput initialData = input.getInitialData();
+            writeConsumers(output, initialData.getConsumers());
+            writeDistributors(output, initialData.getDistributors());
+            writeProducers(output, initialData.getProducers());
+
+            for (int turn = 0; turn < input.getNumberOfTurns(); turn++) {
+                MonthlyUpdateInput update = input.getMonthlyUpdate(turn);
+                if (isEmpty(update)) {
+                    continue;
+                }
+                output.writeInt(turn + 1);
+                writeConsumers(output, orEmpty(update.getNewConsumers()));
+                writeDistributorChanges(output, orEmpty(update.getDistributorChanges()));
+                writeProducerChanges(output, orEmpty(update.getProducerChanges()));
+            }
+            output.writeInt(BinaryInput.END_OF_SCHEDULE);
+        }
+    }
+
+    private static boolean isEmpty(final MonthlyUpdateInput update) {
+        return update == null
+                || orEmpty(update.getNewConsumers()).isEmpty()
+                && orEmpty(update.getDistributorChanges()).isEmpty()
+                && orEmpty(update.getProducerChanges()).isEmpty();
+    }
+
+    private static <T> List<T> orEmpty(final List<T> list) {
+        return list == null ? List.of() : list;
+    }
+
+    private static void writeConsumers(final DataOutputStream output,
+                                       final List<ConsumerInput> consumers) throws IOException {
+        output.writeInt(consumers.size());
+        for (ConsumerInput consumer : consumers) {
+            output.writeInt(consumer.getId());
+        }
+        for (ConsumerInput consumer : consumers) {
+            output.writeInt(consumer.getInitialBudget());
+        }
+        for (ConsumerInput consumer : consumers) {
+            output.writeInt(consumer.getMonthlyIncome());
+        }
+    }
+
+    private static void writeDistributors(final DataOutputStream output,
+                                          final List<DistributorInput> distributors)
+            throws IOException {
+        output.writeInt(distributors.size());
+        for (DistributorInput distributor : distributors) {
+            output.writeInt(distributor.getId());
+        }
+        for (DistributorInput distributor : distributors) {
+            output.writeInt(distributor.getContractLength());
+        }
+        for (DistributorInput distributor : distributors) {
+            output.writeInt(distributor.getInitialBudget());
+        }
+        for (DistributorInput distributor : distributors) {
+            output.writeInt(distributor.getInitialInfrastructureCost());
+        }
+        for (DistributorInput distributor : distributors) {
+            output.writeInt(distributor.getEnergyNeededKW());
+        }
+        for (DistributorInput distributor : distributors) {
+            output.writeByte(distributor.getProducerStrategy().ordinal());
+        }
+    }
+
+    private static void writeProducers(final DataOutputStream output,
+                                       final List<ProducerInput> producers) throws IOException {
+        output.writeInt(producers.size());
+        for (ProducerInput producer : producers) {
+            output.writeInt(producer.getId());
+        }
+        for (ProducerInput producer : producers) {
+            output.writeByte(producer.getEnergyType().ordinal());
+        }
+        for (ProducerInput producer : producers) {
+            output.writeInt(producer.getMaxDistributors());
+        }
+        for (ProducerInput producer : producers) {
+            output.writeDouble(producer.getPriceKW());
+        }
+        for (ProducerInput producer : producers) {
+            output.writeInt(producer.getEnergyPerDistributor());
+        }
+    }
+
+    private static void writeDistributorChanges(final DataOutputStream output,
+                                                final List<DistributorChangesInput> changes)
+            throws IOException {
+        output.writeInt(changes.size());
+        for (DistributorChangesInput change : changes) {
+            output.writeInt(change.getId());
+        }
+        for (DistributorChangesInput change : changes) {
+            output.writeInt(change.getInfrastructureCost());
+        }
+    }
+
+    private static void writeProducerChanges(final DataOutputStream output,
+                                             final List<ProducerChangesInput> changes)
+            throws IOException {
+        output.writeInt(changes.size());
+        for (ProducerChangesInput change : changes) {
+            output.writeInt(change.getId());
+        }
+        for (ProducerChangesInput change : changes) {
+            output.writeInt(change.getEnergyPerDistributor());
+        }
+    }
+}
@@ -0,0 +1,455 @@
+package fileio;
+
+import entities.EnergyType;
+import strategies.EnergyChoiceStrategyType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Reader of the binary columnar result written by BinaryResultWriter
+ * <p>
+ * The file is memory-mapped and nothing is decoded up front: the position of every column is
+ * computed from the header, and lookups read single values straight from the mapped file.
+ * Entities are addressed by their index in the result (the order of the JSON output); their
+ * index can be found from their id with a binary search over the sorted index columns.
+ * Whole columns can be scanned through read-only views, without copying them
+ */
+public final class BinaryResult {
+    private static final EnergyChoiceStrategyType[] STRATEGY_TYPES =
+            EnergyChoiceStrategyType.values();
+    private static final EnergyType[] ENERGY_TYPES = EnergyType.values();
+
+    private final ByteBuffer buffer;
+    private final int consumersCount;
+    private final int distributorsCount;
+    private final int producersCount;
+    private long nextColumn;
+
+    private final int consumerIds;
+    private final int consumerBudgets;
+    private final int consumersBankrupt;
+    private final int consumersById;
+
+    private final int distributorIds;
+    private final int distributorsEnergyNeeded;
+    private final int distributorContractCosts;
+    private final int distributorBudgets;
+    private final int distributorStrategies;
+    private final int distributorsBankrupt;
+    private final int contractsStarts;
+    private final int distributorsById;
+
+    private final int contractConsumerIds;
+    private final int contractPrices;
+    private final int contractRemainedMonths;
+
+    private final int producerIds;
+    private final int producersMaxDistributors;
+    private final int producerPricesKW;
+    private final int producerEnergyTypes;
+    private final int producersEnergyPerDistributor;
+    private final int monthlyStatsStarts;
+    private final int producersById;
+
+    private final int monthlyStatsMonths;
+    private final int statsDistributorsStarts;
+    private final int statsDistributorIds;
+
+    private BinaryResult(final ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        byte[] magic = new byte[BinaryResultWriter.MAGIC.length];
+        if (buffer.remaining() < magic.length) {
+            throw new IOException("Not a binary result file");
+        }
+        buffer.get(0, magic);
+        if (!Arrays.equals(magic, BinaryResultWriter.MAGIC)) {
+            throw new IOException("Not a binary result file");
+        }
+        nextColumn = magic.length;
+        int version = readHeaderInt();
+        if (version != BinaryResultWriter.VERSION) {
+            throw new IOException("Unsupported binary result version: " + version);
+        }
+
+        consumersCount = readHeaderInt();
+        distributorsCount = readHeaderInt();
+        int contractsCount = readHeaderInt();
+        producersCount = readHeaderInt();
+        int monthlyStatsCount = readHeaderInt();
+        int statsDistributorsCount = readHeaderInt();
+
+        consumerIds = column(consumersCount, Integer.BYTES);
+        consumerBudgets = column(consumersCount, Integer.BYTES);
+        consumersBankrupt = column(consumersCount, Byte.BYTES);
+        consumersById = column(consumersCount, Integer.BYTES);
+
+        distributorIds = column(distributorsCount, Integer.BYTES);
+        distributorsEnergyNeeded = column(distributorsCount, Integer.BYTES);
+        distributorContractCosts = column(distributorsCount, Integer.BYTES);
+        distributorBudgets = column(distributorsCount, Integer.BYTES);
+        distributorStrategies = column(distributorsCount, Byte.BYTES);
+        distributorsBankrupt = column(distributorsCount, Byte.BYTES);
+        contractsStarts = column(distributorsCount + 1, Integer.BYTES);
+        distributorsById = column(distributorsCount, Integer.BYTES);
+
+        contractConsumerIds = column(contractsCount, Integer.BYTES);
+        contractPrices = column(contractsCount, Integer.BYTES);
+        contractRemainedMonths = column(contractsCount, Integer.BYTES);
+
+        producerIds = column(producersCount, Integer.BYTES);
+        producersMaxDistributors = column(producersCount, Integer.BYTES);
+        producerPricesKW = column(producersCount, Double.BYTES);
+        producerEnergyTypes = column(producersCount, Byte.BYTES);
+        producersEnergyPerDistributor = column(producersCount, Integer.BYTES);
+        monthlyStatsStarts = column(producersCount + 1, Integer.BYTES);
+        producersById = column(producersCount, Integer.BYTES);
+
+        monthlyStatsMonths = column(monthlyStatsCount, Integer.BYTES);
+        statsDistributorsStarts = column(monthlyStatsCount + 1, Integer.BYTES);
+        statsDistributorIds = column(statsDistributorsCount, Integer.BYTES);
+
+        if (nextColumn > buffer.limit()) {
+            throw new IOException("Truncated binary result file");
+        }
+    }
+
+    /**
+     * Opens a binary result file; uncompressed files are memory-mapped, while compressed ones
+     * are decompressed in memory
+     *
+     * @param path the binary result file
+     * @return the reader of the result
+     * @throws IOException in case the file cannot be read or is not a binary result
+     */
+    public static BinaryResult open(final String path) throws IOException {
+        return new BinaryResult(FileStreams.readWhole(path));
+    }
+
+    private int readHeaderInt() throws IOException {
+        if (nextColumn + Integer.BYTES > buffer.limit()) {
+            throw new IOException("Truncated binary result file");
+        }
+        int value = buffer.getInt((int) nextColumn);
+        nextColumn += Integer.BYTES;
+        return value;
+    }
+
+    /**
+     * Reserves the next column of the file; the positions are only valid if the file turns
+     * out to be long enough for all the columns
+     *
+     * @return the position of the column in the file
+     */
+    private int column(final int length, final int elementSize) {
+        int position = (int) nextColumn;
+        nextColumn += (long) length * elementSize;
+        return position;
+    }
+
+    private int intAt(final int column, final int index) {
+        return buffer.getInt(column + index * Integer.BYTES);
+    }
+
+    private IntBuffer intColumn(final int column, final int length) {
+        return buffer.slice(column, length * Integer.BYTES).asIntBuffer().asReadOnlyBuffer();
+    }
+
+    /**
+     * Finds an entity by id, with a binary search over the column of indices sorted by id
+     *
+     * @return the index of the entity, or -1 if there is no entity with the given id
+     */
+    private int findById(final int idsColumn, final int sortedColumn, final int length,
+                         final int id) {
+        int low = 0;
+        int high = length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int index = intAt(sortedColumn, middle);
+            int middleId = intAt(idsColumn, index);
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    public int getConsumersCount() {
+        return consumersCount;
+    }
+
+    public int getDistributorsCount() {
+        return distributorsCount;
+    }
+
+    public int getProducersCount() {
+        return producersCount;
+    }
+
+    /**
+     * Finds the index of the consumer with the given id
+     *
+     * @return the index of the consumer, or -1 if there is no such consumer
+     */
+    public int findConsumer(final int id) {
+        return findById(consumerIds, consumersById, consumersCount, id);
+    }
+
+    /**
+     * Finds the index of the distributor with the given id
+     *
+     * @return the index of the distributor, or -1 if there is no such distributor
+     */
+    public int findDistributor(final int id) {
+        return findById(distributorIds, distributorsById, distributorsCount, id);
+    }
+
+    /**
+     * Finds the index of the producer with the given id
+     *
+     * @return the index of the producer, or -1 if there is no such producer
+     */
+    public int findProducer(final int id) {
+        return findById(producerIds, producersById, producersCount, id);
+    }
+
+    /**
+     * Get the id of the consumer with the given index
+     */
+    public int getConsumerId(final int consumer) {
+        return intAt(consumerIds, consumer);
+    }
+
+    /**
+     * Get the budget of the consumer with the given index at the end of the simulation
+     */
+    public int getConsumerBudget(final int consumer) {
+        return intAt(consumerBudgets, consumer);
+    }
+
+    /**
+     * Checks whether or not the consumer with the given index went bankrupt
+     */
+    public boolean isConsumerBankrupt(final int consumer) {
+        return buffer.get(consumersBankrupt + consumer) != 0;
+    }
+
+    /**
+     * Get the id of the distributor with the given index
+     */
+    public int getDistributorId(final int distributor) {
+        return intAt(distributorIds, distributor);
+    }
+
+    /**
+     * Get the energy needed by the distributor with the given index
+     */
+    public int getDistributorEnergyNeededKW(final int distributor) {
+        return intAt(distributorsEnergyNeeded, distributor);
+    }
+
+    /**
+     * Get the contract price of the distributor with the given index
+     */
+    public int getDistributorContractCost(final int distributor) {
+        return intAt(distributorContractCosts, distributor);
+    }
+
+    /**
+     * Get the budget of the distributor with the given index at the end of the simulation
+     */
+    public int getDistributorBudget(final int distributor) {
+        return intAt(distributorBudgets, distributor);
+    }
+
+    /**
+     * Get the producer strategy of the distributor with the given index
+     */
+    public EnergyChoiceStrategyType getDistributorStrategy(final int distributor) {
+        return STRATEGY_TYPES[buffer.get(distributorStrategies + distributor)];
+    }
+
+    /**
+     * Checks whether or not the distributor with the given index went bankrupt
+     */
+    public boolean isDistributorBankrupt(final int distributor) {
+        return buffer.get(distributorsBankrupt + distributor) != 0;
+    }
+
+    /**
+     * Get the number of contracts the distributor with the given index has at the end
+     * of the simulation
+     */
+    public int getContractsCount(final int distributor) {
+        return intAt(contractsStarts, distributor + 1) - intAt(contractsStarts, distributor);
+    }
+
+    /**
+     * Get the id of the consumer of a contract
+     *
+     * @param distributor the index of the distributor
+     * @param contract    the index of the contract among those of the distributor
+     */
+    public int getContractConsumerId(final int distributor, final int contract) {
+        return intAt(contractConsumerIds, intAt(contractsStarts, distributor) + contract);
+    }
+
+    /**
+     * Get the monthly price of a contract
+     *
+     * @param distributor the index of the distributor
+     * @param contract    the index of the contract among those of the distributor
+     */
+    public int getContractPrice(final int distributor, final int contract) {
+        return intAt(contractPrices, intAt(contractsStarts, distributor) + contract);
+    }
+
+    /**
+     * Get the number of months left from a contract
+     *
+     * @param distributor the index of the distributor
+     * @param contract    the index of the contract among those of the distributor
+     */
+    public int getContractRemainedMonths(final int distributor, final int contract) {
+        return intAt(contractRemainedMonths, intAt(contractsStarts, distributor) + contract);
+    }
+
+    /**
+     * Get the id of the producer with the given index
+     */
+    public int getProducerId(final int producer) {
+        return intAt(producerIds, producer);
+    }
+
+    /**
+     * Get the most distributors the producer with the given index supplies
+     */
+    public int getProducerMaxDistributors(final int producer) {
+        return intAt(producersMaxDistributors, producer);
+    }
+
+    /**
+     * Get the price per KW of the producer with the given index
+     */
+    public double getProducerPriceKW(final int producer) {
+        return buffer.getDouble(producerPricesKW + producer * Double.BYTES);
+    }
+
+    /**
+     * Get the energy type of the producer with the given index
+     */
+    public EnergyType getProducerEnergyType(final int producer) {
+        return ENERGY_TYPES[buffer.get(producerEnergyTypes + producer)];
+    }
+
+    /**
+     * Get the energy the producer with the given index gives every distributor
+     */
+    public int getProducerEnergyPerDistributor(final int producer) {
+        return intAt(producersEnergyPerDistributor, producer);
+    }
+
+    /**
+     * Get the number of monthly stats of the producer with the given index
+     */
+    public int getMonthlyStatsCount(final int producer) {
+        return intAt(monthlyStatsStarts, producer + 1) - intAt(monthlyStatsStarts, producer);
+    }
+
+    /**
+     * Get the month of a monthly stats record
+     *
+     * @param producer the index of the producer
+     * @param stats    the index of the record among those of the producer
+     */
+    public int getMonthlyStatsMonth(final int producer, final int stats) {
+        return intAt(monthlyStatsMonths, intAt(monthlyStatsStarts, producer) + stats);
+    }
+
+    /**
+     * Get the ids of the distributors of a producer in a month, in increasing order
+     *
+     * @param producer the index of the producer
+     * @param stats    the index of the monthly stats record among those of the producer
+     * @return a read-only view of the ids
+     */
+    public IntBuffer getMonthlyStatsDistributorsIds(final int producer, final int stats) {
+        int record = intAt(monthlyStatsStarts, producer) + stats;
+        int start = intAt(statsDistributorsStarts, record);
+        int end = intAt(statsDistributorsStarts, record + 1);
+        return intColumn(statsDistributorIds + start * Integer.BYTES, end - start);
+    }
+
+    /**
+     * Get a read-only view of the ids of all consumers, in the order of the result
+     */
+    public IntBuffer getConsumerIds() {
+        return intColumn(consumerIds, consumersCount);
+    }
+
+    /**
+     * Get a read-only view of the budgets of all consumers
+     */
+    public IntBuffer getConsumerBudgets() {
+        return intColumn(consumerBudgets, consumersCount);
+    }
+
+    /**
+     * Get a read-only view of the bankrupt flags of all consumers, one byte each
+     */
+    public ByteBuffer getConsumersBankrupt() {
+        return buffer.slice(consumersBankrupt, consumersCount).asReadOnlyBuffer();
+    }
+
+    /**
+     * Get a read-only view of the ids of all distributors, in the order of the result
+     */
+    public IntBuffer getDistributorIds() {
+        return intColumn(distributorIds, distributorsCount);
+    }
+
+    /**
+     * Get a read-only view of the budgets of all distributors
+     */
+    public IntBuffer getDistributorBudgets() {
+        return intColumn(distributorBudgets, distributorsCount);
+    }
+
+    /**
+     * Get a read-only view of the contract costs of all distributors
+     */
+    public IntBuffer getDistributorContractCosts() {
+        return intColumn(distributorContractCosts, distributorsCount);
+    }
+
+    /**
+     * Get a read-only view of the bankrupt flags of all distributors, one byte each
+     */
+    public ByteBuffer getDistributorsBankrupt() {
+        return buffer.slice(distributorsBankrupt, distributorsCount).asReadOnlyBuffer();
+    }
+
+    /**
+     * Get a read-only view of the ids of all producers, in the order of the result
+     */
+    public IntBuffer getProducerIds() {
+        return intColumn(producerIds, producersCount);
+    }
+
+    /**
+     * Get a read-only view of the prices per KW of all producers
+     */
+    public DoubleBuffer getProducerPricesKW() {
+        return buffer.slice(producerPricesKW, producersCount * Double.BYTES).asDoubleBuffer()
+                .asReadOnlyBuffer();
+    }
+}
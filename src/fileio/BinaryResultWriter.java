@@ -0,0 +1,222 @@
+package fileio;
+
+import business.Contract;
+import entities.Consumer;
+import entities.Distributor;
+import entities.Producer;
+import simulation.SimulationDatabase;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes the result of the simulation in the binary columnar format read by BinaryResult
+ * <p>
+ * The file starts with a header (magic number, format version and the length of every list:
+ * consumers, distributors, contracts, producers, monthly stats and distributor ids of the
+ * monthly stats), followed by one primitive column for every field. The contracts of all the
+ * distributors are stored in the same columns, one distributor after the other, and every
+ * distributor has the index of its first contract in a column of start offsets; the monthly
+ * stats of the producers are stored the same way. Every entity list also has a column with the
+ * indices of the entities in increasing order of their ids, so they can be looked up by id
+ */
+public final class BinaryResultWriter {
+    static final byte[] MAGIC = {'E', 'S', 'B', 'R'};
+    static final int VERSION = 1;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int ID_SHIFT = 32;
+    private static final long INDEX_MASK = 0xFFFFFFFFL;
+
+    private final String outputPath;
+
+    public BinaryResultWriter(final String outputPath) {
+        this.outputPath = outputPath;
+    }
+
+    /**
+     * Writes the result to the designated output file
+     *
+     * @param database contains information about consumers, distributors and producers
+     *                 at the end of the simulation
+     * @throws IOException in case writing to the output file fails
+     */
+    public void writeResult(final SimulationDatabase database) throws IOException {
+        List<Consumer> consumers = database.getConsumers();
+        List<Distributor> distributors = database.getDistributors();
+        List<Producer> producers = database.getProducers();
+
+        int contractsCount = 0;
+        for (Distributor distributor : distributors) {
+            contractsCount += distributor.getContractsInfo().getContracts().size();
+        }
+        int monthlyStatsCount = 0;
+        int statsDistributorsCount = 0;
+        for (Producer producer : producers) {
+            monthlyStatsCount += producer.getMonthlyStats().size();
+            for (Producer.MonthlyStats monthlyStats : producer.getMonthlyStats()) {
+                statsDistributorsCount += monthlyStats.getDistributorsIds().size();
+            }
+        }
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                FileStreams.openOutput(outputPath), BUFFER_SIZE))) {
+            output.write(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(consumers.size());
+            output.writeInt(distributors.size());
+            output.writeInt(contractsCount);
+            output.writeInt(producers.size());
+            output.writeInt(monthlyStatsCount);
+            output.writeInt(statsDistributorsCount);
+
+            writeConsumers(output, consumers);
+            writeDistributors(output, distributors);
+            writeContracts(output, distributors);
+            writeProducers(output, producers);
+            writeMonthlyStats(output, producers);
+        }
+    }
+
+    private static void writeConsumers(final DataOutputStream output,
+                                       final List<Consumer> consumers) throws IOException {
+        int[] ids = new int[consumers.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = consumers.get(i).getId();
+            output.writeInt(ids[i]);
+        }
+        for (Consumer consumer : consumers) {
+            output.writeInt(consumer.getBudget());
+        }
+        for (Consumer consumer : consumers) {
+            output.writeBoolean(consumer.getBankrupt());
+        }
+        writeIndicesById(output, ids);
+    }
+
+    private static void writeDistributors(final DataOutputStream output,
+                                          final List<Distributor> distributors)
+            throws IOException {
+        int[] ids = new int[distributors.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = distributors.get(i).getId();
+            output.writeInt(ids[i]);
+        }
+        for (Distributor distributor : distributors) {
+            output.writeInt(distributor.getProducersInfo().getEnergyNeededKW());
+        }
+        for (Distributor distributor : distributors) {
+            output.writeInt(distributor.getContractsInfo().getContractPrice());
+        }
+        for (Distributor distributor : distributors) {
+            output.writeInt(distributor.getBudget());
+        }
+        for (Distributor distributor : distributors) {
+            output.writeByte(distributor.getProducersInfo().getStrategyType().ordinal());
+        }
+        for (Distributor distributor : distributors) {
+            output.writeBoolean(distributor.getBankrupt());
+        }
+
+        int contractsStart = 0;
+        for (Distributor distributor : distributors) {
+            output.writeInt(contractsStart);
+            contractsStart += distributor.getContractsInfo().getContracts().size();
+        }
+        output.writeInt(contractsStart);
+        writeIndicesById(output, ids);
+    }
+
+    private static void writeContracts(final DataOutputStream output,
+                                       final List<Distributor> distributors) throws IOException {
+        for (Distributor distributor : distributors) {
+            for (Contract contract : distributor.getContractsInfo().getContracts()) {
+                output.writeInt(contract.getConsumer().getId());
+            }
+        }
+        for (Distributor distributor : distributors) {
+            for (Contract contract : distributor.getContractsInfo().getContracts()) {
+                output.writeInt(contract.getPrice());
+            }
+        }
+        for (Distributor distributor : distributors) {
+            for (Contract contract : distributor.getContractsInfo().getContracts()) {
+                output.writeInt(contract.getRemainedContractMonths());
+            }
+        }
+    }
+
+    private static void writeProducers(final DataOutputStream output,
+                                       final List<Producer> producers) throws IOException {
+        int[] ids = new int[producers.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = producers.get(i).getId();
+            output.writeInt(ids[i]);
+        }
+        for (Producer producer : producers) {
+            output.writeInt(producer.getDistributorsInfo().getMaxDistributors());
+        }
+        for (Producer producer : producers) {
+            output.writeDouble(producer.getEnergyInfo().getPriceKW());
+        }
+        for (Producer producer : producers) {
+            output.writeByte(producer.getEnergyInfo().getEnergyType().ordinal());
+        }
+        for (Producer producer : producers) {
+            output.writeInt(producer.getEnergyInfo().getEnergyPerDistributor());
+        }
+
+        int monthlyStatsStart = 0;
+        for (Producer producer : producers) {
+            output.writeInt(monthlyStatsStart);
+            monthlyStatsStart += producer.getMonthlyStats().size();
+        }
+        output.writeInt(monthlyStatsStart);
+        writeIndicesById(output, ids);
+    }
+
+    private static void writeMonthlyStats(final DataOutputStream output,
+                                          final List<Producer> producers) throws IOException {
+        for (Producer producer : producers) {
+            for (Producer.MonthlyStats monthlyStats : producer.getMonthlyStats()) {
+                output.writeInt(monthlyStats.getMonth());
+            }
+        }
+
+        int distributorsStart = 0;
+        for (Producer producer : producers) {
+            for (Producer.MonthlyStats monthlyStats : producer.getMonthlyStats()) {
+                output.writeInt(distributorsStart);
+                distributorsStart += monthlyStats.getDistributorsIds().size();
+            }
+        }
+        output.writeInt(distributorsStart);
+
+        for (Producer producer : producers) {
+            for (Producer.MonthlyStats monthlyStats : producer.getMonthlyStats()) {
+                for (Integer distributorId : monthlyStats.getDistributorsIds()) {
+                    output.writeInt(distributorId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the indices of the entities with the given ids, in increasing order of the ids
+     */
+    private static void writeIndicesById(final DataOutputStream output,
+                                         final int[] ids) throws IOException {
+        long[] idsWithIndices = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            idsWithIndices[i] = ((long) ids[i] << ID_SHIFT) | i;
+        }
+        Arrays.sort(idsWithIndices);
+
+        for (long idWithIndex : idsWithIndices) {
+            output.writeInt((int) (idWithIndex & INDEX_MASK));
+        }
+    }
+}
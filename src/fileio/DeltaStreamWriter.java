@@ -0,0 +1,196 @@
+package fileio;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the monthly deltas of the simulation as NDJSON, one line per month
+ * <p>
+ * Deltas are serialized by a dedicated writer thread, which drains a bounded ring buffer filled
+ * by the simulation, so writing a month overlaps with simulating the next one. When the disk
+ * falls behind and the buffer is full, the simulation waits for the writer to catch up. Every
+ * line is flushed once written, so a crashed run still leaves the months it completed, even
+ * when the stream is compressed with gzip
+ * <p>
+ * A failure of the writer thread is recorded and rethrown to the simulation the next time it
+ * hands over a delta; while the buffer is full, the simulation checks for it every few
+ * milliseconds, so a writer that died never leaves it waiting
+ */
+public final class DeltaStreamWriter implements Closeable {
+    private static final int BUFFER_CAPACITY = 64;
+    private static final TurnDelta END_OF_STREAM = new TurnDelta(-1);
+    private static final long OFFER_TIMEOUT_MILLIS = 50;
+
+    private final BlockingQueue<TurnDelta> buffer;
+    private final JsonGenerator generator;
+    private final Thread writerThread;
+    private volatile Exception failure;
+
+    public DeltaStreamWriter(final String outputPath) throws IOException {
+        buffer = new ArrayBlockingQueue<>(BUFFER_CAPACITY);
+        generator = new JsonFactory().createGenerator(FileStreams.openOutput(outputPath),
+                JsonEncoding.UTF8);
+        generator.setRootValueSeparator(null);
+
+        writerThread = new Thread(this::drainBuffer, "delta-stream-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Hands a delta to the writer thread, waiting for room in the buffer if it is full
+     *
+     * @param delta the changes made in a month; it must not be modified afterwards
+     */
+    public void submit(final TurnDelta delta) {
+        try {
+            handOver(delta);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Puts a delta in the buffer, waiting for room while the writer thread is still working
+     *
+     * @throws IOException in case writing a previous delta failed
+     */
+    private void handOver(final TurnDelta delta) throws IOException {
+        checkFailure();
+        try {
+            while (!buffer.offer(delta, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+                if (!writerThread.isAlive()) {
+                    throw new IllegalStateException("The delta writer stopped unexpectedly");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the delta writer", e);
+        }
+    }
+
+    /**
+     * Rethrows the failure of the writer thread, if there was one
+     */
+    private void checkFailure() throws IOException {
+        Exception writerFailure = failure;
+        if (writerFailure instanceof IOException) {
+            throw (IOException) writerFailure;
+        }
+        if (writerFailure != null) {
+            throw new IllegalStateException("The delta writer failed", writerFailure);
+        }
+    }
+
+    private void drainBuffer() {
+        while (true) {
+            TurnDelta delta;
+            try {
+                delta = buffer.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (delta == END_OF_STREAM) {
+                return;
+            }
+
+            // after a failure, keep draining so the simulation never waits on a dead writer
+            if (failure == null) {
+                try {
+                    writeDelta(delta);
+                } catch (IOException | RuntimeException e) {
+                    failure = e;
+                }
+            }
+        }
+    }
+
+    private void writeDelta(final TurnDelta delta) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("month", delta.getMonth());
+
+        generator.writeArrayFieldStart("consumers");
+        for (int i = 0; i < delta.getConsumersCount(); i++) {
+            generator.writeStartObject();
+            generator.writeNumberField("id", delta.getConsumerId(i));
+            generator.writeBooleanField("isBankrupt", delta.isConsumerBankrupt(i));
+            generator.writeNumberField("budget", delta.getConsumerBudget(i));
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+
+        generator.writeArrayFieldStart("distributors");
+        for (int i = 0; i < delta.getDistributorsCount(); i++) {
+            generator.writeStartObject();
+            generator.writeNumberField("id", delta.getDistributorId(i));
+            generator.writeNumberField("contractCost", delta.getDistributorContractCost(i));
+            generator.writeNumberField("budget", delta.getDistributorBudget(i));
+            generator.writeBooleanField("isBankrupt", delta.isDistributorBankrupt(i));
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+
+        generator.writeArrayFieldStart("contracts");
+        for (int i = 0; i < delta.getContractsCount(); i++) {
+            generator.writeStartObject();
+            generator.writeNumberField("consumerId", delta.getContractConsumerId(i));
+            generator.writeNumberField("distributorId", delta.getContractDistributorId(i));
+            generator.writeNumberField("price", delta.getContractPrice(i));
+            generator.writeNumberField("remainedContractMonths",
+                    delta.getContractRemainedMonths(i));
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+
+        generator.writeArrayFieldStart("removedContracts");
+        for (int i = 0; i < delta.getRemovedContractsCount(); i++) {
+            generator.writeNumber(delta.getRemovedContractConsumerId(i));
+        }
+        generator.writeEndArray();
+
+        generator.writeArrayFieldStart("energyProducers");
+        for (int i = 0; i < delta.getProducerIds().size(); i++) {
+            generator.writeStartObject();
+            generator.writeNumberField("id", delta.getProducerIds().get(i));
+            generator.writeArrayFieldStart("distributorsIds");
+            for (int distributorId : delta.getProducerDistributorsIds().get(i)) {
+                generator.writeNumber(distributorId);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+        generator.flush();
+    }
+
+    /**
+     * Waits for the writer thread to write all submitted deltas, then closes the stream
+     *
+     * @throws IOException in case writing any of the deltas failed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            handOver(END_OF_STREAM);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writerThread.interrupt();
+        } finally {
+            generator.close();
+        }
+        checkFailure();
+    }
+}
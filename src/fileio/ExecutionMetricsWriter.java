@@ -0,0 +1,75 @@
+package fileio;
+
+import business.ExecutionPlan;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+
+/**
+ * Writes the metrics of the execution plan of a simulation as JSON: its calibration and, for
+ * every phase, the work from which it runs in parallel, how many of its runs were sequential
+ * and parallel, and the work and choice of its last run
+ * <p>
+ * A phase that is never parallel has a null threshold; one that never ran has a null last
+ * choice
+ */
+public final class ExecutionMetricsWriter {
+    private final String outputPath;
+
+    public ExecutionMetricsWriter(final String outputPath) {
+        this.outputPath = outputPath;
+    }
+
+    /**
+     * Writes the metrics to the designated output file, compressed with gzip if the name of
+     * the file ends in .gz
+     *
+     * @param plan the plan the simulation ran with
+     * @throws IOException in case writing to the output file fails
+     */
+    public void writeMetrics(final ExecutionPlan plan) throws IOException {
+        try (JsonGenerator generator = new JsonFactory()
+                .createGenerator(FileStreams.openOutput(outputPath), JsonEncoding.UTF8)) {
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartObject();
+            generator.writeNumberField("parallelism", plan.getParallelism());
+            generator.writeStringField("calibration", plan.isMeasured() ? "measured" : "loaded");
+            generator.writeNumberField("overheadNanos", plan.getOverheadNanos());
+
+            generator.writeArrayFieldStart("phases");
+            for (ExecutionPlan.Phase phase : ExecutionPlan.Phase.values()) {
+                writePhase(generator, plan, phase);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    private static void writePhase(final JsonGenerator generator, final ExecutionPlan plan,
+                                   final ExecutionPlan.Phase phase) throws IOException {
+        long threshold = plan.getThreshold(phase);
+        long runs = plan.getSequentialRuns(phase) + plan.getParallelRuns(phase);
+
+        generator.writeStartObject();
+        generator.writeStringField("phase", phase.name());
+        generator.writeNumberField("unitCostNanos", plan.getUnitCostNanos(phase));
+        generator.writeFieldName("threshold");
+        if (threshold == Long.MAX_VALUE) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(threshold);
+        }
+        generator.writeNumberField("sequentialRuns", plan.getSequentialRuns(phase));
+        generator.writeNumberField("parallelRuns", plan.getParallelRuns(phase));
+        generator.writeNumberField("lastWork", plan.getLastWork(phase));
+        generator.writeFieldName("lastChoice");
+        if (runs == 0) {
+            generator.writeNull();
+        } else {
+            generator.writeString(plan.wasLastParallel(phase) ? "parallel" : "sequential");
+        }
+        generator.writeEndObject();
+    }
+}
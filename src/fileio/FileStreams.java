@@ -0,0 +1,93 @@
+package fileio;
+
+import java.io.BufferedInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Opens the files read and written by the simulation
+ * <p>
+ * Gzip-compressed inputs are recognized by their header and decompressed while they are read;
+ * uncompressed inputs are memory-mapped instead of going through buffered streams. Outputs
+ * whose name ends in .gz are compressed while they are written
+ */
+final class FileStreams {
+    private static final int GZIP_MAGIC_FIRST = 0x1F;
+    private static final int GZIP_MAGIC_SECOND = 0x8B;
+    private static final String GZIP_EXTENSION = ".gz";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private FileStreams() {
+    }
+
+    /**
+     * Opens an input file as a stream of its (decompressed) bytes
+     */
+    static InputStream openInput(final String path) throws IOException {
+        if (isGzip(path)) {
+            return new GZIPInputStream(Files.newInputStream(Path.of(path)), BUFFER_SIZE);
+        }
+        return new MappedInputStream(FileChannel.open(Path.of(path), StandardOpenOption.READ));
+    }
+
+    /**
+     * Opens an input file as a channel of its (decompressed) bytes
+     */
+    static ReadableByteChannel openChannel(final String path) throws IOException {
+        InputStream input = openInput(path);
+        if (input instanceof ReadableByteChannel) {
+            return (ReadableByteChannel) input;
+        }
+        return Channels.newChannel(input);
+    }
+
+    /**
+     * Gets all the (decompressed) bytes of an input file; uncompressed files are mapped
+     * in memory rather than copied
+     */
+    static ByteBuffer readWhole(final String path) throws IOException {
+        if (isGzip(path)) {
+            try (InputStream input = openInput(path)) {
+                return ByteBuffer.wrap(input.readAllBytes());
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Input file too large to be held in a single buffer");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Opens an output file, compressing it if its name ends in .gz
+     * <p>
+     * Flushing a compressed output flushes the compressed data as well, so everything
+     * written before the flush can be decompressed even if the output is never closed
+     */
+    static OutputStream openOutput(final String path) throws IOException {
+        OutputStream output = new FileOutputStream(path);
+        if (path.endsWith(GZIP_EXTENSION)) {
+            return new GZIPOutputStream(output, BUFFER_SIZE, true);
+        }
+        return output;
+    }
+
+    private static boolean isGzip(final String path) throws IOException {
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(Path.of(path)))) {
+            return input.read() == GZIP_MAGIC_FIRST && input.read() == GZIP_MAGIC_SECOND;
+        }
+    }
+}
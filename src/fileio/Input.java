@@ -1,12 +1,11 @@
 package fileio;
 
-import java.util.List;
-
-public final class Input {
+public final class Input implements SimulationInput {
     private Integer numberOfTurns;
     private InitialDataInput initialData;
-    private List<MonthlyUpdateInput> monthlyUpdates;
+    private MonthlySchedule monthlyUpdates;
 
+    @Override
     public Integer getNumberOfTurns() {
         return numberOfTurns;
     }
@@ -15,6 +14,7 @@ public final class Input {
         this.numberOfTurns = numberOfTurns;
     }
 
+    @Override
     public InitialDataInput getInitialData() {
         return initialData;
     }
@@ -23,11 +23,20 @@ public final class Input {
         this.initialData = initialData;
     }
 
-    public List<MonthlyUpdateInput> getMonthlyUpdates() {
+    public MonthlySchedule getMonthlyUpdates() {
         return monthlyUpdates;
     }
 
-    public void setMonthlyUpdates(final List<MonthlyUpdateInput> monthlyUpdates) {
+    public void setMonthlyUpdates(final MonthlySchedule monthlyUpdates) {
         this.monthlyUpdates = monthlyUpdates;
     }
+
+    @Override
+    public MonthlyUpdateInput getMonthlyUpdate(final int turn) {
+        return monthlyUpdates == null ? null : monthlyUpdates.getUpdate(turn);
+    }
+
+    @Override
+    public void close() {
+    }
 }
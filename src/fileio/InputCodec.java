@@ -0,0 +1,381 @@
+package fileio;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import entities.EnergyType;
+import strategies.EnergyChoiceStrategyType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Hand-written decoders for the input schema, which read the input DTOs straight from a
+ * JsonParser, without going through the reflection of Jackson databind
+ * <p>
+ * The decoders only accept the exact schema of the input; anything else (unknown fields,
+ * values that would need coercion) is reported with a CodecMismatchException, so the caller
+ * can fall back to databind
+ */
+final class InputCodec {
+    private InputCodec() {
+    }
+
+    /**
+     * Reads a whole input; the parser has to be positioned before its first token
+     */
+    static Input readInput(final JsonParser parser) throws IOException {
+        return readInput(parser, InputCodec::readList);
+    }
+
+    /**
+     * Reads a whole input, decoding the consumers and producers of the initial data with
+     * the given list reader
+     */
+    static Input readInput(final JsonParser parser,
+                           final ListReader initialDataReader) throws IOException {
+        parser.nextToken();
+        expect(parser, JsonToken.START_OBJECT);
+
+        Input input = new Input();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "numberOfTurns" -> input.setNumberOfTurns(readInteger(parser));
+                case "initialData" ->
+                        input.setInitialData(readInitialData(parser, initialDataReader));
+                case "monthlyUpdates" -> input.setMonthlyUpdates(
+                        readMonthlySchedule(parser, InputCodec::readMonthlyUpdate));
+                default -> throw unknownField(parser, field);
+            }
+        }
+        return input;
+    }
+
+    static InitialDataInput readInitialData(final JsonParser parser) throws IOException {
+        return readInitialData(parser, InputCodec::readList);
+    }
+
+    private static InitialDataInput readInitialData(final JsonParser parser,
+                                                    final ListReader listReader)
+            throws IOException {
+        if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, JsonToken.START_OBJECT);
+
+        InitialDataInput initialData = new InitialDataInput();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "consumers" -> initialData.setConsumers(
+                        listReader.read(parser, InputCodec::readConsumer));
+                case "distributors" ->
+                        initialData.setDistributors(readList(parser, InputCodec::readDistributor));
+                case "producers" -> initialData.setProducers(
+                        listReader.read(parser, InputCodec::readProducer));
+                default -> throw unknownField(parser, field);
+            }
+        }
+        return initialData;
+    }
+
+    /**
+     * Reads the monthly updates, either in the dense form (an array with an update for every
+     * turn) or in the sparse form (an object keyed by month); every update is decoded with
+     * the given reader
+     */
+    static MonthlySchedule readMonthlySchedule(
+            final JsonParser parser,
+            final ElementReader<MonthlyUpdateInput> updateReader) throws IOException {
+        if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (parser.getCurrentToken() == JsonToken.START_ARRAY) {
+            return MonthlySchedule.dense(readList(parser, updateReader));
+        }
+        expect(parser, JsonToken.START_OBJECT);
+
+        TreeMap<Integer, MonthlyUpdateInput> updates = new TreeMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            int turn = readScheduledTurn(parser);
+            if (updates.containsKey(turn)) {
+                throw new JsonParseException(parser, "Duplicate monthly update for month "
+                        + parser.getCurrentName());
+            }
+            parser.nextToken();
+            updates.put(turn, updateReader.read(parser));
+        }
+
+        int[] turns = new int[updates.size()];
+        MonthlyUpdateInput[] scheduledUpdates = new MonthlyUpdateInput[updates.size()];
+        int index = 0;
+        for (Map.Entry<Integer, MonthlyUpdateInput> entry : updates.entrySet()) {
+            turns[index] = entry.getKey();
+            scheduledUpdates[index] = entry.getValue();
+            index++;
+        }
+        return new MonthlySchedule(turns, scheduledUpdates);
+    }
+
+    /**
+     * Reads the month a monthly update of the sparse form is keyed by; the parser has to be
+     * positioned on the key
+     *
+     * @return the turn in which the update is applied
+     */
+    static int readScheduledTurn(final JsonParser parser) throws IOException {
+        String key = parser.getCurrentName();
+        int month;
+        try {
+            month = Integer.parseInt(key);
+        } catch (NumberFormatException e) {
+            month = 0;
+        }
+        if (month < 1) {
+            throw new JsonParseException(parser, "Invalid month \"" + key + "\"");
+        }
+        return month - 1;
+    }
+
+    static MonthlyUpdateInput readMonthlyUpdate(final JsonParser parser) throws IOException {
+        if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, JsonToken.START_OBJECT);
+
+        MonthlyUpdateInput update = new MonthlyUpdateInput();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "newConsumers" ->
+                        update.setNewConsumers(readList(parser, InputCodec::readConsumer));
+                case "distributorChanges" -> update.setDistributorChanges(
+                        readList(parser, InputCodec::readDistributorChanges));
+                case "producerChanges" -> update.setProducerChanges(
+                        readList(parser, InputCodec::readProducerChanges));
+                default -> throw unknownField(parser, field);
+            }
+        }
+        return update;
+    }
+
+    static ConsumerInput readConsumer(final JsonParser parser) throws IOException {
+        expect(parser, JsonToken.START_OBJECT);
+
+        ConsumerInput consumer = new ConsumerInput();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "id" -> consumer.setId(readInteger(parser));
+                case "initialBudget" -> consumer.setInitialBudget(readInteger(parser));
+                case "monthlyIncome" -> consumer.setMonthlyIncome(readInteger(parser));
+                default -> throw unknownField(parser, field);
+            }
+        }
+        return consumer;
+    }
+
+    static DistributorInput readDistributor(final JsonParser parser) throws IOException {
+        expect(parser, JsonToken.START_OBJECT);
+
+        DistributorInput distributor = new DistributorInput();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "id" -> distributor.setId(readInteger(parser));
+                case "contractLength" -> distributor.setContractLength(readInteger(parser));
+                case "initialBudget" -> distributor.setInitialBudget(readInteger(parser));
+                case "initialInfrastructureCost" ->
+                        distributor.setInitialInfrastructureCost(readInteger(parser));
+                case "energyNeededKW" -> distributor.setEnergyNeededKW(readInteger(parser));
+                case "producerStrategy" -> distributor.setProducerStrategy(
+                        readEnum(parser, EnergyChoiceStrategyType.class));
+                default -> throw unknownField(parser, field);
+            }
+        }
+        return distributor;
+    }
+
+    static ProducerInput readProducer(final JsonParser parser) throws IOException {
+        expect(parser, JsonToken.START_OBJECT);
+
+        ProducerInput producer = new ProducerInput();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "id" -> producer.setId(readInteger(parser));
+                case "energyType" -> producer.setEnergyType(readEnum(parser, EnergyType.class));
+                case "maxDistributors" -> producer.setMaxDistributors(readInteger(parser));
+                case "priceKW" -> producer.setPriceKW(readDouble(parser));
+                case "energyPerDistributor" ->
+                        producer.setEnergyPerDistributor(readInteger(parser));
+                default -> throw unknownField(parser, field);
+            }
+        }
+        return producer;
+    }
+
+    static DistributorChangesInput readDistributorChanges(final JsonParser parser)
+            throws IOException {
+        expect(parser, JsonToken.START_OBJECT);
+
+        DistributorChangesInput changes = new DistributorChangesInput();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "id" -> changes.setId(readInteger(parser));
+                case "infrastructureCost" -> changes.setInfrastructureCost(readInteger(parser));
+                default -> throw unknownField(parser, field);
+            }
+        }
+        return changes;
+    }
+
+    static ProducerChangesInput readProducerChanges(final JsonParser parser) throws IOException {
+        expect(parser, JsonToken.START_OBJECT);
+
+        ProducerChangesInput changes = new ProducerChangesInput();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "id" -> changes.setId(readInteger(parser));
+                case "energyPerDistributor" ->
+                        changes.setEnergyPerDistributor(readInteger(parser));
+                default -> throw unknownField(parser, field);
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Reads a JSON array whose elements are decoded by the given reader; the parser has to be
+     * positioned on the start of the array and is left on its end
+     */
+    static <T> List<T> readList(final JsonParser parser,
+                                final ElementReader<T> elementReader) throws IOException {
+        if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, JsonToken.START_ARRAY);
+
+        List<T> elements = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            elements.add(elementReader.read(parser));
+        }
+        return elements;
+    }
+
+    /**
+     * Ensures the parser did not reach the end of the input in the middle of a value
+     */
+    static void expectMoreTokens(final JsonParser parser) throws CodecMismatchException {
+        if (parser.getCurrentToken() == null) {
+            throw mismatch(parser, "Unexpected end of input");
+        }
+    }
+
+    private static Integer readInteger(final JsonParser parser) throws IOException {
+        return switch (parser.getCurrentToken()) {
+            case VALUE_NUMBER_INT -> parser.getIntValue();
+            case VALUE_NULL -> null;
+            default -> throw mismatch(parser, "Expected an integer");
+        };
+    }
+
+    private static Double readDouble(final JsonParser parser) throws IOException {
+        return switch (parser.getCurrentToken()) {
+            case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> parser.getDoubleValue();
+            case VALUE_NULL -> null;
+            default -> throw mismatch(parser, "Expected a number");
+        };
+    }
+
+    private static <E extends Enum<E>> E readEnum(final JsonParser parser,
+                                                  final Class<E> enumType) throws IOException {
+        if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, JsonToken.VALUE_STRING);
+
+        try {
+            return Enum.valueOf(enumType, parser.getText());
+        } catch (IllegalArgumentException e) {
+            throw mismatch(parser, "Unknown " + enumType.getSimpleName() + " value");
+        }
+    }
+
+    private static void expect(final JsonParser parser,
+                               final JsonToken token) throws CodecMismatchException {
+        if (parser.getCurrentToken() != token) {
+            throw mismatch(parser, "Expected " + token + " but got " + parser.getCurrentToken());
+        }
+    }
+
+    private static CodecMismatchException unknownField(final JsonParser parser,
+                                                       final String field) {
+        return mismatch(parser, "Unrecognized field \"" + field + "\"");
+    }
+
+    private static CodecMismatchException mismatch(final JsonParser parser,
+                                                   final String message) {
+        return new CodecMismatchException(parser, message);
+    }
+
+    /**
+     * Decoder of a single element of a JSON array
+     *
+     * @param <T> the type of the decoded elements
+     */
+    @FunctionalInterface
+    interface ElementReader<T> {
+        /**
+         * Decodes the element the parser is positioned on
+         *
+         * @param parser the parser, left on the last token of the element
+         * @return the decoded element
+         * @throws IOException in case reading or decoding the element fails
+         */
+        T read(JsonParser parser) throws IOException;
+    }
+
+    /**
+     * Decoder of a whole JSON array, given the decoder of its elements
+     */
+    @FunctionalInterface
+    interface ListReader {
+        /**
+         * Decodes the array the parser is positioned on
+         *
+         * @param parser        the parser, left on the end of the array
+         * @param elementReader the decoder of a single element
+         * @param <T>           the type of the decoded elements
+         * @return the decoded elements, in order
+         * @throws IOException in case reading or decoding the array fails
+         */
+        <T> List<T> read(JsonParser parser, ElementReader<T> elementReader) throws IOException;
+    }
+
+    /**
+     * Thrown when the input does not follow the exact schema handled by the codec; the same
+     * input might still be accepted by Jackson databind
+     */
+    static final class CodecMismatchException extends JsonParseException {
+        private static final long serialVersionUID = 1L;
+
+        CodecMismatchException(final JsonParser parser, final String message) {
+            super(parser, message);
+        }
+    }
+}
@@ -1,15 +1,59 @@
 package fileio;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
+/**
+ * Loads the input of the simulation; JSON is decoded with the hand-written input codecs,
+ * falling back to Jackson databind when the codecs do not handle the input, or when databind
+ * is explicitly requested
+ * <p>
+ * Input files may be gzip-compressed, in which case they are decompressed while read
+ */
 public final class InputParser {
     private final String inputPath;
+    private final boolean databind;
 
     public InputParser(final String inputPath) {
+        this(inputPath, false);
+    }
+
+    public InputParser(final String inputPath, final boolean databind) {
         this.inputPath = inputPath;
+        this.databind = databind;
+    }
+
+    /**
+     * Opens the input from inputPath, choosing the loader based on the header of the file:
+     * binary columnar inputs are always read turn by turn, while JSON inputs are loaded
+     * according to the given mode
+     *
+     * @param mode how a JSON input should be loaded
+     * @return the input, which has to be closed once the simulation ends
+     * @throws IOException in case reading the input file fails
+     */
+    public SimulationInput openInput(final LoadingMode mode) throws IOException {
+        if (hasBinaryHeader()) {
+            return new BinaryInput(FileStreams.openChannel(inputPath));
+        }
+        return switch (mode) {
+            case WHOLE -> loadInput();
+            case STREAMING -> openStreamingInput();
+            case PARALLEL -> loadInputInParallel();
+        };
+    }
+
+    private boolean hasBinaryHeader() throws IOException {
+        try (InputStream stream = FileStreams.openInput(inputPath)) {
+            return Arrays.equals(stream.readNBytes(BinaryInput.MAGIC.length), BinaryInput.MAGIC);
+        }
     }
 
     /**
@@ -20,6 +64,75 @@ public final class InputParser {
      */
     public Input loadInput() throws IOException {
         ObjectMapper objectMapper = new ObjectMapper();
-        return objectMapper.readValue(new File(inputPath), Input.class);
+        if (!databind) {
+            JsonFactory factory = objectMapper.getFactory();
+            try (JsonParser parser = factory.createParser(FileStreams.openInput(inputPath))) {
+                return InputCodec.readInput(parser);
+            } catch (InputCodec.CodecMismatchException e) {
+                // the input needs the more lenient databind, which reads it from the start
+            }
+        }
+        return objectMapper.readValue(FileStreams.openInput(inputPath), Input.class);
+    }
+
+    /**
+     * Loads the input from inputPath into an Input object, decoding the consumers and
+     * producers of the initial data in parallel, on the common fork-join pool
+     * <p>
+     * The whole file is mapped in memory first (or decompressed in memory, if it is
+     * compressed), so that chunks of the large arrays can be decoded independently of each other
+     *
+     * @return the whole input contained in the Input object
+     * @throws IOException in case parsing from the input file fails
+     */
+    public Input loadInputInParallel() throws IOException {
+        if (databind) {
+            return loadInput();
+        }
+
+        ByteBuffer bytes = FileStreams.readWhole(inputPath);
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonFactory factory = objectMapper.getFactory();
+        ParallelListReader listReader =
+                new ParallelListReader(factory, bytes, ForkJoinPool.commonPool());
+
+        try (JsonParser parser = factory.createParser(new MappedInputStream(bytes.duplicate()))) {
+            return InputCodec.readInput(parser, listReader::readList);
+        } catch (InputCodec.CodecMismatchException e) {
+            // the input needs the more lenient databind, which reads it from the start
+        }
+        return objectMapper.readValue(new MappedInputStream(bytes.duplicate()), Input.class);
+    }
+
+    /**
+     * Opens the input from inputPath for streaming: the initial data is loaded right away,
+     * while the monthly updates are parsed one month at a time, as the simulation advances
+     *
+     * @return the input, which has to be closed once the simulation ends
+     * @throws IOException in case parsing the beginning of the input file fails
+     */
+    public StreamingInput openStreamingInput() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        return new StreamingInput(
+                () -> objectMapper.getFactory().createParser(FileStreams.openInput(inputPath)),
+                objectMapper, databind);
+    }
+
+    /**
+     * Ways of loading a JSON input
+     */
+    public enum LoadingMode {
+        /**
+         * The whole input is parsed up front
+         */
+        WHOLE,
+        /**
+         * The initial data is parsed up front, the monthly updates one month at a time
+         */
+        STREAMING,
+        /**
+         * The whole input is parsed up front, the large arrays of the initial data in parallel
+         */
+        PARALLEL
     }
 }
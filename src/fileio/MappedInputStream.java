@@ -0,0 +1,104 @@
+package fileio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Sequential stream over a memory-mapped file, or over a buffer that is already in memory
+ * <p>
+ * Files are mapped one window at a time, so files larger than a single mapping can be read
+ * too. The stream is also a channel, so bytes can be moved straight into another buffer
+ */
+final class MappedInputStream extends InputStream implements ReadableByteChannel {
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+    private final long size;
+    private long nextWindowStart;
+    private ByteBuffer window;
+    private boolean open;
+
+    MappedInputStream(final FileChannel channel) throws IOException {
+        this.channel = channel;
+        size = channel.size();
+        nextWindowStart = 0;
+        window = ByteBuffer.allocate(0);
+        open = true;
+    }
+
+    MappedInputStream(final ByteBuffer buffer) {
+        channel = null;
+        size = buffer.remaining();
+        nextWindowStart = size;
+        window = buffer;
+        open = true;
+    }
+
+    /**
+     * Maps the next window of the file once the current one is used up
+     *
+     * @return false if the end of the file was reached, true otherwise
+     */
+    private boolean nextBytesAvailable() throws IOException {
+        if (window.hasRemaining()) {
+            return true;
+        }
+        if (channel == null || nextWindowStart >= size) {
+            return false;
+        }
+
+        long length = Math.min(WINDOW_SIZE, size - nextWindowStart);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, nextWindowStart, length);
+        nextWindowStart += length;
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return nextBytesAvailable() ? Byte.toUnsignedInt(window.get()) : -1;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!nextBytesAvailable()) {
+            return -1;
+        }
+
+        int count = Math.min(length, window.remaining());
+        window.get(bytes, offset, count);
+        return count;
+    }
+
+    @Override
+    public int read(final ByteBuffer destination) throws IOException {
+        if (!nextBytesAvailable()) {
+            return -1;
+        }
+
+        int count = Math.min(destination.remaining(), window.remaining());
+        ByteBuffer slice = window.slice();
+        slice.limit(count);
+        destination.put(slice);
+        window.position(window.position() + count);
+        return count;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package fileio;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Monthly updates of an input, kept only for the turns in which something changes
+ * <p>
+ * In JSON, the monthly updates are either an array with one update for every turn (the dense
+ * form) or an object whose keys are the months in which something changes (the sparse form).
+ * Months are counted from 1, like the monthly stats of the output, so the update of month m
+ * is the one the dense form has at index m - 1, which is applied in turn m - 1
+ * <p>
+ * The dense form has to cover every turn that is simulated: asking it for a turn past its end
+ * fails, the same way the streaming input does when its array runs out, whichever way the
+ * input is loaded
+ */
+@JsonDeserialize(using = MonthlySchedule.Deserializer.class)
+public final class MonthlySchedule {
+    private final int[] turns;
+    private final MonthlyUpdateInput[] updates;
+    private final boolean dense;
+
+    /**
+     * @param turns   the turns which have updates, in increasing order
+     * @param updates the updates of the turns, in the same order
+     */
+    MonthlySchedule(final int[] turns, final MonthlyUpdateInput[] updates) {
+        this(turns, updates, false);
+    }
+
+    private MonthlySchedule(final int[] turns, final MonthlyUpdateInput[] updates,
+                            final boolean dense) {
+        this.turns = turns;
+        this.updates = updates;
+        this.dense = dense;
+    }
+
+    /**
+     * Creates a schedule without any update
+     */
+    public static MonthlySchedule none() {
+        return new MonthlySchedule(new int[0], new MonthlyUpdateInput[0]);
+    }
+
+    /**
+     * Creates a schedule with one update for every turn
+     *
+     * @param updates the updates, the one at index i being applied in turn i
+     * @return the schedule
+     */
+    public static MonthlySchedule dense(final List<MonthlyUpdateInput> updates) {
+        int[] turns = new int[updates.size()];
+        Arrays.setAll(turns, turn -> turn);
+        return new MonthlySchedule(turns, updates.toArray(new MonthlyUpdateInput[0]), true);
+    }
+
+    /**
+     * Get the update applied in the given turn
+     *
+     * @param turn the turn, counted from 0
+     * @return the update, or null if nothing changes in that turn
+     * @throws IllegalStateException if the schedule is dense and ends before the given turn
+     */
+    public MonthlyUpdateInput getUpdate(final int turn) {
+        if (dense) {
+            if (turn >= updates.length) {
+                throw new IllegalStateException("Missing monthly update for turn " + turn);
+            }
+            return updates[turn];
+        }
+        int index = Arrays.binarySearch(turns, turn);
+        return index < 0 ? null : updates[index];
+    }
+
+    /**
+     * Deserializer used by databind, which accepts both the dense and the sparse form
+     */
+    static final class Deserializer extends JsonDeserializer<MonthlySchedule> {
+        @Override
+        public MonthlySchedule deserialize(final JsonParser parser,
+                                           final DeserializationContext context)
+                throws IOException {
+            return InputCodec.readMonthlySchedule(parser,
+                    updateParser -> context.readValue(updateParser, MonthlyUpdateInput.class));
+        }
+    }
+}
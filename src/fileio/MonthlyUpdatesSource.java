@@ -0,0 +1,18 @@
+package fileio;
+
+/**
+ * Source of the monthly updates of a simulation; the updates are handed out one month
+ * at a time, as the simulation advances
+ */
+public interface MonthlyUpdatesSource {
+    /**
+     * Get the updates that take place in the given month
+     * <p>
+     * Months are requested in increasing order, each of them only once
+     *
+     * @param turn the current month
+     * @return the new consumers, distributor changes and producer changes of the month, or
+     *         null if nothing changes in the month
+     */
+    MonthlyUpdateInput getMonthlyUpdate(int turn);
+}
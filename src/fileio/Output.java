@@ -9,7 +9,6 @@ import simulation.SimulationDatabase;
 import strategies.EnergyChoiceStrategyType;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 public final class Output {
@@ -18,20 +17,48 @@ public final class Output {
     private List<ProducerOutput> energyProducers;
 
     public Output(SimulationDatabase database) {
-        consumers = new ArrayList<>();
-        distributors = new ArrayList<>();
-        energyProducers = new ArrayList<>();
-
-        for (Consumer consumer : database.getConsumers()) {
-            consumers.add(new ConsumerOutput(consumer));
+        this(database, OutputProjection.all());
+    }
+
+    /**
+     * Builds the output of the selected sections, entities and fields; everything else is
+     * left null, so it can be skipped when serializing
+     *
+     * @param database   the database at the end of the simulation
+     * @param projection the parts of the output to build
+     */
+    public Output(final SimulationDatabase database, final OutputProjection projection) {
+        OutputProjection.Section consumersSection =
+                projection.getSection(OutputProjection.CONSUMERS);
+        if (consumersSection != null) {
+            consumers = new ArrayList<>();
+            for (Consumer consumer : database.getConsumers()) {
+                if (consumersSection.includesId(consumer.getId())) {
+                    consumers.add(new ConsumerOutput(consumer, consumersSection));
+                }
+            }
         }
 
-        for (Distributor distributor : database.getDistributors()) {
-            distributors.add(new DistributorOutput(distributor));
+        OutputProjection.Section distributorsSection =
+                projection.getSection(OutputProjection.DISTRIBUTORS);
+        if (distributorsSection != null) {
+            distributors = new ArrayList<>();
+            for (Distributor distributor : database.getDistributors()) {
+                if (distributorsSection.includesId(distributor.getId())) {
+                    distributors.add(new DistributorOutput(distributor, distributorsSection));
+                }
+            }
         }
 
-        for (Producer producer : database.getProducers()) {
-            energyProducers.add(new ProducerOutput(producer));
+        OutputProjection.Section producersSection =
+                projection.getSection(OutputProjection.PRODUCERS);
+        if (producersSection != null) {
+            energyProducers = new ArrayList<>();
+            for (Producer producer : database.getProducers()) {
+                if (producersSection.includesId(producer.getId())) {
+                    energyProducers.add(new ProducerOutput(producer, producersSection));
+                }
+            }
         }
     }
 
@@ -65,10 +92,14 @@ class ConsumerOutput {
     private Boolean isBankrupt;
     private Integer budget;
 
-    ConsumerOutput(final Consumer consumer) {
+    ConsumerOutput(final Consumer consumer, final OutputProjection.Section section) {
         id = consumer.getId();
-        budget = consumer.getBudget();
-        isBankrupt = consumer.getBankrupt();
+        if (section.includesField("budget")) {
+            budget = consumer.getBudget();
+        }
+        if (section.includesField("isBankrupt")) {
+            isBankrupt = consumer.getBankrupt();
+        }
     }
 
     public Integer getId() {
@@ -105,16 +136,28 @@ class DistributorOutput {
     private Boolean isBankrupt;
     private List<ContractOutput> contracts;
 
-    DistributorOutput(final Distributor distributor) {
+    DistributorOutput(final Distributor distributor, final OutputProjection.Section section) {
         id = distributor.getId();
-        energyNeededKW = distributor.getProducersInfo().getEnergyNeededKW();
-        contractCost = distributor.getContractsInfo().getContractPrice();
-        budget = distributor.getBudget();
-        producerStrategy = distributor.getProducersInfo().getStrategyType();
-        isBankrupt = distributor.getBankrupt();
-        contracts = new ArrayList<>();
-        for (Contract contract : distributor.getContractsInfo().getContracts()) {
-            contracts.add(new ContractOutput(contract));
+        if (section.includesField("energyNeededKW")) {
+            energyNeededKW = distributor.getProducersInfo().getEnergyNeededKW();
+        }
+        if (section.includesField("contractCost")) {
+            contractCost = distributor.getContractsInfo().getContractPrice();
+        }
+        if (section.includesField("budget")) {
+            budget = distributor.getBudget();
+        }
+        if (section.includesField("producerStrategy")) {
+            producerStrategy = distributor.getProducersInfo().getStrategyType();
+        }
+        if (section.includesField("isBankrupt")) {
+            isBankrupt = distributor.getBankrupt();
+        }
+        if (section.includesField("contracts")) {
+            contracts = new ArrayList<>();
+            for (Contract contract : distributor.getContractsInfo().getContracts()) {
+                contracts.add(new ContractOutput(contract));
+            }
         }
     }
 
@@ -219,15 +262,25 @@ class ProducerOutput {
     private Integer energyPerDistributor;
     private List<MonthlyStatsOutput> monthlyStats;
 
-    ProducerOutput(final Producer producer) {
+    ProducerOutput(final Producer producer, final OutputProjection.Section section) {
         id = producer.getId();
-        maxDistributors = producer.getDistributorsInfo().getMaxDistributors();
-        priceKW = producer.getEnergyInfo().getPriceKW();
-        energyType = producer.getEnergyInfo().getEnergyType();
-        energyPerDistributor = producer.getEnergyInfo().getEnergyPerDistributor();
-        monthlyStats = new ArrayList<>();
-        producer.getMonthlyStats()
-                .forEach(monthlyStat -> monthlyStats.add(new MonthlyStatsOutput(monthlyStat)));
+        if (section.includesField("maxDistributors")) {
+            maxDistributors = producer.getDistributorsInfo().getMaxDistributors();
+        }
+        if (section.includesField("priceKW")) {
+            priceKW = producer.getEnergyInfo().getPriceKW();
+        }
+        if (section.includesField("energyType")) {
+            energyType = producer.getEnergyInfo().getEnergyType();
+        }
+        if (section.includesField("energyPerDistributor")) {
+            energyPerDistributor = producer.getEnergyInfo().getEnergyPerDistributor();
+        }
+        if (section.includesField("monthlyStats")) {
+            monthlyStats = new ArrayList<>();
+            producer.getMonthlyStats().forEach(
+                    monthlyStat -> monthlyStats.add(new MonthlyStatsOutput(monthlyStat)));
+        }
     }
 
     public Integer getId() {
@@ -286,7 +339,6 @@ class MonthlyStatsOutput {
     MonthlyStatsOutput(final Producer.MonthlyStats monthlyStats) {
         month = monthlyStats.getMonth();
         distributorsIds = monthlyStats.getDistributorsIds();
-        Collections.sort(distributorsIds);
     }
 
     public Integer getMonth() {
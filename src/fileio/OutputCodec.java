@@ -0,0 +1,305 @@
+package fileio;
+
+import business.Contract;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import entities.Consumer;
+import entities.Distributor;
+import entities.Producer;
+import simulation.SimulationDatabase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Hand-written encoder for the output schema, which walks the database at the end of the
+ * simulation and writes it straight to a JsonGenerator, without building the output DTOs and
+ * without going through the reflection of Jackson databind
+ * <p>
+ * The fields are written in the same order and with the same formatting as databind writes
+ * the Output object, so both produce identical files. Only the sections, entities and fields
+ * selected by the output projection are visited and written
+ * <p>
+ * Given a pool, the consumers and the distributors, the bulk of the output, are encoded on it
+ * in chunks, each with a generator of its own into a buffer; the buffers are then written in
+ * order, as the elements of their arrays, so the file is the same byte for byte
+ */
+final class OutputCodec {
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final JsonFactory CHUNK_FACTORY = new JsonFactory();
+
+    private OutputCodec() {
+    }
+
+    /**
+     * Counts the records of the output the codec may encode in parallel: the consumers and
+     * the contracts
+     */
+    static long countRecords(final SimulationDatabase database) {
+        long records = database.getConsumers().size();
+        for (Distributor distributor : database.getDistributors()) {
+            records += distributor.getNumberOfConsumers();
+        }
+        return records;
+    }
+
+    /**
+     * @param generator  the generator of the output
+     * @param output     the stream the generator writes to, which the encoded chunks are
+     *                   written to, or null if there is no pool
+     * @param database   the database at the end of the simulation
+     * @param projection the parts of the output to write
+     * @param pool       the pool the chunks are encoded on, or null to encode sequentially
+     * @throws IOException in case writing to the output fails
+     */
+    static void writeOutput(final JsonGenerator generator, final OutputStream output,
+                            final SimulationDatabase database,
+                            final OutputProjection projection, final ForkJoinPool pool)
+            throws IOException {
+        generator.writeStartObject();
+
+        OutputProjection.Section consumers = projection.getSection(OutputProjection.CONSUMERS);
+        if (consumers != null) {
+            generator.writeArrayFieldStart(OutputProjection.CONSUMERS);
+            List<Consumer> consumerList = database.getConsumers();
+            if (pool == null) {
+                for (Consumer consumer : consumerList) {
+                    if (consumers.includesId(consumer.getId())) {
+                        writeConsumer(generator, consumer, consumers);
+                    }
+                }
+            } else {
+                writeChunks(generator, output, pool, consumerList.size(), (chunk, index) -> {
+                    Consumer consumer = consumerList.get(index);
+                    if (consumers.includesId(consumer.getId())) {
+                        writeConsumer(chunk, consumer, consumers);
+                    }
+                });
+            }
+            generator.writeEndArray();
+        }
+
+        OutputProjection.Section distributors =
+                projection.getSection(OutputProjection.DISTRIBUTORS);
+        if (distributors != null) {
+            generator.writeArrayFieldStart(OutputProjection.DISTRIBUTORS);
+            List<Distributor> distributorList = database.getDistributors();
+            if (pool == null) {
+                for (Distributor distributor : distributorList) {
+                    if (distributors.includesId(distributor.getId())) {
+                        writeDistributor(generator, distributor, distributors);
+                    }
+                }
+            } else {
+                writeChunks(generator, output, pool, distributorList.size(), (chunk, index) -> {
+                    Distributor distributor = distributorList.get(index);
+                    if (distributors.includesId(distributor.getId())) {
+                        writeDistributor(chunk, distributor, distributors);
+                    }
+                });
+            }
+            generator.writeEndArray();
+        }
+
+        OutputProjection.Section producers = projection.getSection(OutputProjection.PRODUCERS);
+        if (producers != null) {
+            generator.writeArrayFieldStart(OutputProjection.PRODUCERS);
+            for (Producer producer : database.getProducers()) {
+                if (producers.includesId(producer.getId())) {
+                    writeProducer(generator, producer, producers);
+                }
+            }
+            generator.writeEndArray();
+        }
+
+        generator.writeEndObject();
+    }
+
+    /**
+     * Encodes the elements of an array in chunks on the pool and writes them, in order, after
+     * the start of the array the generator has written; the generator is flushed first, and
+     * its array is still empty as far as it knows, so it can end it right after
+     */
+    private static void writeChunks(final JsonGenerator generator, final OutputStream output,
+                                    final ForkJoinPool pool, final int size,
+                                    final ElementWriter elements) throws IOException {
+        int chunks = Math.max(Math.min(size, pool.getParallelism() * CHUNKS_PER_THREAD), 1);
+        List<ForkJoinTask<byte[]>> tasks = new ArrayList<>(chunks);
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int from = (int) ((long) size * chunk / chunks);
+            int to = (int) ((long) size * (chunk + 1) / chunks);
+            tasks.add(pool.submit(() -> encodeChunk(elements, from, to)));
+        }
+
+        generator.flush();
+        boolean empty = true;
+        for (ForkJoinTask<byte[]> task : tasks) {
+            byte[] bytes = task.join();
+            if (bytes.length > 2) {
+                if (!empty) {
+                    output.write(',');
+                }
+                output.write(bytes, 1, bytes.length - 2);
+                empty = false;
+            }
+        }
+    }
+
+    /**
+     * Encodes a chunk of the elements of an array as an array of its own
+     */
+    private static byte[] encodeChunk(final ElementWriter elements, final int from,
+                                      final int to) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JsonGenerator chunk = CHUNK_FACTORY.createGenerator(bytes, JsonEncoding.UTF8)) {
+            chunk.writeStartArray();
+            for (int i = from; i < to; i++) {
+                elements.write(chunk, i);
+            }
+            chunk.writeEndArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeConsumer(final JsonGenerator generator, final Consumer consumer,
+                                      final OutputProjection.Section section)
+            throws IOException {
+        writeConsumer(generator, consumer.getId(), consumer.getBankrupt(), consumer.getBudget(),
+                section);
+    }
+
+    /**
+     * Writes a consumer from its fields, which may not come from the database (see
+     * ShardedOutputWriter)
+     */
+    static void writeConsumer(final JsonGenerator generator, final int id,
+                              final boolean bankrupt, final int budget,
+                              final OutputProjection.Section section) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("id", id);
+        if (section.includesField("isBankrupt")) {
+            generator.writeBooleanField("isBankrupt", bankrupt);
+        }
+        if (section.includesField("budget")) {
+            generator.writeNumberField("budget", budget);
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeDistributor(final JsonGenerator generator,
+                                         final Distributor distributor,
+                                         final OutputProjection.Section section)
+            throws IOException {
+        writeDistributorFields(generator, distributor, section);
+
+        if (section.includesField("contracts")) {
+            generator.writeArrayFieldStart("contracts");
+            for (Contract contract : distributor.getContractsInfo().getContracts()) {
+                writeContract(generator, contract.getConsumer().getId(), contract.getPrice(),
+                        contract.getRemainedContractMonths());
+            }
+            generator.writeEndArray();
+        }
+
+        generator.writeEndObject();
+    }
+
+    /**
+     * Starts the object of a distributor and writes its fields, except for its contracts,
+     * which may not be kept by the database (see ShardedOutputWriter); the object is left
+     * open for them
+     */
+    static void writeDistributorFields(final JsonGenerator generator,
+                                       final Distributor distributor,
+                                       final OutputProjection.Section section)
+            throws IOException {
+        Distributor.ContractsInfo contractsInfo = distributor.getContractsInfo();
+        Distributor.ProducersInfo producersInfo = distributor.getProducersInfo();
+
+        generator.writeStartObject();
+        generator.writeNumberField("id", distributor.getId());
+        if (section.includesField("energyNeededKW")) {
+            generator.writeNumberField("energyNeededKW", producersInfo.getEnergyNeededKW());
+        }
+        if (section.includesField("contractCost")) {
+            generator.writeNumberField("contractCost", contractsInfo.getContractPrice());
+        }
+        if (section.includesField("budget")) {
+            generator.writeNumberField("budget", distributor.getBudget());
+        }
+        if (section.includesField("producerStrategy")) {
+            generator.writeStringField("producerStrategy",
+                    producersInfo.getStrategyType().name());
+        }
+        if (section.includesField("isBankrupt")) {
+            generator.writeBooleanField("isBankrupt", distributor.getBankrupt());
+        }
+    }
+
+    static void writeContract(final JsonGenerator generator, final int consumerId,
+                              final int price, final int remainedContractMonths)
+            throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("consumerId", consumerId);
+        generator.writeNumberField("price", price);
+        generator.writeNumberField("remainedContractMonths", remainedContractMonths);
+        generator.writeEndObject();
+    }
+
+    static void writeProducer(final JsonGenerator generator, final Producer producer,
+                                      final OutputProjection.Section section)
+            throws IOException {
+        Producer.EnergyInfo energyInfo = producer.getEnergyInfo();
+
+        generator.writeStartObject();
+        generator.writeNumberField("id", producer.getId());
+        if (section.includesField("maxDistributors")) {
+            generator.writeNumberField("maxDistributors",
+                    producer.getDistributorsInfo().getMaxDistributors());
+        }
+        if (section.includesField("priceKW")) {
+            generator.writeNumberField("priceKW", energyInfo.getPriceKW());
+        }
+        if (section.includesField("energyType")) {
+            generator.writeStringField("energyType", energyInfo.getEnergyType().name());
+        }
+        if (section.includesField("energyPerDistributor")) {
+            generator.writeNumberField("energyPerDistributor",
+                    energyInfo.getEnergyPerDistributor());
+        }
+
+        if (section.includesField("monthlyStats")) {
+            generator.writeArrayFieldStart("monthlyStats");
+            for (Producer.MonthlyStats monthlyStats : producer.getMonthlyStats()) {
+                generator.writeStartObject();
+                generator.writeNumberField("month", monthlyStats.getMonth());
+                generator.writeArrayFieldStart("distributorsIds");
+                for (Integer distributorId : monthlyStats.getDistributorsIds()) {
+                    generator.writeNumber(distributorId);
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes the element of an array at the given index, if the projection includes it
+     */
+    @FunctionalInterface
+    private interface ElementWriter {
+        void write(JsonGenerator generator, int index) throws IOException;
+    }
+}
@@ -0,0 +1,175 @@
+package fileio;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Selects which parts of the output are written
+ * <p>
+ * A projection is given as a list of sections separated by ';'. Every section is the name of
+ * an output section (consumers, distributors or energyProducers), optionally followed by
+ * the ids to keep, as comma separated ids or inclusive ranges between square brackets, and by
+ * the fields to keep, after a ':'. For example, the projection
+ * "distributors[0-9,42]:budget;energyProducers:monthlyStats" keeps only the budgets of 11
+ * distributors and the monthly stats of all the producers
+ * <p>
+ * Sections that are not listed are left out of the output; the id of an entity is always
+ * written, so the entities can still be told apart
+ */
+public final class OutputProjection {
+    static final String CONSUMERS = "consumers";
+    static final String DISTRIBUTORS = "distributors";
+    static final String PRODUCERS = "energyProducers";
+
+    private static final String ID_FIELD = "id";
+    private static final Map<String, Set<String>> SECTION_FIELDS = Map.of(
+            CONSUMERS, Set.of(ID_FIELD, "isBankrupt", "budget"),
+            DISTRIBUTORS, Set.of(ID_FIELD, "energyNeededKW", "contractCost", "budget",
+                    "producerStrategy", "isBankrupt", "contracts"),
+            PRODUCERS, Set.of(ID_FIELD, "maxDistributors", "priceKW", "energyType",
+                    "energyPerDistributor", "monthlyStats"));
+
+    private static final OutputProjection ALL = new OutputProjection(null);
+
+    private final Map<String, Section> sections;
+
+    private OutputProjection(final Map<String, Section> sections) {
+        this.sections = sections;
+    }
+
+    /**
+     * Get the projection which keeps the whole output
+     */
+    public static OutputProjection all() {
+        return ALL;
+    }
+
+    /**
+     * Parses a projection from its textual form
+     *
+     * @param spec the projection, as described in the documentation of the class
+     * @return the parsed projection
+     * @throws IllegalArgumentException in case the projection is malformed or refers to
+     *                                  sections or fields that do not exist
+     */
+    public static OutputProjection parse(final String spec) {
+        Map<String, Section> sections = new HashMap<>();
+        for (String sectionSpec : spec.split(";")) {
+            if (sectionSpec.isBlank()) {
+                continue;
+            }
+            String name = sectionSpec.split("[\\[:]", 2)[0].trim();
+            if (!SECTION_FIELDS.containsKey(name)) {
+                throw new IllegalArgumentException("Unknown output section: " + name);
+            }
+            if (sections.containsKey(name)) {
+                throw new IllegalArgumentException("Output section projected twice: " + name);
+            }
+            sections.put(name, parseSection(name, sectionSpec.trim().substring(name.length())));
+        }
+        return new OutputProjection(sections);
+    }
+
+    private static Section parseSection(final String name, final String spec) {
+        String rest = spec;
+        int[] rangeStarts = null;
+        int[] rangeEnds = null;
+
+        if (rest.startsWith("[")) {
+            int end = rest.indexOf(']');
+            if (end < 0) {
+                throw new IllegalArgumentException("Unclosed id list in section " + name);
+            }
+            String[] ranges = rest.substring(1, end).split(",");
+            rangeStarts = new int[ranges.length];
+            rangeEnds = new int[ranges.length];
+            for (int i = 0; i < ranges.length; i++) {
+                String[] bounds = ranges[i].trim().split("-", 2);
+                rangeStarts[i] = parseId(bounds[0], name);
+                rangeEnds[i] = bounds.length > 1 ? parseId(bounds[1], name) : rangeStarts[i];
+            }
+            rest = rest.substring(end + 1);
+        }
+
+        if (rest.isEmpty()) {
+            return new Section(rangeStarts, rangeEnds, null);
+        }
+        if (!rest.startsWith(":")) {
+            throw new IllegalArgumentException("Malformed projection of section " + name);
+        }
+
+        List<String> fields = new ArrayList<>();
+        fields.add(ID_FIELD);
+        for (String field : rest.substring(1).split(",")) {
+            String fieldName = field.trim();
+            if (!SECTION_FIELDS.get(name).contains(fieldName)) {
+                throw new IllegalArgumentException("Unknown field " + fieldName
+                        + " in section " + name);
+            }
+            fields.add(fieldName);
+        }
+        return new Section(rangeStarts, rangeEnds, Set.copyOf(fields));
+    }
+
+    private static int parseId(final String id, final String section) {
+        try {
+            return Integer.parseInt(id.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid id " + id + " in section " + section, e);
+        }
+    }
+
+    /**
+     * Checks whether or not this projection keeps the whole output
+     */
+    public boolean isComplete() {
+        return sections == null;
+    }
+
+    /**
+     * Get the projection of a section of the output
+     *
+     * @param name the name of the section
+     * @return the projection of the section, or null if the section is left out
+     */
+    Section getSection(final String name) {
+        return sections == null ? Section.ALL : sections.get(name);
+    }
+
+    /**
+     * Projection of a single section of the output: the ids and fields which are kept
+     */
+    static final class Section {
+        private static final Section ALL = new Section(null, null, null);
+
+        private final int[] rangeStarts;
+        private final int[] rangeEnds;
+        private final Set<String> fields;
+
+        private Section(final int[] rangeStarts, final int[] rangeEnds,
+                        final Set<String> fields) {
+            this.rangeStarts = rangeStarts;
+            this.rangeEnds = rangeEnds;
+            this.fields = fields;
+        }
+
+        boolean includesId(final int id) {
+            if (rangeStarts == null) {
+                return true;
+            }
+            for (int i = 0; i < rangeStarts.length; i++) {
+                if (rangeStarts[i] <= id && id <= rangeEnds[i]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean includesField(final String field) {
+            return fields == null || fields.contains(field);
+        }
+    }
+}
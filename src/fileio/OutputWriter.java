@@ -1,29 +1,85 @@
 package fileio;
 
+import business.ExecutionPlan;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import simulation.SimulationDatabase;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
 
+/**
+ * Writes the output of the simulation, either straight from the database with the hand-written
+ * output codec or, when requested, by building the Output object and serializing it with
+ * Jackson databind
+ * <p>
+ * An output projection may restrict the output to some of its sections, entities and fields;
+ * the parts which are left out are neither built nor written
+ * <p>
+ * Given a pool and an execution plan, the codec encodes the consumers and the distributors on
+ * the pool when there are enough of them (see OutputCodec)
+ */
 public final class OutputWriter {
     private final String outputPath;
+    private final boolean databind;
+    private final OutputProjection projection;
+    private ForkJoinPool pool;
+    private ExecutionPlan plan;
 
     public OutputWriter(final String outputPath) {
+        this(outputPath, false);
+    }
+
+    public OutputWriter(final String outputPath, final boolean databind) {
+        this(outputPath, databind, OutputProjection.all());
+    }
+
+    public OutputWriter(final String outputPath, final boolean databind,
+                        final OutputProjection projection) {
         this.outputPath = outputPath;
+        this.databind = databind;
+        this.projection = projection;
     }
 
     /**
-     * Writes the output in JSON format to the designated output file
+     * Makes the codec encode the output on the given pool, when the plan chooses to
+     *
+     * @param encodingPool  the pool the output is encoded on
+     * @param executionPlan the plan that chooses whether the output is encoded on the pool
+     */
+    public void encodeIn(final ForkJoinPool encodingPool, final ExecutionPlan executionPlan) {
+        pool = encodingPool;
+        plan = executionPlan;
+    }
+
+    /**
+     * Writes the output in JSON format to the designated output file, compressed with gzip
+     * if the name of the file ends in .gz
      *
      * @param database contains information about consumers, distributors and producers
      *                 at the end of the simulation
      * @throws IOException in case writing to the output file fails
      */
     public void writeOutput(SimulationDatabase database) throws IOException {
-        Output output = new Output(database);
-
         ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.writeValue(new File(outputPath), output);
+        if (databind) {
+            if (!projection.isComplete()) {
+                objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+            }
+            objectMapper.writeValue(FileStreams.openOutput(outputPath),
+                    new Output(database, projection));
+            return;
+        }
+
+        ForkJoinPool encodingPool = plan != null && plan.choose(ExecutionPlan.Phase.OUTPUT,
+                OutputCodec.countRecords(database)) ? pool : null;
+        try (OutputStream output = FileStreams.openOutput(outputPath);
+             JsonGenerator generator = objectMapper.getFactory()
+                     .createGenerator(output, JsonEncoding.UTF8)) {
+            OutputCodec.writeOutput(generator, output, database, projection, encodingPool);
+        }
     }
 }
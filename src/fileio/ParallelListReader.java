@@ -0,0 +1,104 @@
+package fileio;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Decodes large JSON arrays of an in-memory (or memory-mapped) input in parallel
+ * <p>
+ * The calling thread only skips over the elements of the array to find their boundaries;
+ * every CHUNK_SIZE elements, the bytes of the chunk are handed to a task of the fork-join pool,
+ * which decodes them with the input codecs while the calling thread moves on. The chunks are
+ * joined in order, so the elements keep the order they have in the input
+ */
+final class ParallelListReader {
+    private static final int CHUNK_SIZE = 4096;
+
+    private final JsonFactory factory;
+    private final ByteBuffer input;
+    private final ForkJoinPool pool;
+
+    ParallelListReader(final JsonFactory factory, final ByteBuffer input,
+                       final ForkJoinPool pool) {
+        this.factory = factory;
+        this.input = input;
+        this.pool = pool;
+    }
+
+    /**
+     * Reads the array the parser is positioned on; the parser has to read the same bytes
+     * this reader was created with
+     */
+    <T> List<T> readList(final JsonParser parser,
+                         final InputCodec.ElementReader<T> elementReader) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+            return InputCodec.readList(parser, elementReader);
+        }
+
+        List<ForkJoinTask<List<T>>> chunks = new ArrayList<>();
+        int chunkStart = 0;
+        int chunkEnd = 0;
+        int chunkLength = 0;
+
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            InputCodec.expectMoreTokens(parser);
+            if (chunkLength == 0) {
+                chunkStart = (int) parser.getTokenLocation().getByteOffset();
+            }
+            parser.skipChildren();
+            chunkEnd = (int) parser.getCurrentLocation().getByteOffset();
+            chunkLength++;
+
+            if (chunkLength == CHUNK_SIZE) {
+                chunks.add(submitChunk(chunkStart, chunkEnd, elementReader));
+                chunkLength = 0;
+            }
+        }
+        if (chunkLength > 0) {
+            chunks.add(submitChunk(chunkStart, chunkEnd, elementReader));
+        }
+
+        List<T> elements = new ArrayList<>();
+        for (ForkJoinTask<List<T>> chunk : chunks) {
+            try {
+                elements.addAll(chunk.join());
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        return elements;
+    }
+
+    private <T> ForkJoinTask<List<T>> submitChunk(final int start, final int end,
+                                                  final InputCodec.ElementReader<T> reader) {
+        return pool.submit(() -> decodeChunk(start, end, reader));
+    }
+
+    /**
+     * Decodes the elements found between the given offsets of the input, by parsing them
+     * as a standalone JSON array
+     */
+    private <T> List<T> decodeChunk(final int start, final int end,
+                                    final InputCodec.ElementReader<T> elementReader) {
+        byte[] chunk = new byte[end - start + 2];
+        chunk[0] = '[';
+        input.get(start, chunk, 1, end - start);
+        chunk[chunk.length - 1] = ']';
+
+        try (JsonParser chunkParser = factory.createParser(chunk)) {
+            chunkParser.nextToken();
+            return InputCodec.readList(chunkParser, elementReader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package fileio;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import simulation.DistributorOutcomes;
+import simulation.SamplingEstimate;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes the report of an approximate simulation (see SamplingEstimate) as JSON: the estimated
+ * outcome of every distributor, with its confidence bounds, and, when the exact simulation was
+ * run as well, its exact outcome and whether or not the bounds hold it (a distributor that
+ * never goes bankrupt is within the bounds when the chance of it going bankrupt may be 0)
+ * <p>
+ * Bounds that cannot be computed, like those of a single replicate, are written as null; so is
+ * the bankruptcy month of a distributor that never went bankrupt
+ */
+public final class SamplingReportWriter {
+    private final String outputPath;
+
+    public SamplingReportWriter(final String outputPath) {
+        this.outputPath = outputPath;
+    }
+
+    /**
+     * Writes the report to the designated output file, compressed with gzip if the name of
+     * the file ends in .gz
+     *
+     * @param estimate  the estimate the report is about
+     * @param estimates the estimated outcomes of the distributors
+     * @throws IOException in case writing to the output file fails
+     */
+    public void writeReport(final SamplingEstimate estimate,
+                            final List<SamplingEstimate.DistributorEstimate> estimates)
+            throws IOException {
+        try (JsonGenerator generator = new JsonFactory()
+                .createGenerator(FileStreams.openOutput(outputPath), JsonEncoding.UTF8)) {
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartObject();
+            generator.writeNumberField("sampleRate", estimate.getSampleRate());
+            generator.writeNumberField("replicates", estimate.getReplicates());
+            generator.writeNumberField("confidence", SamplingEstimate.CONFIDENCE);
+
+            int exact = 0;
+            int budgetsWithinBounds = 0;
+            generator.writeArrayFieldStart("distributors");
+            for (SamplingEstimate.DistributorEstimate distributor : estimates) {
+                writeDistributor(generator, distributor);
+                if (distributor.hasExact()) {
+                    exact++;
+                    if (distributor.getBudget().contains(distributor.getExactBudget())) {
+                        budgetsWithinBounds++;
+                    }
+                }
+            }
+            generator.writeEndArray();
+
+            if (exact > 0) {
+                generator.writeNumberField("budgetCoverage", (double) budgetsWithinBounds / exact);
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    private static void writeDistributor(final JsonGenerator generator,
+                                         final SamplingEstimate.DistributorEstimate distributor)
+            throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("id", distributor.getIndex());
+        writeInterval(generator, "budget", distributor.getBudget());
+        writeInterval(generator, "bankruptcyChance", distributor.getBankruptcyChance());
+        writeInterval(generator, "bankruptcyMonth", distributor.getBankruptcyMonth());
+
+        if (distributor.hasExact()) {
+            int exactMonth = distributor.getExactBankruptcyMonth();
+            generator.writeObjectFieldStart("exact");
+            generator.writeNumberField("budget", distributor.getExactBudget());
+            generator.writeFieldName("bankruptcyMonth");
+            if (exactMonth == DistributorOutcomes.NOT_BANKRUPT) {
+                generator.writeNull();
+            } else {
+                generator.writeNumber(exactMonth);
+            }
+            generator.writeNumberField("budgetError",
+                    distributor.getBudget().getMean() - distributor.getExactBudget());
+            generator.writeBooleanField("budgetWithinBounds",
+                    distributor.getBudget().contains(distributor.getExactBudget()));
+            generator.writeBooleanField("bankruptcyWithinBounds",
+                    exactMonth == DistributorOutcomes.NOT_BANKRUPT
+                            ? distributor.getBankruptcyChance().contains(0)
+                            : distributor.getBankruptcyMonth() != null
+                            && distributor.getBankruptcyMonth().contains(exactMonth));
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeInterval(final JsonGenerator generator, final String name,
+                                      final SamplingEstimate.Interval interval)
+            throws IOException {
+        generator.writeFieldName(name);
+        if (interval == null) {
+            generator.writeNull();
+            return;
+        }
+
+        generator.writeStartObject();
+        generator.writeNumberField("mean", interval.getMean());
+        generator.writeFieldName("lower");
+        writeBound(generator, interval.getLower());
+        generator.writeFieldName("upper");
+        writeBound(generator, interval.getUpper());
+        generator.writeEndObject();
+    }
+
+    private static void writeBound(final JsonGenerator generator, final double bound)
+            throws IOException {
+        if (Double.isNaN(bound)) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(bound);
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package fileio;
+
+import entities.ConsumerStore;
+import entities.Distributor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.List;
+
+/**
+ * Connection between the coordinator of a sharded simulation and one of its workers, over a
+ * loopback socket (see simulation.ShardedSimulation and simulation.ShardWorker)
+ * <p>
+ * The coordinator sends messages, each an opcode followed by its fields, and the worker
+ * answers some of them; all values are big-endian ints, or booleans, written through buffers
+ * that are flushed once a message expects an answer. The layout of every message is given by
+ * the method that sends it
+ * <p>
+ * The worker identifies its shard as soon as it connects. In every round, it then receives
+ * the new consumers of its shard and the distributor to sign contracts with, and answers with
+ * the payments made to every distributor and the contracts each of them has in the shard;
+ * once the coordinator made the payments of the distributors, it receives those that went
+ * bankrupt, and answers with the contracts that are left
+ */
+public final class ShardChannel implements Closeable {
+    /**
+     * Opcode of the message that lists the contract lengths of the distributors
+     */
+    public static final int SETUP = 1;
+    /**
+     * Opcode of the message that adds consumers to the shard
+     */
+    public static final int CONSUMERS = 2;
+    /**
+     * Opcode of the message that runs the consumer side of a round
+     */
+    public static final int ROUND = 3;
+    /**
+     * Opcode of the message that ends a round
+     */
+    public static final int END_OF_ROUND = 4;
+    /**
+     * Opcode of the message that asks for the consumers and the contracts of the shard
+     */
+    public static final int RESULT = 5;
+    /**
+     * Opcode of the message that stops the worker
+     */
+    public static final int SHUTDOWN = 6;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Socket socket;
+    private final DataInputStream input;
+    private final DataOutputStream output;
+
+    public ShardChannel(final Socket socket) throws IOException {
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+        input = new DataInputStream(new BufferedInputStream(socket.getInputStream(),
+                BUFFER_SIZE));
+        output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(),
+                BUFFER_SIZE));
+    }
+
+    /**
+     * Sent by the worker once connected: the index of its shard
+     */
+    public void sendHello(final int shard) throws IOException {
+        output.writeInt(shard);
+        output.flush();
+    }
+
+    /**
+     * Reads the index of the shard of the worker, sent once it connected
+     */
+    public int readHello() throws IOException {
+        return input.readInt();
+    }
+
+    /**
+     * Sends the SETUP message: the number of distributors, then the contract length of every
+     * one of them, in the order of their indices
+     */
+    public void sendSetup(final List<DistributorInput> distributors) throws IOException {
+        output.writeByte(SETUP);
+        output.writeInt(distributors.size());
+        for (DistributorInput distributor : distributors) {
+            output.writeInt(distributor.getContractLength());
+        }
+    }
+
+    /**
+     * Sends the CONSUMERS message for some consumers of a batch: their number, then the id,
+     * the initial budget and the monthly income of every one of them
+     *
+     * @param consumers the batch of consumers
+     * @param first     the position in the batch of the first consumer sent
+     * @param step      the distance between the positions of the consumers sent
+     */
+    public void sendConsumers(final List<ConsumerInput> consumers, final int first,
+                              final int step) throws IOException {
+        output.writeByte(CONSUMERS);
+        output.writeInt(first >= consumers.size() ? 0
+                : (consumers.size() - first + step - 1) / step);
+        for (int i = first; i < consumers.size(); i += step) {
+            ConsumerInput consumer = consumers.get(i);
+            output.writeInt(consumer.getId());
+            output.writeInt(consumer.getInitialBudget());
+            output.writeInt(consumer.getMonthlyIncome());
+        }
+    }
+
+    /**
+     * Sends the ROUND message: the month, the index of the distributor to sign contracts with
+     * (-1 if there is none) and the price of its contracts; answered by sendTransactions
+     */
+    public void sendRound(final int turn, final int distributor, final int price)
+            throws IOException {
+        output.writeByte(ROUND);
+        output.writeInt(turn);
+        output.writeInt(distributor);
+        output.writeInt(price);
+        output.flush();
+    }
+
+    /**
+     * Sends the END_OF_ROUND message: whether the round is a month, whose end of month updates
+     * are made, then the number of distributors that went bankrupt in the round and their
+     * indices; answered by sendContractCounts
+     */
+    public void sendEndOfRound(final boolean endOfMonth, final int[] bankrupt, final int count)
+            throws IOException {
+        output.writeByte(END_OF_ROUND);
+        output.writeBoolean(endOfMonth);
+        output.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            output.writeInt(bankrupt[i]);
+        }
+        output.flush();
+    }
+
+    /**
+     * Sends the RESULT message, answered by sendResult
+     */
+    public void requestResult() throws IOException {
+        output.writeByte(RESULT);
+        output.flush();
+    }
+
+    /**
+     * Sends the SHUTDOWN message
+     */
+    public void sendShutdown() throws IOException {
+        output.writeByte(SHUTDOWN);
+        output.flush();
+    }
+
+    /**
+     * Reads the opcode of the next message sent by the coordinator
+     */
+    public int readMessage() throws IOException {
+        return input.readUnsignedByte();
+    }
+
+    /**
+     * Reads a field of the message being read
+     */
+    public int readInt() throws IOException {
+        return input.readInt();
+    }
+
+    /**
+     * Reads a field of the message being read
+     */
+    public boolean readBoolean() throws IOException {
+        return input.readBoolean();
+    }
+
+    /**
+     * Reads the fields of a SETUP message
+     *
+     * @return the contract lengths of the distributors
+     */
+    public int[] readSetup() throws IOException {
+        int[] contractLengths = new int[input.readInt()];
+        for (int i = 0; i < contractLengths.length; i++) {
+            contractLengths[i] = input.readInt();
+        }
+        return contractLengths;
+    }
+
+    /**
+     * Reads the fields of a CONSUMERS message and adds the consumers to the store, in order
+     */
+    public void readConsumers(final ConsumerStore store) throws IOException {
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            ConsumerInput consumer = new ConsumerInput();
+            consumer.setId(input.readInt());
+            consumer.setInitialBudget(input.readInt());
+            consumer.setMonthlyIncome(input.readInt());
+            store.add(consumer);
+        }
+    }
+
+    /**
+     * Answers a ROUND message: for every replica of the distributors, its budget, which holds
+     * the payments it received in the round, and its number of contracts in the shard
+     */
+    public void sendTransactions(final List<Distributor> replicas) throws IOException {
+        for (Distributor replica : replicas) {
+            output.writeInt(replica.getBudget());
+            output.writeInt(replica.getNumberOfConsumers());
+        }
+        output.flush();
+    }
+
+    /**
+     * Reads the answer to a ROUND message and adds it to the answers of the other shards
+     *
+     * @param credits   the payments received by every distributor
+     * @param contracts the number of contracts of every distributor
+     */
+    public void addTransactions(final int[] credits, final int[] contracts) throws IOException {
+        for (int i = 0; i < credits.length; i++) {
+            credits[i] += input.readInt();
+            contracts[i] += input.readInt();
+        }
+    }
+
+    /**
+     * Answers an END_OF_ROUND message: the number of contracts in the shard of every replica
+     * of the distributors
+     */
+    public void sendContractCounts(final List<Distributor> replicas) throws IOException {
+        for (Distributor replica : replicas) {
+            output.writeInt(replica.getNumberOfConsumers());
+        }
+        output.flush();
+    }
+
+    /**
+     * Reads the answer to an END_OF_ROUND message and adds it to the answers of the other
+     * shards
+     *
+     * @param contracts the number of contracts of every distributor
+     */
+    public void addContractCounts(final int[] contracts) throws IOException {
+        for (int i = 0; i < contracts.length; i++) {
+            contracts[i] += input.readInt();
+        }
+    }
+
+    /**
+     * Answers a RESULT message: the number of consumers of the shard, then the id, whether or
+     * not it is bankrupt and the budget of every one of them, in the order they were added;
+     * then, for every replica of the distributors, the number of its contracts in the shard,
+     * then, in the order they were signed, the index of the consumer among all consumers of
+     * the simulation, the month the contract was signed in, the id of the consumer, the price
+     * and the remaining months of every contract
+     *
+     * @param store    the consumers of the shard, whose signing turns are recorded
+     * @param replicas the replicas of the distributors
+     * @param shard    the index of the shard
+     * @param shards   the number of shards, which the consumers are dealt to in turn
+     */
+    public void sendResult(final ConsumerStore store, final List<Distributor> replicas,
+                           final int shard, final int shards) throws IOException {
+        output.writeInt(store.size());
+        for (int row = 0; row < store.size(); row++) {
+            output.writeInt(store.getId(row));
+            output.writeBoolean(store.isBankrupt(row));
+            output.writeInt(store.getBudget(row));
+        }
+
+        for (Distributor replica : replicas) {
+            Distributor.ContractsInfo contractsInfo = replica.getContractsInfo();
+            output.writeInt(contractsInfo.getNumberOfContracts());
+            for (int row = contractsInfo.getFirstConsumerRow(); row != ConsumerStore.NO_ROW;
+                 row = store.getNextContractRow(row)) {
+                output.writeInt(row * shards + shard);
+                output.writeInt(store.getSigningTurn(row));
+                output.writeInt(store.getId(row));
+                output.writeInt(store.getContractPrice(row));
+                output.writeInt(store.getRemainedContractMonths(row));
+            }
+        }
+        output.flush();
+    }
+
+    /**
+     * Reads the next consumer of the answer to a RESULT message
+     */
+    void readConsumer(final ResultRecord consumer) throws IOException {
+        consumer.consumerId = input.readInt();
+        consumer.bankrupt = input.readBoolean();
+        consumer.budget = input.readInt();
+    }
+
+    /**
+     * Reads the next contract of the answer to a RESULT message
+     */
+    void readContract(final ResultRecord contract) throws IOException {
+        contract.consumerIndex = input.readInt();
+        contract.signingTurn = input.readInt();
+        contract.consumerId = input.readInt();
+        contract.price = input.readInt();
+        contract.remainedContractMonths = input.readInt();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    /**
+     * A consumer or a contract of the answer to a RESULT message, read in place
+     */
+    static final class ResultRecord {
+        private int consumerIndex;
+        private int signingTurn;
+        private int consumerId;
+        private boolean bankrupt;
+        private int budget;
+        private int price;
+        private int remainedContractMonths;
+
+        int getConsumerIndex() {
+            return consumerIndex;
+        }
+
+        int getSigningTurn() {
+            return signingTurn;
+        }
+
+        int getConsumerId() {
+            return consumerId;
+        }
+
+        boolean isBankrupt() {
+            return bankrupt;
+        }
+
+        int getBudget() {
+            return budget;
+        }
+
+        int getPrice() {
+            return price;
+        }
+
+        int getRemainedContractMonths() {
+            return remainedContractMonths;
+        }
+
+        /**
+         * Checks whether or not this contract was signed before another one of the same
+         * distributor: in an earlier month or, in the same month, by a consumer added earlier
+         */
+        boolean isSignedBefore(final ResultRecord other) {
+            return signingTurn != other.signingTurn ? signingTurn < other.signingTurn
+                    : consumerIndex < other.consumerIndex;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package fileio;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import entities.Distributor;
+import entities.Producer;
+import simulation.SimulationDatabase;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes the output of a sharded simulation (see simulation.ShardedSimulation), the same file
+ * OutputWriter writes for the single-process engine
+ * <p>
+ * The distributors and the producers come from the database of the coordinator, the consumers
+ * and the contracts are streamed from the workers (see ShardChannel.sendResult) and encoded
+ * with the primitives of OutputCodec as they arrive: the consumers are taken from the shards
+ * in turn, the way they were dealt, and the contracts of every distributor are merged from the
+ * shards by the month they were signed in and, within a month, by the order the consumers were
+ * added in, which is the order of its contracts in the single-process engine. The parts left
+ * out by the output projection are read from the workers, but not written
+ */
+public final class ShardedOutputWriter {
+    private final String outputPath;
+    private final OutputProjection projection;
+
+    public ShardedOutputWriter(final String outputPath, final OutputProjection projection) {
+        this.outputPath = outputPath;
+        this.projection = projection;
+    }
+
+    /**
+     * Writes the output in JSON format to the designated output file, compressed with gzip
+     * if the name of the file ends in .gz
+     *
+     * @param database contains information about distributors and producers at the end of the
+     *                 simulation
+     * @param channels the connections with the workers, by the index of their shards
+     * @throws IOException in case reading from a worker or writing to the output file fails
+     */
+    public void writeOutput(final SimulationDatabase database, final List<ShardChannel> channels)
+            throws IOException {
+        for (ShardChannel channel : channels) {
+            channel.requestResult();
+        }
+
+        try (JsonGenerator generator = new JsonFactory()
+                .createGenerator(FileStreams.openOutput(outputPath), JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            writeConsumers(generator, channels);
+            writeDistributors(generator, database.getDistributors(), channels);
+
+            OutputProjection.Section producers =
+                    projection.getSection(OutputProjection.PRODUCERS);
+            if (producers != null) {
+                generator.writeArrayFieldStart(OutputProjection.PRODUCERS);
+                for (Producer producer : database.getProducers()) {
+                    if (producers.includesId(producer.getId())) {
+                        OutputCodec.writeProducer(generator, producer, producers);
+                    }
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    private void writeConsumers(final JsonGenerator generator, final List<ShardChannel> channels)
+            throws IOException {
+        OutputProjection.Section consumers = projection.getSection(OutputProjection.CONSUMERS);
+        if (consumers != null) {
+            generator.writeArrayFieldStart(OutputProjection.CONSUMERS);
+        }
+
+        int size = 0;
+        for (ShardChannel channel : channels) {
+            size += channel.readInt();
+        }
+        ShardChannel.ResultRecord consumer = new ShardChannel.ResultRecord();
+        for (int index = 0; index < size; index++) {
+            channels.get(index % channels.size()).readConsumer(consumer);
+            if (consumers != null && consumers.includesId(consumer.getConsumerId())) {
+                OutputCodec.writeConsumer(generator, consumer.getConsumerId(),
+                        consumer.isBankrupt(), consumer.getBudget(), consumers);
+            }
+        }
+
+        if (consumers != null) {
+            generator.writeEndArray();
+        }
+    }
+
+    private void writeDistributors(final JsonGenerator generator,
+                                   final List<Distributor> distributorList,
+                                   final List<ShardChannel> channels) throws IOException {
+        OutputProjection.Section distributors =
+                projection.getSection(OutputProjection.DISTRIBUTORS);
+        if (distributors != null) {
+            generator.writeArrayFieldStart(OutputProjection.DISTRIBUTORS);
+        }
+
+        int[] remaining = new int[channels.size()];
+        ShardChannel.ResultRecord[] heads = new ShardChannel.ResultRecord[channels.size()];
+        for (int shard = 0; shard < heads.length; shard++) {
+            heads[shard] = new ShardChannel.ResultRecord();
+        }
+        for (Distributor distributor : distributorList) {
+            boolean included = distributors != null && distributors.includesId(distributor.getId());
+            boolean contractsIncluded = included && distributors.includesField("contracts");
+            if (included) {
+                OutputCodec.writeDistributorFields(generator, distributor, distributors);
+                if (contractsIncluded) {
+                    generator.writeArrayFieldStart("contracts");
+                }
+            }
+
+            for (int shard = 0; shard < heads.length; shard++) {
+                remaining[shard] = channels.get(shard).readInt();
+                if (remaining[shard] > 0) {
+                    channels.get(shard).readContract(heads[shard]);
+                }
+            }
+            int next;
+            while ((next = firstSigned(heads, remaining)) >= 0) {
+                ShardChannel.ResultRecord contract = heads[next];
+                if (contractsIncluded) {
+                    OutputCodec.writeContract(generator, contract.getConsumerId(),
+                            contract.getPrice(), contract.getRemainedContractMonths());
+                }
+                if (--remaining[next] > 0) {
+                    channels.get(next).readContract(contract);
+                }
+            }
+
+            if (contractsIncluded) {
+                generator.writeEndArray();
+            }
+            if (included) {
+                generator.writeEndObject();
+            }
+        }
+
+        if (distributors != null) {
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Get the shard whose next contract was signed first, or -1 if no shard has contracts left
+     */
+    private static int firstSigned(final ShardChannel.ResultRecord[] heads,
+                                   final int[] remaining) {
+        int first = -1;
+        for (int shard = 0; shard < heads.length; shard++) {
+            if (remaining[shard] > 0
+                    && (first < 0 || heads[shard].isSignedBefore(heads[first]))) {
+                first = shard;
+            }
+        }
+        return first;
+    }
+}
@@ -0,0 +1,23 @@
+package fileio;
+
+import java.io.Closeable;
+
+/**
+ * Everything the simulation needs from its input: the number of turns, the initial data,
+ * which is always loaded up front, and the monthly updates, which may be loaded lazily
+ */
+public interface SimulationInput extends MonthlyUpdatesSource, Closeable {
+    /**
+     * Get the number of months to simulate after the initial round
+     *
+     * @return the number of turns
+     */
+    Integer getNumberOfTurns();
+
+    /**
+     * Get the consumers, distributors and producers present at the start of the simulation
+     *
+     * @return the initial data
+     */
+    InitialDataInput getInitialData();
+}
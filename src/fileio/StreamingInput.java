@@ -0,0 +1,206 @@
+package fileio;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Input that is read turn by turn: the number of turns and the initial data are loaded
+ * eagerly, while the monthly updates are parsed one month at a time, when the simulation
+ * asks for them, so only the updates of the current month are kept in memory
+ * <p>
+ * If the monthly updates come before the initial data or the number of turns in the file,
+ * they cannot be streamed and are loaded up front instead. Monthly updates in the sparse form
+ * are streamed as well, as long as their months are in increasing order, which is checked
+ * when they are reached by scanning their keys with a second parser over the file; otherwise
+ * they are loaded up front too, since the keys of a JSON object may come in any order. Months
+ * without an update are answered without touching the file
+ * <p>
+ * Values are decoded with the hand-written input codecs, unless databind is requested
+ */
+public final class StreamingInput implements SimulationInput {
+    private final ParserSource source;
+    private final JsonParser parser;
+    private final ObjectMapper objectMapper;
+    private final boolean databind;
+    private Integer numberOfTurns;
+    private InitialDataInput initialData;
+    private final InputCodec.ElementReader<MonthlyUpdateInput> updateReader;
+    private MonthlySchedule bufferedUpdates;
+    private boolean sparse;
+    private int nextTurn;
+    private int nextScheduledTurn;
+
+    /**
+     * @param source       opens parsers over the input file, the first of which reads the
+     *                     input while the others only scan it
+     * @param objectMapper the mapper used when databind is requested
+     * @param databind     whether or not the values are decoded with databind
+     */
+    StreamingInput(final ParserSource source, final ObjectMapper objectMapper,
+                   final boolean databind) throws IOException {
+        this.source = source;
+        parser = source.open();
+        this.objectMapper = objectMapper;
+        this.databind = databind;
+        updateReader = databind
+                ? updateParser -> objectMapper.readValue(updateParser, MonthlyUpdateInput.class)
+                : InputCodec::readMonthlyUpdate;
+        nextTurn = 0;
+        readUntilMonthlyUpdates();
+    }
+
+    /**
+     * Reads the top-level fields of the input until the parser is positioned at the start of
+     * the monthly updates, which are then consumed lazily
+     */
+    private void readUntilMonthlyUpdates() throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected the input to be a JSON object");
+        }
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            parser.nextToken();
+
+            switch (fieldName) {
+                case "numberOfTurns" -> numberOfTurns = parser.getIntValue();
+                case "initialData" -> initialData = databind
+                        ? objectMapper.readValue(parser, InitialDataInput.class)
+                        : InputCodec.readInitialData(parser);
+                case "monthlyUpdates" -> {
+                    if (numberOfTurns != null && initialData != null
+                            && parser.getCurrentToken() == JsonToken.START_ARRAY) {
+                        return;
+                    }
+                    if (numberOfTurns != null && initialData != null
+                            && parser.getCurrentToken() == JsonToken.START_OBJECT
+                            && hasIncreasingMonths()) {
+                        sparse = true;
+                        nextScheduledTurn = readNextScheduledTurn(-1);
+                        return;
+                    }
+                    bufferedUpdates = InputCodec.readMonthlySchedule(parser, updateReader);
+                    if (bufferedUpdates == null) {
+                        bufferedUpdates = MonthlySchedule.none();
+                    }
+                }
+                default -> throw new JsonParseException(parser,
+                        "Unrecognized field \"" + fieldName + "\"");
+            }
+        }
+
+        parser.close();
+    }
+
+    @Override
+    public Integer getNumberOfTurns() {
+        return numberOfTurns;
+    }
+
+    @Override
+    public InitialDataInput getInitialData() {
+        return initialData;
+    }
+
+    /**
+     * Checks whether or not the months of the sparse monthly updates are in increasing order,
+     * by scanning the keys of the updates with a second parser, which skips their values and
+     * every other field of the input without decoding them
+     */
+    private boolean hasIncreasingMonths() throws IOException {
+        try (JsonParser scanner = source.open()) {
+            scanner.nextToken();
+            while (scanner.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = scanner.getCurrentName();
+                scanner.nextToken();
+                if (!"monthlyUpdates".equals(fieldName)) {
+                    scanner.skipChildren();
+                    continue;
+                }
+
+                int previousTurn = -1;
+                while (scanner.nextToken() == JsonToken.FIELD_NAME) {
+                    int turn = InputCodec.readScheduledTurn(scanner);
+                    if (turn <= previousTurn) {
+                        return false;
+                    }
+                    previousTurn = turn;
+                    scanner.nextToken();
+                    scanner.skipChildren();
+                }
+                return true;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the key of the next update of a sparse schedule, leaving the parser on the start
+     * of the update
+     *
+     * @param previousTurn the turn of the previous update, or -1 if there is none
+     * @return the turn of the next update, or Integer.MAX_VALUE if there are no more updates
+     */
+    private int readNextScheduledTurn(final int previousTurn) throws IOException {
+        if (parser.nextToken() == JsonToken.END_OBJECT) {
+            return Integer.MAX_VALUE;
+        }
+
+        int turn = InputCodec.readScheduledTurn(parser);
+        if (turn <= previousTurn) {
+            throw new JsonParseException(parser, "The months of the monthly updates have to be"
+                    + " in increasing order to be streamed");
+        }
+        parser.nextToken();
+        return turn;
+    }
+
+    @Override
+    public MonthlyUpdateInput getMonthlyUpdate(final int turn) {
+        if (bufferedUpdates != null) {
+            return bufferedUpdates.getUpdate(turn);
+        }
+        if (turn != nextTurn) {
+            throw new IllegalStateException("Monthly updates can only be streamed in order,"
+                    + " expected turn " + nextTurn + " but got turn " + turn);
+        }
+
+        try {
+            if (sparse) {
+                nextTurn++;
+                if (turn != nextScheduledTurn) {
+                    return null;
+                }
+                MonthlyUpdateInput update = updateReader.read(parser);
+                nextScheduledTurn = readNextScheduledTurn(turn);
+                return update;
+            }
+
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalStateException("Missing monthly update for turn " + turn);
+            }
+            nextTurn++;
+            return updateReader.read(parser);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+
+    /**
+     * Opens a parser at the start of the input file
+     */
+    @FunctionalInterface
+    interface ParserSource {
+        JsonParser open() throws IOException;
+    }
+}
@@ -0,0 +1,227 @@
+package fileio;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Record of the changes made to the database in a single month: the consumers and distributors
+ * whose state changed, the contracts that were signed or removed and the producers whose
+ * distributors changed
+ * <p>
+ * Every section is stored as primitive columns, which grow as entries are added
+ */
+public final class TurnDelta {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Integer month;
+
+    private int consumersCount;
+    private int[] consumerIds;
+    private int[] consumerBudgets;
+    private boolean[] consumersBankrupt;
+
+    private int distributorsCount;
+    private int[] distributorIds;
+    private int[] distributorBudgets;
+    private int[] distributorContractCosts;
+    private boolean[] distributorsBankrupt;
+
+    private int contractsCount;
+    private int[] contractConsumerIds;
+    private int[] contractDistributorIds;
+    private int[] contractPrices;
+    private int[] contractRemainedMonths;
+
+    private int removedContractsCount;
+    private int[] removedContractConsumerIds;
+
+    private final List<Integer> producerIds;
+    private final List<int[]> producerDistributorsIds;
+
+    public TurnDelta(final Integer month) {
+        this.month = month;
+        consumerIds = new int[INITIAL_CAPACITY];
+        consumerBudgets = new int[INITIAL_CAPACITY];
+        consumersBankrupt = new boolean[INITIAL_CAPACITY];
+        distributorIds = new int[INITIAL_CAPACITY];
+        distributorBudgets = new int[INITIAL_CAPACITY];
+        distributorContractCosts = new int[INITIAL_CAPACITY];
+        distributorsBankrupt = new boolean[INITIAL_CAPACITY];
+        contractConsumerIds = new int[INITIAL_CAPACITY];
+        contractDistributorIds = new int[INITIAL_CAPACITY];
+        contractPrices = new int[INITIAL_CAPACITY];
+        contractRemainedMonths = new int[INITIAL_CAPACITY];
+        removedContractConsumerIds = new int[INITIAL_CAPACITY];
+        producerIds = new ArrayList<>();
+        producerDistributorsIds = new ArrayList<>();
+    }
+
+    /**
+     * Records the new state of a consumer
+     *
+     * @param id       the id of the consumer
+     * @param budget   the budget at the end of the month
+     * @param bankrupt whether or not the consumer is bankrupt
+     */
+    public void addConsumer(final int id, final int budget, final boolean bankrupt) {
+        if (consumersCount == consumerIds.length) {
+            int capacity = consumersCount * 2;
+            consumerIds = Arrays.copyOf(consumerIds, capacity);
+            consumerBudgets = Arrays.copyOf(consumerBudgets, capacity);
+            consumersBankrupt = Arrays.copyOf(consumersBankrupt, capacity);
+        }
+        consumerIds[consumersCount] = id;
+        consumerBudgets[consumersCount] = budget;
+        consumersBankrupt[consumersCount] = bankrupt;
+        consumersCount++;
+    }
+
+    /**
+     * Records the new state of a distributor
+     *
+     * @param id           the id of the distributor
+     * @param budget       the budget at the end of the month
+     * @param contractCost the current price of the distributor's contracts
+     * @param bankrupt     whether or not the distributor is bankrupt
+     */
+    public void addDistributor(final int id, final int budget, final int contractCost,
+                               final boolean bankrupt) {
+        if (distributorsCount == distributorIds.length) {
+            int capacity = distributorsCount * 2;
+            distributorIds = Arrays.copyOf(distributorIds, capacity);
+            distributorBudgets = Arrays.copyOf(distributorBudgets, capacity);
+            distributorContractCosts = Arrays.copyOf(distributorContractCosts, capacity);
+            distributorsBankrupt = Arrays.copyOf(distributorsBankrupt, capacity);
+        }
+        distributorIds[distributorsCount] = id;
+        distributorBudgets[distributorsCount] = budget;
+        distributorContractCosts[distributorsCount] = contractCost;
+        distributorsBankrupt[distributorsCount] = bankrupt;
+        distributorsCount++;
+    }
+
+    /**
+     * Records a contract signed during the month
+     *
+     * @param consumerId      the id of the consumer that signed the contract
+     * @param distributorId   the id of the distributor the contract was signed with
+     * @param price           the monthly price of the contract
+     * @param remainedMonths  the months left on the contract at the end of the month
+     */
+    public void addContract(final int consumerId, final int distributorId, final int price,
+                            final int remainedMonths) {
+        if (contractsCount == contractConsumerIds.length) {
+            int capacity = contractsCount * 2;
+            contractConsumerIds = Arrays.copyOf(contractConsumerIds, capacity);
+            contractDistributorIds = Arrays.copyOf(contractDistributorIds, capacity);
+            contractPrices = Arrays.copyOf(contractPrices, capacity);
+            contractRemainedMonths = Arrays.copyOf(contractRemainedMonths, capacity);
+        }
+        contractConsumerIds[contractsCount] = consumerId;
+        contractDistributorIds[contractsCount] = distributorId;
+        contractPrices[contractsCount] = price;
+        contractRemainedMonths[contractsCount] = remainedMonths;
+        contractsCount++;
+    }
+
+    /**
+     * Records that a consumer was left without a contract during the month
+     *
+     * @param consumerId the id of the consumer
+     */
+    public void addRemovedContract(final int consumerId) {
+        if (removedContractsCount == removedContractConsumerIds.length) {
+            removedContractConsumerIds = Arrays.copyOf(removedContractConsumerIds,
+                    removedContractsCount * 2);
+        }
+        removedContractConsumerIds[removedContractsCount++] = consumerId;
+    }
+
+    /**
+     * Records the new distributors of a producer
+     *
+     * @param id              the id of the producer
+     * @param distributorsIds the sorted ids of the distributors the producer gives energy to
+     */
+    public void addProducer(final int id, final int[] distributorsIds) {
+        producerIds.add(id);
+        producerDistributorsIds.add(distributorsIds);
+    }
+
+    public Integer getMonth() {
+        return month;
+    }
+
+    int getConsumersCount() {
+        return consumersCount;
+    }
+
+    int getConsumerId(final int index) {
+        return consumerIds[index];
+    }
+
+    int getConsumerBudget(final int index) {
+        return consumerBudgets[index];
+    }
+
+    boolean isConsumerBankrupt(final int index) {
+        return consumersBankrupt[index];
+    }
+
+    int getDistributorsCount() {
+        return distributorsCount;
+    }
+
+    int getDistributorId(final int index) {
+        return distributorIds[index];
+    }
+
+    int getDistributorBudget(final int index) {
+        return distributorBudgets[index];
+    }
+
+    int getDistributorContractCost(final int index) {
+        return distributorContractCosts[index];
+    }
+
+    boolean isDistributorBankrupt(final int index) {
+        return distributorsBankrupt[index];
+    }
+
+    int getContractsCount() {
+        return contractsCount;
+    }
+
+    int getContractConsumerId(final int index) {
+        return contractConsumerIds[index];
+    }
+
+    int getContractDistributorId(final int index) {
+        return contractDistributorIds[index];
+    }
+
+    int getContractPrice(final int index) {
+        return contractPrices[index];
+    }
+
+    int getContractRemainedMonths(final int index) {
+        return contractRemainedMonths[index];
+    }
+
+    int getRemovedContractsCount() {
+        return removedContractsCount;
+    }
+
+    int getRemovedContractConsumerId(final int index) {
+        return removedContractConsumerIds[index];
+    }
+
+    List<Integer> getProducerIds() {
+        return producerIds;
+    }
+
+    List<int[]> getProducerDistributorsIds() {
+        return producerDistributorsIds;
+    }
+}
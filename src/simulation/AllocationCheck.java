@@ -0,0 +1,83 @@
+package simulation;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Check that the steady months of a simulation allocate nothing
+ * <p>
+ * The bytes allocated by the simulating thread are counted around every month. A month is
+ * steady when it comes after the warm-up months, its updates add no consumers and change no
+ * producers, and the storage of the consumer store does not have to grow (which only happens
+ * when the population reaches a new maximum). A steady month that allocates is an error,
+ * reported with an IllegalStateException
+ * <p>
+ * The check needs a JVM without a JIT compiler (java -Xint). When HotSpot compiles a method
+ * for the first time, it resolves the string constants of its class on the thread that asked
+ * for the compilation, so the JIT makes the simulating thread allocate a few bytes at
+ * unpredictable months; interpreted code allocates exactly what its bytecode asks for, which
+ * is what the check is about
+ * <p>
+ * The monthly updates are read inside the month, so the check is meant for inputs loaded up
+ * front; reading the months of a streamed input allocates by itself. Likewise, the parallel
+ * transactions submit new tasks every month, so the check is meant for the sequential engine
+ */
+final class AllocationCheck {
+    private final com.sun.management.ThreadMXBean threadBean;
+    private final int warmUpMonths;
+    private long allocatedBefore;
+    private int growthsBefore;
+
+    /**
+     * @param warmUpMonths the number of months, after the initial round, that are not checked
+     * @throws UnsupportedOperationException if the JVM cannot count allocated memory or if
+     *                                       it compiles code
+     */
+    AllocationCheck(final int warmUpMonths) {
+        if (ManagementFactory.getCompilationMXBean() != null) {
+            throw new UnsupportedOperationException(
+                    "The allocation check needs a JVM without a JIT compiler (java -Xint)");
+        }
+
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)
+                || !((com.sun.management.ThreadMXBean) bean)
+                .isThreadAllocatedMemorySupported()) {
+            throw new UnsupportedOperationException(
+                    "Counting allocated memory is not supported by this JVM");
+        }
+
+        threadBean = (com.sun.management.ThreadMXBean) bean;
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        this.warmUpMonths = warmUpMonths;
+    }
+
+    /**
+     * Starts counting the allocations of a month
+     *
+     * @param database the database of the simulation
+     */
+    void monthStarted(final SimulationDatabase database) {
+        growthsBefore = database.getConsumerStore().getGrowths();
+        allocatedBefore = threadBean.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Stops counting the allocations of a month and checks them, if the month is steady
+     *
+     * @param month    the month that ended, counted from 1
+     * @param database the database of the simulation
+     */
+    void monthEnded(final int month, final SimulationDatabase database) {
+        long allocated = threadBean.getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+        if (month <= warmUpMonths || database.changedEntitiesLastMonth()
+                || database.getConsumerStore().getGrowths() != growthsBefore) {
+            return;
+        }
+        if (allocated != 0) {
+            throw new IllegalStateException("Month " + month + " allocated " + allocated
+                    + " bytes in a steady state");
+        }
+    }
+}
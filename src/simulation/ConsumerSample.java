@@ -0,0 +1,121 @@
+package simulation;
+
+import entities.ConsumerStore;
+import fileio.ConsumerInput;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Stratified sample of the consumers of a simulation, for approximate runs over populations
+ * too large to simulate consumer by consumer
+ * <p>
+ * Every batch of consumers (the initial ones, then the new consumers of every month) is split
+ * in strata of consumers whose monthly income and initial budget are within the same powers
+ * of two. One consumer in every sampleRate is drawn at random from every stratum, and at least
+ * one from every stratum, so rare kinds of consumers are never left out. The drawn consumers
+ * are weighted so that the weights of a stratum add up to its size: every drawn consumer stands
+ * for the consumers of its stratum that were not drawn, and the distributors count its
+ * payments and its contract once for every one of them (see ConsumerStore.add). The number of
+ * consumers of every distributor, which its prices and costs depend on, is then an estimate of
+ * the exact one, and the total number of consumers is exact
+ * <p>
+ * The drawn consumers are added in the order of the batch, and the same seed always draws the
+ * same sample; with a rate of 1, the whole population is simulated
+ */
+public final class ConsumerSample {
+    private static final int BUCKETS = 2 * Integer.SIZE + 1;
+    private static final int INDEX_BITS = 32;
+
+    private final int sampleRate;
+    private final Random random;
+
+    /**
+     * @param sampleRate the number of consumers of a stratum for every consumer drawn
+     * @param seed       the seed of the random draws
+     */
+    public ConsumerSample(final int sampleRate, final long seed) {
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException("Invalid sample rate: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+        random = new Random(seed);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Draws the sample of a batch of consumers and adds it to the store, weighted
+     *
+     * @param store     the store to add the consumers to, which has to be compressed
+     * @param consumers the batch of consumers
+     */
+    public void addTo(final ConsumerStore store, final List<ConsumerInput> consumers) {
+        int size = consumers.size();
+        long[] byStratum = new long[size];
+        for (int i = 0; i < size; i++) {
+            ConsumerInput consumer = consumers.get(i);
+            long stratum = (long) bucketOf(consumer.getMonthlyIncome()) * BUCKETS
+                    + bucketOf(consumer.getInitialBudget());
+            byStratum[i] = stratum << INDEX_BITS | i;
+        }
+        Arrays.sort(byStratum);
+
+        int[] weights = new int[size];
+        int[] stratum = new int[size];
+        for (int from = 0; from < size;) {
+            int to = from + 1;
+            while (to < size && byStratum[to] >>> INDEX_BITS == byStratum[from] >>> INDEX_BITS) {
+                to++;
+            }
+            drawStratum(byStratum, from, to, stratum, weights);
+            from = to;
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (weights[i] > 0) {
+                store.add(consumers.get(i), weights[i]);
+            }
+        }
+    }
+
+    /**
+     * Draws the consumers of a stratum, without replacement, and sets their weights
+     *
+     * @param byStratum the strata and indices of the consumers, sorted by stratum
+     * @param from      the position of the first consumer of the stratum
+     * @param to        the position after the last consumer of the stratum
+     * @param stratum   scratch array for the indices of the stratum
+     * @param weights   the weights of the consumers, by their index in the batch
+     */
+    private void drawStratum(final long[] byStratum, final int from, final int to,
+                             final int[] stratum, final int[] weights) {
+        int size = to - from;
+        for (int i = 0; i < size; i++) {
+            stratum[i] = (int) byStratum[from + i];
+        }
+
+        int drawn = (size + sampleRate - 1) / sampleRate;
+        int weight = size / drawn;
+        int heavier = size % drawn;
+        for (int i = 0; i < drawn; i++) {
+            int j = i + random.nextInt(size - i);
+            int index = stratum[j];
+            stratum[j] = stratum[i];
+            stratum[i] = index;
+            weights[index] = i < heavier ? weight + 1 : weight;
+        }
+    }
+
+    /**
+     * Get the power of two a value is within, signed, so that 0 and every sign of the values
+     * has buckets of its own
+     */
+    private static int bucketOf(final int value) {
+        int magnitude = Integer.SIZE - Integer.numberOfLeadingZeros(Math.abs(value));
+        return Integer.SIZE + (value < 0 ? -magnitude : magnitude);
+    }
+}
@@ -0,0 +1,19 @@
+package simulation;
+
+import fileio.ConsumerInput;
+
+import java.util.List;
+
+/**
+ * The consumers of a simulation that are kept out of its database, by other processes (see
+ * ShardedSimulation); the database hands them every batch of consumers instead of adding it
+ * to its own consumer store
+ */
+public interface ConsumerShards {
+    /**
+     * Adds a batch of consumers to the shards, in order
+     *
+     * @param consumers the consumers
+     */
+    void addConsumers(List<ConsumerInput> consumers);
+}
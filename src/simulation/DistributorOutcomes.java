@@ -0,0 +1,68 @@
+package simulation;
+
+import entities.Distributor;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Records the outcome of every distributor of a simulation: the month in which it went
+ * bankrupt, if it did, and its budget at the end of the simulation
+ */
+public final class DistributorOutcomes implements TurnListener {
+    /**
+     * Bankruptcy month of a distributor that never went bankrupt
+     */
+    public static final int NOT_BANKRUPT = -1;
+
+    private int[] bankruptcyMonths;
+    private int[] budgets;
+
+    public DistributorOutcomes() {
+        bankruptcyMonths = new int[0];
+        budgets = new int[0];
+    }
+
+    @Override
+    public void turnEnded(final int month, final SimulationDatabase database) {
+        List<Distributor> distributors = database.getDistributors();
+        if (distributors.size() > budgets.length) {
+            int known = budgets.length;
+            bankruptcyMonths = Arrays.copyOf(bankruptcyMonths, distributors.size());
+            budgets = Arrays.copyOf(budgets, distributors.size());
+            Arrays.fill(bankruptcyMonths, known, distributors.size(), NOT_BANKRUPT);
+        }
+
+        for (int i = 0; i < distributors.size(); i++) {
+            Distributor distributor = distributors.get(i);
+            if (distributor.getBankrupt() && bankruptcyMonths[i] == NOT_BANKRUPT) {
+                bankruptcyMonths[i] = month;
+            }
+            budgets[i] = distributor.getBudget();
+        }
+    }
+
+    /**
+     * Get the number of distributors seen by the end of the simulation
+     */
+    public int getNumberOfDistributors() {
+        return budgets.length;
+    }
+
+    /**
+     * Get the month in which a distributor went bankrupt, counted from 0 for the initial round
+     *
+     * @param index the index of the distributor
+     * @return the month, or NOT_BANKRUPT if the distributor never went bankrupt
+     */
+    public int getBankruptcyMonth(final int index) {
+        return bankruptcyMonths[index];
+    }
+
+    /**
+     * Get the budget of a distributor at the end of the last month simulated
+     */
+    public int getBudget(final int index) {
+        return budgets[index];
+    }
+}
@@ -0,0 +1,180 @@
+package simulation;
+
+import entities.Distributor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Index of the distributors that are not bankrupt, ordered by the price of their contracts and
+ * then by their index in the database (which is also their id)
+ * <p>
+ * The index is an indexed binary heap: the heap holds the indices of the distributors, and the
+ * position of every distributor in the heap is kept as well, so a distributor whose price
+ * changes is moved to its new place, and a bankrupt one is taken out, in logarithmic time. The
+ * database tells the index about these changes, so finding the cheapest distributor no longer
+ * scans all of them
+ */
+public final class DistributorPriceIndex {
+    private static final int NOT_INDEXED = -1;
+
+    private final List<Distributor> distributors;
+    private final int[] heap;
+    private final int[] positions;
+    private int size;
+
+    /**
+     * Creates an index of the distributors that are not bankrupt
+     *
+     * @param distributors the distributors of the simulation, indexed by their id
+     */
+    public DistributorPriceIndex(final List<Distributor> distributors) {
+        this.distributors = distributors;
+        heap = new int[distributors.size()];
+        positions = new int[distributors.size()];
+        size = 0;
+
+        for (int i = 0; i < distributors.size(); i++) {
+            positions[i] = NOT_INDEXED;
+            if (!distributors.get(i).getBankrupt()) {
+                heap[size] = i;
+                positions[i] = size;
+                siftUp(size++);
+            }
+        }
+    }
+
+    /**
+     * Get the number of distributors in the index
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether or not the distributor with the given index is in the index
+     */
+    public boolean contains(final int index) {
+        return positions[index] != NOT_INDEXED;
+    }
+
+    /**
+     * Moves a distributor whose contract price changed to its new place
+     *
+     * @param index the index of the distributor
+     */
+    public void priceChanged(final int index) {
+        int position = positions[index];
+        if (position == NOT_INDEXED) {
+            return;
+        }
+        siftUp(position);
+        siftDown(positions[index]);
+    }
+
+    /**
+     * Takes a distributor, which went bankrupt, out of the index
+     *
+     * @param index the index of the distributor
+     */
+    public void remove(final int index) {
+        int position = positions[index];
+        if (position == NOT_INDEXED) {
+            return;
+        }
+
+        positions[index] = NOT_INDEXED;
+        size--;
+        if (position == size) {
+            return;
+        }
+        int moved = heap[size];
+        heap[position] = moved;
+        positions[moved] = position;
+        siftUp(position);
+        siftDown(positions[moved]);
+    }
+
+    /**
+     * Get the distributor with the cheapest contracts, the one with the lowest index among those
+     * with the same price
+     *
+     * @return the distributor, or null if all distributors are bankrupt
+     */
+    public Distributor cheapest() {
+        return size == 0 ? null : distributors.get(heap[0]);
+    }
+
+    /**
+     * Get the distributors with the cheapest contracts, in the order of the index
+     * <p>
+     * The heap is explored best first, from its root, so only the k distributors and their
+     * children in the heap are looked at
+     *
+     * @param k the number of distributors
+     * @return the k cheapest distributors, or all of them if there are fewer
+     */
+    public List<Distributor> cheapest(final int k) {
+        List<Distributor> result = new ArrayList<>();
+        PriorityQueue<Integer> frontier = new PriorityQueue<>(
+                (first, second) -> compare(heap[first], heap[second]));
+        if (size > 0) {
+            frontier.add(0);
+        }
+
+        while (result.size() < k && !frontier.isEmpty()) {
+            int position = frontier.poll();
+            result.add(distributors.get(heap[position]));
+            for (int child = 2 * position + 1; child <= 2 * position + 2; child++) {
+                if (child < size) {
+                    frontier.add(child);
+                }
+            }
+        }
+        return result;
+    }
+
+    private int compare(final int first, final int second) {
+        int priceComparison = Integer.compare(
+                distributors.get(first).getContractsInfo().getContractPrice(),
+                distributors.get(second).getContractsInfo().getContractPrice());
+        return priceComparison != 0 ? priceComparison : Integer.compare(first, second);
+    }
+
+    private void siftUp(final int start) {
+        int position = start;
+        int index = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (compare(index, heap[parent]) >= 0) {
+                break;
+            }
+            heap[position] = heap[parent];
+            positions[heap[position]] = position;
+            position = parent;
+        }
+        heap[position] = index;
+        positions[index] = position;
+    }
+
+    private void siftDown(final int start) {
+        int position = start;
+        int index = heap[position];
+        int child = 2 * position + 1;
+        while (child < size) {
+            if (child + 1 < size && compare(heap[child + 1], heap[child]) < 0) {
+                child++;
+            }
+            if (compare(index, heap[child]) <= 0) {
+                break;
+            }
+            heap[position] = heap[child];
+            positions[heap[position]] = position;
+            position = child;
+            child = 2 * position + 1;
+        }
+        heap[position] = index;
+        positions[index] = position;
+    }
+}
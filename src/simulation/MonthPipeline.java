@@ -0,0 +1,140 @@
+package simulation;
+
+import business.ConsumerStage;
+import business.Transactions;
+import entities.ConsumerStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A round of the simulation, declared as the stages it runs, in order
+ * <p>
+ * Global stages run once, over the whole database, and act as barriers: every stage before
+ * them is done when they start. Per-consumer stages (see ConsumerStage) work on one consumer
+ * at a time, so the stages declared next to each other are fused into a single pass over the
+ * consumers, which runs all of them over a block of rows before moving on to the next one
+ * (see Transactions.runConsumerStages); the working set of a month then goes through the
+ * cache once instead of once for every stage, while every consumer still sees the stages in
+ * the order they were declared. When the transactions run in parallel, the stages that have
+ * to visit the rows in order are not fused with those that do not, so the latter still run
+ * on the pool
+ */
+public final class MonthPipeline {
+    private final ConsumerStore consumers;
+    private final Transactions transactions;
+    private final List<Step> steps;
+
+    /**
+     * Creates a pipeline without stages
+     *
+     * @param consumers    the store of consumers the per-consumer stages run over
+     * @param transactions the transactions the passes over the consumers are run by
+     */
+    public MonthPipeline(final ConsumerStore consumers, final Transactions transactions) {
+        this.consumers = consumers;
+        this.transactions = transactions;
+        steps = new ArrayList<>();
+    }
+
+    /**
+     * Adds a global stage at the end of the pipeline
+     *
+     * @param stage the stage
+     * @return this pipeline
+     */
+    public MonthPipeline global(final GlobalStage stage) {
+        steps.add(new Step(stage, null));
+        return this;
+    }
+
+    /**
+     * Adds a per-consumer stage at the end of the pipeline, fusing it with the stages of the
+     * pass before it, if it can
+     *
+     * @param stage the stage
+     * @return this pipeline
+     */
+    public MonthPipeline perConsumer(final ConsumerStage stage) {
+        Step last = steps.isEmpty() ? null : steps.get(steps.size() - 1);
+        if (last == null || last.pass == null || !canFuse(last.pass, stage)) {
+            steps.add(new Step(null, new ConsumerStage[] {stage}));
+            return this;
+        }
+
+        ConsumerStage[] pass = Arrays.copyOf(last.pass, last.pass.length + 1);
+        pass[last.pass.length] = stage;
+        steps.set(steps.size() - 1, new Step(null, pass));
+        return this;
+    }
+
+    /**
+     * Get the number of passes the pipeline makes over the consumers, once the per-consumer
+     * stages are fused
+     */
+    public int getNumberOfPasses() {
+        int passes = 0;
+        for (Step step : steps) {
+            if (step.pass != null) {
+                passes++;
+            }
+        }
+        return passes;
+    }
+
+    /**
+     * Runs the stages of the pipeline, in order, until one of the global stages ends the
+     * simulation
+     *
+     * @param turn the current month, counted from 0, or -1 for the initial round
+     * @return false if a global stage ended the simulation, true otherwise
+     */
+    public boolean run(final int turn) {
+        for (int i = 0; i < steps.size(); i++) {
+            Step step = steps.get(i);
+            if (step.pass == null) {
+                if (!step.stage.run(turn)) {
+                    return false;
+                }
+            } else {
+                transactions.runConsumerStages(consumers, step.pass);
+            }
+        }
+        return true;
+    }
+
+    private boolean canFuse(final ConsumerStage[] pass, final ConsumerStage stage) {
+        if (!transactions.isParallel()) {
+            return true;
+        }
+        return pass[0].isOrdered() == stage.isOrdered();
+    }
+
+    /**
+     * A stage that runs once over the whole database
+     */
+    @FunctionalInterface
+    public interface GlobalStage {
+        /**
+         * Runs the stage
+         *
+         * @param turn the current month, counted from 0, or -1 for the initial round
+         * @return false if the simulation ends with this stage, true otherwise
+         */
+        boolean run(int turn);
+    }
+
+    /**
+     * A global stage or a pass of fused per-consumer stages
+     */
+    private static final class Step {
+        private final GlobalStage stage;
+        private final ConsumerStage[] pass;
+
+        Step(final GlobalStage stage, final ConsumerStage[] pass) {
+            this.stage = stage;
+            this.pass = pass;
+        }
+    }
+}
@@ -1,26 +1,145 @@
 package simulation;
 
+import business.ExecutionPlan;
 import business.Transactions;
-import fileio.Input;
+import entities.ConsumerStorage;
+import entities.ConsumerStore;
+import fileio.SimulationInput;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Engine of the simulation; simulates the initial round and also the next rounds
  * Contains a reference to the database used for the current simulation
+ * <p>
+ * When asked to, the engine fast-forwards over quiescent months, in which nothing happens but
+ * the consumers receiving their incomes and paying their contracts and the distributors paying
+ * their costs, all of them by the same amounts every month: such months are run at once, up to
+ * the next update, contract expiry or bankruptcy, and leave the database exactly as if they had
+ * been simulated one by one
  */
 public final class MonthlySimulation {
+    private static final int MAX_FAST_FORWARD_BACKOFF = 16;
+    private static final int INITIAL_ROUND = -1;
+
     private final SimulationDatabase database;
-    private final Integer numberOfTurns;
+    private final int numberOfTurns;
+    private final List<TurnListener> turnListeners;
+    private Transactions transactions;
+    private AllocationCheck allocationCheck;
+    private MonthPipeline initialRound;
+    private MonthPipeline month;
+    private boolean fastForward;
+    private int nextFastForwardTurn;
+    private int fastForwardBackoff;
+
+    public MonthlySimulation(final SimulationInput input) {
+        this(input, ConsumerStorage.onHeap());
+    }
+
+    /**
+     * @param input           the input of the simulation
+     * @param consumerStorage the storage the records of the consumers are kept in
+     */
+    public MonthlySimulation(final SimulationInput input, final ConsumerStorage consumerStorage) {
+        this(input, consumerStorage, false);
+    }
+
+    /**
+     * @param input             the input of the simulation
+     * @param consumerStorage   the storage the records of the consumers are kept in
+     * @param compressConsumers whether or not the consumers whose state is identical are
+     *                          simulated once, as a single row (see ConsumerStore)
+     */
+    public MonthlySimulation(final SimulationInput input, final ConsumerStorage consumerStorage,
+                             final boolean compressConsumers) {
+        numberOfTurns = input.getNumberOfTurns();
+        database = new SimulationDatabase(input.getInitialData(), input, consumerStorage,
+                compressConsumers);
+        database.reserveMonthlyStats(numberOfTurns);
+        turnListeners = new ArrayList<>();
+        transactions = new Transactions();
+    }
 
-    public MonthlySimulation(final Input input) {
+    /**
+     * Creates an approximate simulation, which only simulates a weighted sample of the
+     * consumers (see ConsumerSample)
+     *
+     * @param input  the input of the simulation
+     * @param sample the sample the consumers are drawn by
+     */
+    public MonthlySimulation(final SimulationInput input, final ConsumerSample sample) {
         numberOfTurns = input.getNumberOfTurns();
-        database = new SimulationDatabase(input.getInitialData(),
-                input.getMonthlyUpdates());
+        database = new SimulationDatabase(input.getInitialData(), input, sample);
+        database.reserveMonthlyStats(numberOfTurns);
+        turnListeners = new ArrayList<>();
+        transactions = new Transactions();
     }
 
     public SimulationDatabase getDatabase() {
         return database;
     }
 
+    /**
+     * Registers a listener that is notified at the end of the initial round and of every month
+     *
+     * @param listener the listener to notify
+     */
+    public void addTurnListener(final TurnListener listener) {
+        turnListeners.add(listener);
+    }
+
+    /**
+     * Makes the simulation run the transactions of the consumers in parallel, on the given
+     * pool; the results are exactly those of the sequential engine (see Transactions)
+     *
+     * @param pool the pool the transactions run on
+     */
+    public void runTransactionsIn(final ForkJoinPool pool) {
+        transactions = new Transactions(pool);
+    }
+
+    /**
+     * Makes the simulation choose, for every run of its transactions and of the selection of
+     * the producers, whether it runs sequentially or on the given pool (see ExecutionPlan);
+     * the results are the same either way
+     *
+     * @param pool the pool the parallel runs use
+     * @param plan the plan that chooses how every run executes
+     */
+    public void adaptExecution(final ForkJoinPool pool, final ExecutionPlan plan) {
+        transactions = new Transactions(pool, plan);
+        database.rankProducersIn(pool, plan);
+    }
+
+    /**
+     * Makes the simulation fast-forward over the quiescent months (see
+     * SimulationDatabase.skipQuiescentMonths and Transactions.runQuiescentMonths)
+     * <p>
+     * Looking for quiescent months scans the consumers, so after a month that is not quiescent
+     * the engine waits for a number of months, which doubles with every miss, before looking
+     * again. Months are only fast-forwarded when there are no turn listeners and allocations
+     * are not checked, since those expect to see every month
+     */
+    public void fastForwardQuiescentMonths() {
+        fastForward = true;
+        nextFastForwardTurn = 0;
+        fastForwardBackoff = 1;
+    }
+
+    /**
+     * Makes the simulation check that its steady months allocate nothing (see AllocationCheck)
+     *
+     * @param warmUpMonths the number of months, after the initial round, that are not checked
+     * @throws UnsupportedOperationException if the JVM cannot count allocated memory or if
+     *                                       it compiles code
+     */
+    public void checkAllocations(final int warmUpMonths) {
+        allocationCheck = new AllocationCheck(warmUpMonths);
+    }
+
     /**
      * Entry point; starts the initial round of the simulation and also the following rounds
      * <p>
@@ -34,41 +153,109 @@ public final class MonthlySimulation {
      * to the distributors, who in turn make their payments
      */
     public void start() {
+        buildPipelines();
         simulateInitialRound();
         simulateTurns();
     }
 
+    /**
+     * Declares the stages of the initial round and of the following rounds; the signing of the
+     * contracts, the salaries and the payments of the consumers are fused into a single pass
+     * over the consumers (see MonthPipeline)
+     */
+    private void buildPipelines() {
+        ConsumerStore consumers = database.getConsumerStore();
+        initialRound = new MonthPipeline(consumers, transactions)
+                .global(turn -> {
+                    database.beginInitialRound();
+                    return true;
+                })
+                .perConsumer(database.getRenewalStage())
+                .perConsumer(transactions.getSalariesStage())
+                .perConsumer(transactions.getPaymentsStage())
+                .global(this::distributorPayments);
+        month = new MonthPipeline(consumers, transactions)
+                .global(turn -> !database.beginMonth(turn))
+                .perConsumer(database.getRenewalStage())
+                .perConsumer(transactions.getSalariesStage())
+                .perConsumer(transactions.getPaymentsStage())
+                .global(this::distributorPayments)
+                .global(turn -> {
+                    database.endOfMonthUpdates(turn);
+                    return true;
+                });
+    }
+
     private void simulateInitialRound() {
-        database.makeInitialUpdates();
-        simulateMonthOfTransactions();
+        initialRound.run(INITIAL_ROUND);
+        notifyTurnEnded(0);
     }
 
     private void simulateTurns() {
         for (int turn = 0; turn < numberOfTurns; turn++) {
-            Boolean allDistributorsBankrupt = simulateTurn(turn);
+            int skippedMonths = skipQuiescentMonths(turn);
+            if (skippedMonths > 0) {
+                turn += skippedMonths - 1;
+                continue;
+            }
+
+            if (allocationCheck != null) {
+                allocationCheck.monthStarted(database);
+            }
+            boolean allDistributorsBankrupt = simulateTurn(turn);
+            if (allocationCheck != null) {
+                allocationCheck.monthEnded(turn + 1, database);
+            }
+            notifyTurnEnded(turn + 1);
             if (allDistributorsBankrupt) {
                 return;
             }
         }
     }
 
-    private Boolean simulateTurn(final Integer turn) {
-        Boolean allDistributorsBankrupt = database.startOfMonthUpdates(turn);
-        if (allDistributorsBankrupt) {
-            return true;
+    private boolean simulateTurn(final int turn) {
+        return !month.run(turn);
+    }
+
+    /**
+     * Fast-forwards over the quiescent months that start with the given one, if the engine is
+     * asked to and it is time to look for them
+     *
+     * @return the number of months fast-forwarded
+     */
+    private int skipQuiescentMonths(final int turn) {
+        if (!fastForward || turn < nextFastForwardTurn || !turnListeners.isEmpty()
+                || allocationCheck != null) {
+            return 0;
         }
 
-        simulateMonthOfTransactions();
+        int months = 0;
+        if (database.isSettled()) {
+            months = transactions.countQuiescentMonths(database.getConsumerStore(),
+                    database.getDistributors(), turn, numberOfTurns - turn);
+            months = database.countMonthsWithoutUpdates(turn, months);
+        }
+        if (months == 0) {
+            nextFastForwardTurn = turn + fastForwardBackoff;
+            fastForwardBackoff = Math.min(fastForwardBackoff * 2, MAX_FAST_FORWARD_BACKOFF);
+            return 0;
+        }
 
-        database.endOfMonthUpdates(turn);
+        transactions.runQuiescentMonths(database.getConsumerStore(), database.getDistributors(),
+                months);
+        database.skipQuiescentMonths(turn, months);
+        fastForwardBackoff = 1;
+        return months;
+    }
 
-        return false;
+    private void notifyTurnEnded(final int month) {
+        for (TurnListener listener : turnListeners) {
+            listener.turnEnded(month, database);
+        }
     }
 
-    private void simulateMonthOfTransactions() {
-        Transactions transactions = new Transactions();
-        transactions.addSalaries(database.getConsumers());
-        transactions.payContracts(database.getConsumers());
-        transactions.distributorPayments(database.getDistributors());
+    private boolean distributorPayments(final int turn) {
+        transactions.distributorPayments(database.getDistributors(), database.getConsumerStore());
+        return true;
     }
 }
@@ -0,0 +1,295 @@
+package simulation;
+
+import business.ExecutionPlan;
+import business.Formulas;
+import business.Transactions;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import entities.ConsumerStorage;
+import entities.ConsumerStore;
+import entities.Distributor;
+import entities.EnergyType;
+import entities.Producer;
+import fileio.ConsumerInput;
+import fileio.DistributorInput;
+import fileio.ProducerInput;
+import strategies.ChooseProducersStrategy;
+import strategies.EnergyChoiceStrategyType;
+import strategies.StrategyFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Calibrates the execution plan of the simulation (see ExecutionPlan) on the machine it runs
+ * on, with a few micro-benchmarks, and keeps the calibration in a properties file, so that
+ * only the first run pays for it
+ * <p>
+ * The overhead of the pool is the time it takes to run a round of empty chunks on it. The
+ * cost of a unit of work of every phase is timed sequentially, over a small synthetic
+ * population: the salaries and the payments of a store of consumers, the costs of a list of
+ * distributors, the rankings of a list of producers by every strategy and the encoding of
+ * consumer records. Every benchmark is repeated after a few warm-up runs, and the median is
+ * kept; a calibration made for a pool of another parallelism is measured again. A pool of a
+ * single thread is not calibrated, nor is its plan saved, since every phase then runs
+ * sequentially anyway
+ */
+public final class PlanCalibration {
+    private static final String DEFAULT_FILE = ".energy-system-plan.properties";
+    private static final String PARALLELISM_KEY = "parallelism";
+    private static final String OVERHEAD_KEY = "overheadNanos";
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int WARM_UP_RUNS = 50;
+    private static final int RUNS = 31;
+    private static final int CONSUMERS = 1 << 15;
+    private static final int DISTRIBUTORS = 1 << 10;
+    private static final int CONTRACT_DISTRIBUTORS = 16;
+    private static final int PRODUCERS = 24;
+    private static final int RECORDS = 1 << 14;
+    private static final int CONTRACT_LENGTH = 1_000_000;
+    private static final int INITIAL_BUDGET = 1 << 24;
+    private static final int MAX_INFRASTRUCTURE_COST = 60;
+    private static final int MAX_INCOME = 80;
+    private static final int MAX_ENERGY = 1000;
+    private static final int MAX_PRODUCER_DISTRIBUTORS = 10;
+    private static final long SEED = 42;
+
+    private static volatile long sink;
+
+    private PlanCalibration() {
+    }
+
+    /**
+     * Get the default calibration file, in the directory of the output file of the simulation
+     *
+     * @param outputPath the output file of the simulation
+     */
+    public static String defaultPath(final String outputPath) {
+        return Paths.get(outputPath).toAbsolutePath().resolveSibling(DEFAULT_FILE).toString();
+    }
+
+    /**
+     * Loads the calibration of the given pool from a file, or measures it and saves it to the
+     * file if the file does not exist yet or was calibrated for another parallelism; the
+     * file is neither read nor written for a pool of a single thread, which is not calibrated
+     *
+     * @param path the calibration file
+     * @param pool the pool the parallel phases run on
+     * @return the execution plan
+     * @throws IOException in case the file cannot be read or written
+     */
+    public static ExecutionPlan loadOrMeasure(final String path, final ForkJoinPool pool)
+            throws IOException {
+        if (pool.getParallelism() == 1) {
+            return measure(pool);
+        }
+
+        Path file = Paths.get(path);
+        if (Files.exists(file)) {
+            ExecutionPlan plan = load(file, pool.getParallelism());
+            if (plan != null) {
+                return plan;
+            }
+        }
+
+        ExecutionPlan plan = measure(pool);
+        save(file, plan);
+        return plan;
+    }
+
+    /**
+     * Measures the calibration of the given pool
+     *
+     * @param pool the pool the parallel phases run on
+     * @return the execution plan
+     */
+    public static ExecutionPlan measure(final ForkJoinPool pool) {
+        double[] unitCosts = new double[ExecutionPlan.Phase.values().length];
+        if (pool.getParallelism() == 1) {
+            return new ExecutionPlan(1, 0, unitCosts, true);
+        }
+
+        ConsumerStore consumers = createConsumers();
+        Transactions transactions = new Transactions();
+        unitCosts[ExecutionPlan.Phase.SALARIES.ordinal()] =
+                median(() -> transactions.addSalaries(consumers)) / consumers.size();
+        unitCosts[ExecutionPlan.Phase.PAYMENTS.ordinal()] =
+                median(() -> transactions.payContracts(consumers)) / consumers.size();
+
+        List<Distributor> distributors = createDistributors(DISTRIBUTORS, new Random(SEED));
+        unitCosts[ExecutionPlan.Phase.DISTRIBUTOR_PAYMENTS.ordinal()] = median(() -> {
+            long costs = 0;
+            for (Distributor distributor : distributors) {
+                costs += Formulas.computeDistributorPayment(distributor);
+            }
+            sink = costs;
+        }) / DISTRIBUTORS;
+
+        List<Producer> producers = createProducers();
+        List<ChooseProducersStrategy> strategies = new ArrayList<>();
+        for (EnergyChoiceStrategyType type : EnergyChoiceStrategyType.values()) {
+            strategies.add(StrategyFactory.getInstance().createStrategy(type));
+        }
+        unitCosts[ExecutionPlan.Phase.PRODUCER_SELECTION.ordinal()] = median(() -> {
+            for (ChooseProducersStrategy strategy : strategies) {
+                sink = strategy.rank(producers).get(0).getId();
+            }
+        }) / ((double) PRODUCERS * strategies.size());
+
+        JsonFactory factory = new JsonFactory();
+        unitCosts[ExecutionPlan.Phase.OUTPUT.ordinal()] =
+                median(() -> encodeRecords(factory)) / RECORDS;
+
+        return new ExecutionPlan(pool.getParallelism(), median(() -> runEmptyChunks(pool)),
+                unitCosts, true);
+    }
+
+    private static ExecutionPlan load(final Path file, final int parallelism)
+            throws IOException {
+        Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(file)) {
+            properties.load(input);
+        }
+        if (!String.valueOf(parallelism).equals(properties.getProperty(PARALLELISM_KEY))
+                || properties.getProperty(OVERHEAD_KEY) == null) {
+            return null;
+        }
+
+        double[] unitCosts = new double[ExecutionPlan.Phase.values().length];
+        for (ExecutionPlan.Phase phase : ExecutionPlan.Phase.values()) {
+            String unitCost = properties.getProperty(phase.name());
+            if (unitCost == null) {
+                return null;
+            }
+            unitCosts[phase.ordinal()] = Double.parseDouble(unitCost);
+        }
+        return new ExecutionPlan(parallelism,
+                Double.parseDouble(properties.getProperty(OVERHEAD_KEY)), unitCosts, false);
+    }
+
+    private static void save(final Path file, final ExecutionPlan plan) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(PARALLELISM_KEY, String.valueOf(plan.getParallelism()));
+        properties.setProperty(OVERHEAD_KEY, String.valueOf(plan.getOverheadNanos()));
+        for (ExecutionPlan.Phase phase : ExecutionPlan.Phase.values()) {
+            properties.setProperty(phase.name(), String.valueOf(plan.getUnitCostNanos(phase)));
+        }
+
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (OutputStream output = Files.newOutputStream(file)) {
+            properties.store(output, "Calibration of the execution plan");
+        }
+    }
+
+    /**
+     * Runs a benchmark a few times to warm up, then times it and returns its median time
+     */
+    private static double median(final Runnable benchmark) {
+        long[] times = new long[RUNS];
+        for (int run = -WARM_UP_RUNS; run < RUNS; run++) {
+            long start = System.nanoTime();
+            benchmark.run();
+            if (run >= 0) {
+                times[run] = System.nanoTime() - start;
+            }
+        }
+        Arrays.sort(times);
+        return times[RUNS / 2];
+    }
+
+    private static void runEmptyChunks(final ForkJoinPool pool) {
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[pool.getParallelism() * CHUNKS_PER_THREAD];
+        for (int chunk = 0; chunk < tasks.length; chunk++) {
+            tasks[chunk] = pool.submit(() -> { });
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+    }
+
+    private static void encodeRecords(final JsonFactory factory) {
+        try (JsonGenerator generator =
+                     factory.createGenerator(OutputStream.nullOutputStream(), JsonEncoding.UTF8)) {
+            generator.writeStartArray();
+            for (int id = 0; id < RECORDS; id++) {
+                generator.writeStartObject();
+                generator.writeNumberField("id", id);
+                generator.writeBooleanField("isBankrupt", false);
+                generator.writeNumberField("budget", INITIAL_BUDGET + id);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Creates a store of consumers rich enough to pay their contracts for the whole
+     * calibration, with contracts with distributors of different prices
+     */
+    private static ConsumerStore createConsumers() {
+        Random random = new Random(SEED);
+        List<Distributor> distributors = createDistributors(CONTRACT_DISTRIBUTORS, random);
+        ConsumerStore store = new ConsumerStore(distributors, ConsumerStorage.onHeap(), false);
+        for (int id = 0; id < CONSUMERS; id++) {
+            ConsumerInput input = new ConsumerInput();
+            input.setId(id);
+            input.setInitialBudget(INITIAL_BUDGET);
+            input.setMonthlyIncome(random.nextInt(MAX_INCOME));
+            store.add(input);
+            store.signContract(id, distributors.get(random.nextInt(CONTRACT_DISTRIBUTORS)));
+        }
+        return store;
+    }
+
+    private static List<Distributor> createDistributors(final int count, final Random random) {
+        List<Distributor> distributors = new ArrayList<>();
+        for (int id = 0; id < count; id++) {
+            DistributorInput input = new DistributorInput();
+            input.setId(id);
+            input.setContractLength(CONTRACT_LENGTH);
+            input.setInitialBudget(0);
+            input.setInitialInfrastructureCost(1 + random.nextInt(MAX_INFRASTRUCTURE_COST));
+            input.setEnergyNeededKW(0);
+            input.setProducerStrategy(EnergyChoiceStrategyType.GREEN);
+
+            Distributor distributor = new Distributor(input);
+            distributor.refreshPrices();
+            distributors.add(distributor);
+        }
+        return distributors;
+    }
+
+    private static List<Producer> createProducers() {
+        Random random = new Random(SEED);
+        EnergyType[] types = EnergyType.values();
+        List<Producer> producers = new ArrayList<>();
+        for (int id = 0; id < PRODUCERS; id++) {
+            ProducerInput input = new ProducerInput();
+            input.setId(id);
+            input.setEnergyType(types[random.nextInt(types.length)]);
+            input.setMaxDistributors(1 + random.nextInt(MAX_PRODUCER_DISTRIBUTORS));
+            input.setPriceKW(random.nextDouble());
+            input.setEnergyPerDistributor(1 + random.nextInt(MAX_ENERGY));
+            producers.add(new Producer(input));
+        }
+        return producers;
+    }
+}
@@ -0,0 +1,314 @@
+package simulation;
+
+import entities.ConsumerStorage;
+import fileio.SimulationInput;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Approximate mode of the simulation, which estimates the outcomes of the distributors (their
+ * final budgets and the months in which they go bankrupt) from weighted samples of the
+ * consumers, with confidence bounds
+ * <p>
+ * The simulation is run once for every replicate, each time over a sample of the consumers
+ * drawn with a different seed (see ConsumerSample). The estimate of a value is the mean of its
+ * replicates, bounded by a 95% confidence interval of Student's t distribution; the chance of
+ * a distributor going bankrupt is bounded by the Wilson score interval. When asked to, the
+ * exact simulation is run as well, and every estimate is compared with the exact value
+ */
+public final class SamplingEstimate {
+    /**
+     * Confidence level of the bounds
+     */
+    public static final double CONFIDENCE = 0.95;
+
+    private static final double[] T_QUANTILES = {
+        12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+        2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+        2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042,
+    };
+    private static final double Z_QUANTILE = 1.960;
+
+    private final InputSource inputSource;
+    private final int sampleRate;
+    private final int replicates;
+    private final long seed;
+    private ForkJoinPool pool;
+    private boolean exact;
+
+    /**
+     * @param inputSource opens the input of the simulation, once for every run
+     * @param sampleRate  the number of consumers of a stratum for every consumer drawn
+     * @param replicates  the number of samples simulated
+     * @param seed        the seed of the first sample; the next ones follow it
+     */
+    public SamplingEstimate(final InputSource inputSource, final int sampleRate,
+                            final int replicates, final long seed) {
+        if (replicates < 1) {
+            throw new IllegalArgumentException("Invalid number of replicates: " + replicates);
+        }
+        this.inputSource = inputSource;
+        this.sampleRate = sampleRate;
+        this.replicates = replicates;
+        this.seed = seed;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getReplicates() {
+        return replicates;
+    }
+
+    /**
+     * Makes every run of the simulation run its transactions in parallel, on the given pool
+     *
+     * @param transactionsPool the pool the transactions run on
+     */
+    public void runTransactionsIn(final ForkJoinPool transactionsPool) {
+        pool = transactionsPool;
+    }
+
+    /**
+     * Makes the estimate also run the exact simulation and compare its outcomes with the
+     * estimated ones
+     */
+    public void compareWithExact() {
+        exact = true;
+    }
+
+    /**
+     * Runs the replicates, and the exact simulation if asked to, and estimates the outcome of
+     * every distributor
+     *
+     * @return the estimates, by the index of the distributors
+     * @throws IOException in case the input cannot be read
+     */
+    public List<DistributorEstimate> run() throws IOException {
+        List<DistributorOutcomes> outcomes = new ArrayList<>();
+        for (int replicate = 0; replicate < replicates; replicate++) {
+            outcomes.add(simulate(new ConsumerSample(sampleRate, seed + replicate)));
+        }
+        DistributorOutcomes exactOutcomes = exact ? simulate(null) : null;
+
+        List<DistributorEstimate> estimates = new ArrayList<>();
+        int distributors = outcomes.get(0).getNumberOfDistributors();
+        double[] budgets = new double[replicates];
+        double[] bankruptcyMonths = new double[replicates];
+        for (int i = 0; i < distributors; i++) {
+            int bankruptcies = 0;
+            for (int replicate = 0; replicate < replicates; replicate++) {
+                DistributorOutcomes outcome = outcomes.get(replicate);
+                budgets[replicate] = outcome.getBudget(i);
+                if (outcome.getBankruptcyMonth(i) != DistributorOutcomes.NOT_BANKRUPT) {
+                    bankruptcyMonths[bankruptcies++] = outcome.getBankruptcyMonth(i);
+                }
+            }
+
+            DistributorEstimate estimate = new DistributorEstimate(i,
+                    meanInterval(budgets, replicates),
+                    proportionInterval(bankruptcies, replicates),
+                    bankruptcies == 0 ? null : meanInterval(bankruptcyMonths, bankruptcies));
+            if (exactOutcomes != null) {
+                estimate.setExact(exactOutcomes.getBudget(i), exactOutcomes.getBankruptcyMonth(i));
+            }
+            estimates.add(estimate);
+        }
+        return estimates;
+    }
+
+    /**
+     * Runs the simulation over a sample of the consumers, or over all of them
+     *
+     * @param sample the sample, or null for the exact simulation
+     * @return the outcomes of the distributors
+     */
+    private DistributorOutcomes simulate(final ConsumerSample sample) throws IOException {
+        DistributorOutcomes outcomes = new DistributorOutcomes();
+        try (SimulationInput input = inputSource.open()) {
+            MonthlySimulation simulation = sample == null
+                    ? new MonthlySimulation(input, ConsumerStorage.onHeap())
+                    : new MonthlySimulation(input, sample);
+            if (pool != null) {
+                simulation.runTransactionsIn(pool);
+            }
+            simulation.addTurnListener(outcomes);
+            simulation.start();
+        }
+        return outcomes;
+    }
+
+    /**
+     * Bounds the mean of the given values by the confidence interval of Student's t
+     * distribution; a single value has no bounds
+     */
+    private static Interval meanInterval(final double[] values, final int count) {
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += values[i];
+        }
+        double mean = sum / count;
+        if (count == 1) {
+            return new Interval(mean, Double.NaN, Double.NaN);
+        }
+
+        double squares = 0;
+        for (int i = 0; i < count; i++) {
+            squares += (values[i] - mean) * (values[i] - mean);
+        }
+        double standardError = Math.sqrt(squares / (count - 1) / count);
+        double halfWidth = tQuantile(count - 1) * standardError;
+        return new Interval(mean, mean - halfWidth, mean + halfWidth);
+    }
+
+    /**
+     * Bounds a proportion by the Wilson score interval
+     */
+    private static Interval proportionInterval(final int successes, final int trials) {
+        double proportion = (double) successes / trials;
+        double z2 = Z_QUANTILE * Z_QUANTILE;
+        double denominator = 1 + z2 / trials;
+        double center = (proportion + z2 / (2 * trials)) / denominator;
+        double halfWidth = Z_QUANTILE / denominator * Math.sqrt(
+                proportion * (1 - proportion) / trials + z2 / (2 * 2 * trials * trials));
+        return new Interval(proportion, Math.max(0, center - halfWidth),
+                Math.min(1, center + halfWidth));
+    }
+
+    private static double tQuantile(final int degreesOfFreedom) {
+        return degreesOfFreedom <= T_QUANTILES.length
+                ? T_QUANTILES[degreesOfFreedom - 1] : Z_QUANTILE;
+    }
+
+    /**
+     * Opens the input of the simulation
+     */
+    @FunctionalInterface
+    public interface InputSource {
+        /**
+         * Opens the input, from its start
+         *
+         * @return the input
+         * @throws IOException in case the input cannot be opened
+         */
+        SimulationInput open() throws IOException;
+    }
+
+    /**
+     * An estimated value and its confidence bounds, which are NaN when they cannot be
+     * computed
+     */
+    public static final class Interval {
+        private final double mean;
+        private final double lower;
+        private final double upper;
+
+        public Interval(final double mean, final double lower, final double upper) {
+            this.mean = mean;
+            this.lower = lower;
+            this.upper = upper;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public double getLower() {
+            return lower;
+        }
+
+        public double getUpper() {
+            return upper;
+        }
+
+        /**
+         * Checks whether or not the interval has bounds
+         */
+        public boolean hasBounds() {
+            return !Double.isNaN(lower);
+        }
+
+        /**
+         * Checks whether or not a value is within the bounds of the interval
+         *
+         * @return true if it is, false if it is not or if the interval has no bounds
+         */
+        public boolean contains(final double value) {
+            return hasBounds() && lower <= value && value <= upper;
+        }
+    }
+
+    /**
+     * The estimated outcome of a distributor: its final budget, the chance of it going
+     * bankrupt and the month it goes bankrupt in, and the exact outcome, when it is known
+     */
+    public static final class DistributorEstimate {
+        private final int index;
+        private final Interval budget;
+        private final Interval bankruptcyChance;
+        private final Interval bankruptcyMonth;
+        private boolean hasExact;
+        private int exactBudget;
+        private int exactBankruptcyMonth;
+
+        public DistributorEstimate(final int index, final Interval budget,
+                                   final Interval bankruptcyChance,
+                                   final Interval bankruptcyMonth) {
+            this.index = index;
+            this.budget = budget;
+            this.bankruptcyChance = bankruptcyChance;
+            this.bankruptcyMonth = bankruptcyMonth;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public Interval getBudget() {
+            return budget;
+        }
+
+        public Interval getBankruptcyChance() {
+            return bankruptcyChance;
+        }
+
+        /**
+         * Get the month the distributor goes bankrupt in, over the replicates in which it does
+         *
+         * @return the estimate, or null if the distributor never went bankrupt
+         */
+        public Interval getBankruptcyMonth() {
+            return bankruptcyMonth;
+        }
+
+        /**
+         * Checks whether or not the exact outcome of the distributor was simulated as well
+         */
+        public boolean hasExact() {
+            return hasExact;
+        }
+
+        public int getExactBudget() {
+            return exactBudget;
+        }
+
+        /**
+         * Get the month the distributor goes bankrupt in, in the exact simulation
+         *
+         * @return the month, or DistributorOutcomes.NOT_BANKRUPT
+         */
+        public int getExactBankruptcyMonth() {
+            return exactBankruptcyMonth;
+        }
+
+        void setExact(final int budgetValue, final int bankruptcyMonthValue) {
+            hasExact = true;
+            exactBudget = budgetValue;
+            exactBankruptcyMonth = bankruptcyMonthValue;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package simulation;
+
+import business.Transactions;
+import entities.ConsumerStorage;
+import entities.ConsumerStore;
+import entities.Distributor;
+import fileio.DistributorInput;
+import fileio.ShardChannel;
+import strategies.EnergyChoiceStrategyType;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Worker process of a sharded simulation, which keeps a shard of the consumers and runs their
+ * side of every round: the signing of the contracts, the salaries and the payments (see
+ * ShardedSimulation)
+ * <p>
+ * The distributors are replicas, which only keep the contracts of the shard: their prices are
+ * those sent by the coordinator, and their budgets are set to 0 at the start of every round,
+ * so that they add up the payments of the consumers of the shard, which are sent back to the
+ * coordinator along with the number of their contracts
+ */
+public final class ShardWorker {
+    private final ShardChannel channel;
+    private final int shard;
+    private final int shards;
+    private final Transactions transactions;
+    private List<Distributor> replicas;
+    private ConsumerStore store;
+
+    private ShardWorker(final ShardChannel channel, final int shard, final int shards) {
+        this.channel = channel;
+        this.shard = shard;
+        this.shards = shards;
+        transactions = new Transactions();
+    }
+
+    /**
+     * Connects to the coordinator and serves its messages until it shuts the worker down
+     *
+     * @param args the port of the coordinator on the loopback interface, the index of the
+     *             shard and the number of shards
+     * @throws IOException in case the connection with the coordinator fails
+     */
+    public static void main(final String[] args) throws IOException {
+        int port = Integer.parseInt(args[0]);
+        int shard = Integer.parseInt(args[1]);
+        int shards = Integer.parseInt(args[2]);
+
+        try (ShardChannel channel =
+                     new ShardChannel(new Socket(InetAddress.getLoopbackAddress(), port))) {
+            channel.sendHello(shard);
+            new ShardWorker(channel, shard, shards).serve();
+        }
+    }
+
+    private void serve() throws IOException {
+        while (true) {
+            int message = channel.readMessage();
+            switch (message) {
+                case ShardChannel.SETUP:
+                    setUp(channel.readSetup());
+                    break;
+                case ShardChannel.CONSUMERS:
+                    channel.readConsumers(store);
+                    break;
+                case ShardChannel.ROUND:
+                    runRound(channel.readInt(), channel.readInt(), channel.readInt());
+                    channel.sendTransactions(replicas);
+                    break;
+                case ShardChannel.END_OF_ROUND:
+                    endRound();
+                    channel.sendContractCounts(replicas);
+                    break;
+                case ShardChannel.RESULT:
+                    channel.sendResult(store, replicas, shard, shards);
+                    break;
+                case ShardChannel.SHUTDOWN:
+                    return;
+                default:
+                    throw new IOException("Unknown message: " + message);
+            }
+        }
+    }
+
+    private void setUp(final int[] contractLengths) {
+        replicas = new ArrayList<>(contractLengths.length);
+        for (int id = 0; id < contractLengths.length; id++) {
+            DistributorInput input = new DistributorInput();
+            input.setId(id);
+            input.setContractLength(contractLengths[id]);
+            input.setInitialBudget(0);
+            input.setInitialInfrastructureCost(0);
+            input.setEnergyNeededKW(0);
+            input.setProducerStrategy(EnergyChoiceStrategyType.GREEN);
+            replicas.add(new Distributor(input));
+        }
+        store = new ConsumerStore(replicas, ConsumerStorage.onHeap(), false);
+        store.recordSigningTurns();
+    }
+
+    /**
+     * Signs the contracts of the round with the given distributor, at the given price, then
+     * adds the salaries and makes the payments of the consumers of the shard
+     */
+    private void runRound(final int turn, final int distributor, final int price) {
+        for (Distributor replica : replicas) {
+            replica.setBudget(0);
+        }
+        if (distributor != ConsumerStore.NO_DISTRIBUTOR) {
+            Distributor replica = replicas.get(distributor);
+            replica.getContractsInfo().setContractPrice(price);
+            store.collectRenewals(replica, turn);
+            store.renewContracts(0, store.size());
+        }
+        transactions.addSalaries(store);
+        transactions.payContracts(store);
+    }
+
+    /**
+     * Removes the contracts of the distributors that went bankrupt in the round and, at the
+     * end of a month, those of the consumers that went bankrupt
+     */
+    private void endRound() throws IOException {
+        boolean endOfMonth = channel.readBoolean();
+        int bankruptcies = channel.readInt();
+        for (int i = 0; i < bankruptcies; i++) {
+            Distributor replica = replicas.get(channel.readInt());
+            replica.setBankrupt(true);
+            store.removeContractsOf(replica);
+        }
+        if (endOfMonth) {
+            store.removeBankruptConsumersContracts();
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package simulation;
+
+import business.Formulas;
+import business.Transactions;
+import entities.ConsumerStore;
+import entities.Distributor;
+import fileio.ConsumerInput;
+import fileio.ShardChannel;
+import fileio.SimulationInput;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Engine of a simulation whose consumers are split across worker processes on the same
+ * machine (see ShardWorker), which talk to this coordinator over loopback sockets (see
+ * ShardChannel)
+ * <p>
+ * The coordinator keeps the distributors and the producers, in a database whose consumer store
+ * stays empty: it applies the updates of every month, prices the distributors, chooses their
+ * producers and makes their payments. The consumers are dealt to the shards in turn, in the
+ * order they are added, and every worker runs the signing of the contracts, the salaries and
+ * the payments of its shard, all of them at the same time; it then sends back, for every
+ * distributor, the payments it received and the number of its contracts in the shard, which
+ * the coordinator adds up before the distributors make their payments. The distributors that
+ * go bankrupt are broadcast to the workers, which remove their contracts and, at the end of
+ * the month, those of the bankrupt consumers, and send back the contracts that are left
+ * <p>
+ * Every step is the one the single-process engine makes, over the same consumers in the same
+ * order, so the result is the same: the contracts of a distributor are merged from the shards
+ * by the month they were signed in and the order of their consumers (see ShardedOutputWriter)
+ */
+public final class ShardedSimulation implements ConsumerShards, Closeable {
+    private static final int INITIAL_ROUND = -1;
+    private static final int ACCEPT_TIMEOUT_MILLIS = 60_000;
+    private static final long EXIT_TIMEOUT_SECONDS = 10;
+
+    private final int numberOfTurns;
+    private final List<Process> workers;
+    private final ShardChannel[] channels;
+    private final ServerSocket serverSocket;
+    private final Transactions transactions;
+    private SimulationDatabase database;
+    private int addedConsumers;
+    private int[] credits;
+    private int[] contracts;
+    private boolean[] wasBankrupt;
+    private int[] bankruptcies;
+
+    /**
+     * Starts the worker processes, waits for them to connect and builds the database, whose
+     * initial consumers are sent to the shards
+     *
+     * @param input  the input of the simulation
+     * @param shards the number of worker processes
+     * @throws IOException in case a worker cannot be started or does not connect
+     */
+    public ShardedSimulation(final SimulationInput input, final int shards) throws IOException {
+        if (shards < 1) {
+            throw new IllegalArgumentException("Invalid number of shards: " + shards);
+        }
+        numberOfTurns = input.getNumberOfTurns();
+        workers = new ArrayList<>(shards);
+        channels = new ShardChannel[shards];
+        serverSocket = new ServerSocket(0, shards, InetAddress.getLoopbackAddress());
+        transactions = new Transactions();
+
+        try {
+            startWorkers();
+            for (ShardChannel channel : channels) {
+                channel.sendSetup(input.getInitialData().getDistributors());
+            }
+            database = new SimulationDatabase(input.getInitialData(), input, this);
+            database.reserveMonthlyStats(numberOfTurns);
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+
+        int size = database.getDistributors().size();
+        credits = new int[size];
+        contracts = new int[size];
+        wasBankrupt = new boolean[size];
+        bankruptcies = new int[size];
+    }
+
+    public SimulationDatabase getDatabase() {
+        return database;
+    }
+
+    /**
+     * Get the connections with the workers, by the index of their shards, which the result is
+     * read from (see ShardedOutputWriter)
+     */
+    public List<ShardChannel> getChannels() {
+        return Arrays.asList(channels);
+    }
+
+    /**
+     * Runs the initial round and the following months, the same way as MonthlySimulation
+     *
+     * @throws IOException in case the connection with a worker fails
+     */
+    public void start() throws IOException {
+        database.beginInitialRound();
+        runRound(INITIAL_ROUND, false);
+
+        for (int turn = 0; turn < numberOfTurns; turn++) {
+            if (database.beginMonth(turn)) {
+                return;
+            }
+            runRound(turn, true);
+            database.endOfMonthUpdates(turn);
+        }
+    }
+
+    /**
+     * Deals a batch of consumers to the shards, in turn, following those added before; they
+     * are sent along with the next round
+     */
+    @Override
+    public void addConsumers(final List<ConsumerInput> consumers) {
+        try {
+            for (int shard = 0; shard < channels.length; shard++) {
+                channels[shard].sendConsumers(consumers,
+                        Math.floorMod(shard - addedConsumers, channels.length), channels.length);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        addedConsumers = (addedConsumers + consumers.size()) % channels.length;
+    }
+
+    /**
+     * Runs the consumer side of a round on the shards, then makes the payments of the
+     * distributors and removes the contracts of those that went bankrupt from the shards
+     *
+     * @param turn       the current month, counted from 0, or -1 for the initial round
+     * @param endOfMonth whether or not the shards make the end of month updates
+     */
+    private void runRound(final int turn, final boolean endOfMonth) throws IOException {
+        List<Distributor> distributors = database.getDistributors();
+        Distributor renewalDistributor = database.getRenewalDistributor();
+        for (ShardChannel channel : channels) {
+            channel.sendRound(turn, renewalDistributor == null ? ConsumerStore.NO_DISTRIBUTOR
+                            : renewalDistributor.getId(), renewalDistributor == null ? 0
+                            : renewalDistributor.getContractsInfo().getContractPrice());
+        }
+
+        Arrays.fill(credits, 0);
+        Arrays.fill(contracts, 0);
+        for (ShardChannel channel : channels) {
+            channel.addTransactions(credits, contracts);
+        }
+        for (int i = 0; i < distributors.size(); i++) {
+            Distributor distributor = distributors.get(i);
+            distributor.setBudget(Formulas.computeNewBudgetOf(distributor, credits[i]));
+            distributor.getContractsInfo().setRemoteContracts(contracts[i]);
+            wasBankrupt[i] = distributor.getBankrupt();
+        }
+
+        transactions.distributorPayments(distributors, database.getConsumerStore());
+        int count = 0;
+        for (int i = 0; i < distributors.size(); i++) {
+            if (!wasBankrupt[i] && distributors.get(i).getBankrupt()) {
+                bankruptcies[count++] = i;
+            }
+        }
+
+        for (ShardChannel channel : channels) {
+            channel.sendEndOfRound(endOfMonth, bankruptcies, count);
+        }
+        Arrays.fill(contracts, 0);
+        for (ShardChannel channel : channels) {
+            channel.addContractCounts(contracts);
+        }
+        for (int i = 0; i < distributors.size(); i++) {
+            distributors.get(i).getContractsInfo().setRemoteContracts(contracts[i]);
+        }
+    }
+
+    private void startWorkers() throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        for (int shard = 0; shard < channels.length; shard++) {
+            workers.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    ShardWorker.class.getName(), String.valueOf(serverSocket.getLocalPort()),
+                    String.valueOf(shard), String.valueOf(channels.length))
+                    .inheritIO().start());
+        }
+
+        serverSocket.setSoTimeout(ACCEPT_TIMEOUT_MILLIS);
+        for (int i = 0; i < channels.length; i++) {
+            Socket socket = serverSocket.accept();
+            ShardChannel channel = new ShardChannel(socket);
+            int shard = channel.readHello();
+            if (shard < 0 || shard >= channels.length || channels[shard] != null) {
+                channel.close();
+                throw new IOException("Unexpected worker for shard " + shard);
+            }
+            channels[shard] = channel;
+        }
+    }
+
+    /**
+     * Shuts the workers down and waits for them to exit; those that do not are killed
+     */
+    @Override
+    public void close() throws IOException {
+        for (ShardChannel channel : channels) {
+            if (channel != null) {
+                try {
+                    channel.sendShutdown();
+                } catch (IOException e) {
+                    // the worker is already gone; it is killed below if it is still running
+                }
+                channel.close();
+            }
+        }
+        serverSocket.close();
+
+        for (Process worker : workers) {
+            try {
+                if (!worker.waitFor(EXIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    worker.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                worker.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package simulation;
 
+import business.ConsumerStage;
+import business.ExecutionPlan;
 import entities.Consumer;
+import entities.ConsumerStorage;
+import entities.ConsumerStore;
 import entities.Distributor;
 import entities.EnergyEntity;
 import entities.EnergyEntityFactory;
@@ -10,34 +14,119 @@ import fileio.DistributorChangesInput;
 import fileio.DistributorInput;
 import fileio.InitialDataInput;
 import fileio.MonthlyUpdateInput;
+import fileio.MonthlyUpdatesSource;
 import fileio.ProducerChangesInput;
 import fileio.ProducerInput;
+import strategies.ChooseProducersStrategy;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * The database of consumers, distributors and producers used for a single simulation
  * also contains information about the monthly updates
+ * <p>
+ * Consumers are kept in a ConsumerStore, as records of primitives either on the heap or off
+ * it (see ConsumerStorage); the distributors that are not bankrupt are also indexed by the
+ * price of their contracts (see DistributorPriceIndex)
+ * <p>
+ * Given a pool and an execution plan, the distributors whose producers have to be chosen again
+ * rank the producers on the pool, when there are enough of them; the producers are then
+ * chosen from the rankings in the order of the distributors, as they are sequentially
  */
 public final class SimulationDatabase {
-    private final List<Consumer> consumers;
+    private static final int INITIAL_ROUND = -1;
+
+    private final ConsumerStore consumers;
     private final List<Distributor> distributors;
     private final List<Producer> producers;
-    private final List<MonthlyUpdateInput> monthlyUpdates;
+    private final DistributorPriceIndex priceIndex;
+    private final MonthlyUpdatesSource monthlyUpdates;
+    private final ConsumerStage renewalStage;
+    private final ConsumerSample sample;
+    private final ConsumerShards shards;
+    private ForkJoinPool pool;
+    private ExecutionPlan plan;
+    private MonthlyUpdateInput currentMonthlyUpdate;
+    private MonthlyUpdateInput lookedAheadUpdate;
+    private int lookedAheadTurns;
+    private boolean changedEntities;
+    private boolean renewing;
 
     public SimulationDatabase(final InitialDataInput initialData,
-                              final List<MonthlyUpdateInput> monthlyUpdatesInput) {
-        consumers = new ArrayList<>();
+                              final MonthlyUpdatesSource monthlyUpdatesInput) {
+        this(initialData, monthlyUpdatesInput, ConsumerStorage.onHeap());
+    }
+
+    /**
+     * @param initialData         the consumers, distributors and producers of the simulation
+     * @param monthlyUpdatesInput the source of the monthly updates
+     * @param consumerStorage     the storage the records of the consumers are kept in
+     */
+    public SimulationDatabase(final InitialDataInput initialData,
+                              final MonthlyUpdatesSource monthlyUpdatesInput,
+                              final ConsumerStorage consumerStorage) {
+        this(initialData, monthlyUpdatesInput, consumerStorage, false);
+    }
+
+    /**
+     * @param initialData         the consumers, distributors and producers of the simulation
+     * @param monthlyUpdatesInput the source of the monthly updates
+     * @param consumerStorage     the storage the records of the consumers are kept in
+     * @param compressConsumers   whether or not the consumers whose state is identical share
+     *                            a row of the consumer store
+     */
+    public SimulationDatabase(final InitialDataInput initialData,
+                              final MonthlyUpdatesSource monthlyUpdatesInput,
+                              final ConsumerStorage consumerStorage,
+                              final boolean compressConsumers) {
+        this(initialData, monthlyUpdatesInput, consumerStorage, compressConsumers, null, null);
+    }
+
+    /**
+     * Creates the database of an approximate simulation, which only keeps a weighted sample
+     * of the consumers, in a compressed store on the heap
+     *
+     * @param initialData         the consumers, distributors and producers of the simulation
+     * @param monthlyUpdatesInput the source of the monthly updates
+     * @param sample              the sample the initial and the new consumers are drawn by
+     */
+    public SimulationDatabase(final InitialDataInput initialData,
+                              final MonthlyUpdatesSource monthlyUpdatesInput,
+                              final ConsumerSample sample) {
+        this(initialData, monthlyUpdatesInput, ConsumerStorage.onHeap(), true, sample, null);
+    }
+
+    /**
+     * Creates the database of the coordinator of a sharded simulation, which keeps the
+     * distributors and the producers, while the consumers are kept by the shards; the consumer
+     * store of the database stays empty, and the contracts of the distributors are counted by
+     * the shards (see Distributor.ContractsInfo.setRemoteContracts)
+     *
+     * @param initialData         the consumers, distributors and producers of the simulation
+     * @param monthlyUpdatesInput the source of the monthly updates
+     * @param shards              the shards the initial and the new consumers are added to
+     */
+    public SimulationDatabase(final InitialDataInput initialData,
+                              final MonthlyUpdatesSource monthlyUpdatesInput,
+                              final ConsumerShards shards) {
+        this(initialData, monthlyUpdatesInput, ConsumerStorage.onHeap(), false, null, shards);
+    }
+
+    private SimulationDatabase(final InitialDataInput initialData,
+                               final MonthlyUpdatesSource monthlyUpdatesInput,
+                               final ConsumerStorage consumerStorage,
+                               final boolean compressConsumers, final ConsumerSample sample,
+                               final ConsumerShards consumerShards) {
         distributors = new ArrayList<>();
         producers = new ArrayList<>();
+        consumers = new ConsumerStore(distributors, consumerStorage, compressConsumers);
+        this.sample = sample;
+        shards = consumerShards;
 
-        for (ConsumerInput consumerInput : initialData.getConsumers()) {
-            EnergyEntity entity = EnergyEntityFactory.getInstance()
-                    .createEnergyEntity(EnergyEntityFactory.EnergyEntityType.CONSUMER,
-                            consumerInput);
-            consumers.add((Consumer) entity);
-        }
+        addConsumers(initialData.getConsumers());
 
         for (DistributorInput distributorInput : initialData.getDistributors()) {
             EnergyEntity entity = EnergyEntityFactory.getInstance()
@@ -53,10 +142,17 @@ public final class SimulationDatabase {
             producers.add((Producer) entity);
         }
 
+        priceIndex = new DistributorPriceIndex(distributors);
         monthlyUpdates = monthlyUpdatesInput;
+        lookedAheadTurns = 0;
+        renewalStage = new RenewalStage();
     }
 
     public List<Consumer> getConsumers() {
+        return consumers.getConsumers();
+    }
+
+    public ConsumerStore getConsumerStore() {
         return consumers;
     }
 
@@ -68,104 +164,306 @@ public final class SimulationDatabase {
         return producers;
     }
 
-    private Distributor getDistributorById(final Integer id) {
-        return distributors.get(id);
+    public DistributorPriceIndex getPriceIndex() {
+        return priceIndex;
     }
 
-    private Producer getProducerById(final Integer id) {
-        return producers.get(id);
+    /**
+     * Makes room in every producer for the monthly stats of the given number of months
+     *
+     * @param months the number of months that will be simulated
+     */
+    public void reserveMonthlyStats(final int months) {
+        for (Producer producer : producers) {
+            producer.reserveMonthlyStats(months);
+        }
     }
 
-    private Distributor getOptimalDistributor() {
-        Distributor chosenDistributor = null;
-        int minimumPrice = Integer.MAX_VALUE;
-
-        for (Distributor distributor : distributors) {
-            Distributor.ContractsInfo contractsInfo = distributor.getContractsInfo();
+    /**
+     * Checks whether or not the updates of the last month added consumers or changed
+     * producers
+     * <p>
+     * Apart from the storage of the consumer store growing (see ConsumerStore.getGrowths), only
+     * such months make the database allocate: new consumers take new rows and the distributors
+     * of changed producers choose their producers again. In every other month the updates, the
+     * signing of contracts and the monthly stats work on primitives only
+     *
+     * @return true if the last month added consumers or changed producers, false otherwise
+     */
+    public boolean changedEntitiesLastMonth() {
+        return changedEntities;
+    }
 
-            if (!distributor.getBankrupt() && contractsInfo.getContractPrice() < minimumPrice) {
-                minimumPrice = contractsInfo.getContractPrice();
-                chosenDistributor = distributor;
+    /**
+     * Checks whether or not the distributors are settled: none of them has to choose its
+     * producers or reprice its contracts, no bankrupt one is left in the price index and
+     * there is a distributor for the consumers to sign contracts with
+     * <p>
+     * In the months that start with settled distributors and have no updates, the start and
+     * the end of month updates only add the monthly stats of the producers, unless consumers
+     * need new contracts or go bankrupt
+     *
+     * @return true if the distributors are settled, false otherwise
+     */
+    public boolean isSettled() {
+        for (int i = 0; i < distributors.size(); i++) {
+            Distributor distributor = distributors.get(i);
+            if (distributor.getBankrupt()) {
+                if (priceIndex.contains(i)) {
+                    return false;
+                }
+            } else if (distributor.needsRepricing()
+                    || distributor.getProducersInfo().getNeedToUpdateProducers()) {
+                return false;
             }
         }
-
-        return chosenDistributor;
+        return getOptimalDistributor() != null;
     }
 
-    private void signContractsWith(final Distributor distributor) {
-        for (Consumer consumer : consumers) {
-            if (consumer.getBankrupt()) {
-                continue;
+    /**
+     * Counts the months, starting with the given one, that have no updates (or only empty
+     * ones)
+     * <p>
+     * The updates are asked from the monthly updates source in order, until the first month
+     * with an update, which is kept for its start of month updates
+     *
+     * @param turn      the current month
+     * @param maxMonths the most months to count
+     * @return the number of months
+     */
+    public int countMonthsWithoutUpdates(final int turn, final int maxMonths) {
+        int months = 0;
+        while (months < maxMonths) {
+            int nextTurn = turn + months;
+            if (nextTurn >= lookedAheadTurns) {
+                lookedAheadUpdate = monthlyUpdates.getMonthlyUpdate(nextTurn);
+                lookedAheadTurns = nextTurn + 1;
             }
-            if (consumer.getContract() == null || consumer.getContract().ended()) {
-                consumer.signContractWith(distributor);
+            if (nextTurn == lookedAheadTurns - 1 && !isEmpty(lookedAheadUpdate)) {
+                break;
             }
+            months++;
         }
+        return months;
+    }
+
+    /**
+     * Applies the updates of the given months, which have to be quiescent: the distributors
+     * are settled (see isSettled), the months have no updates, and no consumer needs a new
+     * contract or goes bankrupt in them; only the monthly stats of the producers are added
+     *
+     * @param turn   the first month
+     * @param months the number of months
+     */
+    public void skipQuiescentMonths(final int turn, final int months) {
+        for (int month = turn; month < turn + months; month++) {
+            updateProducersMonthlyStats(month);
+        }
+        currentMonthlyUpdate = null;
+        changedEntities = false;
+    }
+
+    private static boolean isEmpty(final MonthlyUpdateInput update) {
+        return update == null || update.getNewConsumers().isEmpty()
+                && update.getDistributorChanges().isEmpty()
+                && update.getProducerChanges().isEmpty();
+    }
+
+    private MonthlyUpdateInput getMonthlyUpdate(final int turn) {
+        if (turn < lookedAheadTurns) {
+            return turn == lookedAheadTurns - 1 ? lookedAheadUpdate : null;
+        }
+        return monthlyUpdates.getMonthlyUpdate(turn);
+    }
+
+    private Distributor getDistributorById(final int id) {
+        return distributors.get(id);
+    }
+
+    private Producer getProducerById(final int id) {
+        return producers.get(id);
+    }
+
+    /**
+     * Get the distributor the consumers sign their contracts with in the current round, the
+     * one collectRenewals chose at the start of the round
+     *
+     * @return the distributor, or null if there is none to sign contracts with
+     */
+    public Distributor getRenewalDistributor() {
+        return renewing ? getOptimalDistributor() : null;
     }
 
-    private Boolean signContracts() {
+    private Distributor getOptimalDistributor() {
+        Distributor cheapest = priceIndex.cheapest();
+        // a price of Integer.MAX_VALUE has never been low enough to be chosen
+        if (cheapest == null
+                || cheapest.getContractsInfo().getContractPrice() == Integer.MAX_VALUE) {
+            return null;
+        }
+        return cheapest;
+    }
+
+    /**
+     * Collects the consumers that need new contracts with the optimal distributor, which are
+     * signed by the renewal stage
+     *
+     * @return true if there is no distributor to sign contracts with, false otherwise
+     */
+    private boolean collectRenewals(final int turn) {
         Distributor optimalDistributor = getOptimalDistributor();
-        if (optimalDistributor == null) {
-            return true;
+        renewing = optimalDistributor != null;
+        if (renewing) {
+            consumers.collectRenewals(optimalDistributor, turn);
         }
-        signContractsWith(optimalDistributor);
-        return false;
+        return !renewing;
     }
 
+    private void signContracts() {
+        if (renewing) {
+            consumers.renewContracts(0, consumers.size());
+        }
+    }
+
+    /**
+     * Reprices the distributors whose prices depend on something that changed and updates the
+     * price index with the new prices and with the distributors that went bankrupt
+     */
     private void refreshDistributorsPrices() {
-        distributors.forEach(Distributor::refreshPrices);
+        for (int i = 0; i < distributors.size(); i++) {
+            Distributor distributor = distributors.get(i);
+            if (distributor.refreshPrices()) {
+                priceIndex.priceChanged(i);
+            }
+            if (distributor.getBankrupt()) {
+                priceIndex.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Makes the distributors rank the producers on the given pool, when the plan chooses to
+     *
+     * @param selectionPool the pool the rankings run on
+     * @param executionPlan the plan that chooses whether the rankings run on the pool
+     */
+    public void rankProducersIn(final ForkJoinPool selectionPool,
+                                final ExecutionPlan executionPlan) {
+        pool = selectionPool;
+        plan = executionPlan;
     }
 
     private void chooseProducersForDistributors() {
-        for (Distributor distributor : distributors) {
+        List<List<Producer>> rankings = rankProducers();
+        int ranked = 0;
+        for (int i = 0; i < distributors.size(); i++) {
+            Distributor distributor = distributors.get(i);
             Distributor.ProducersInfo producersInfo = distributor.getProducersInfo();
 
             if (producersInfo.getNeedToUpdateProducers()) {
-                producersInfo.getProducersStrategy().chooseProducersFor(distributor, producers);
+                ChooseProducersStrategy strategy = producersInfo.getProducersStrategy();
+                if (rankings == null) {
+                    strategy.chooseProducersFor(distributor, producers);
+                } else {
+                    strategy.chooseFrom(distributor, rankings.get(ranked++));
+                }
                 producersInfo.setNeedToUpdateProducers(false);
             }
         }
     }
 
-    private void updateConsumersAndDistributors(final Integer turn) {
-        addNewConsumers(turn);
-        updateDistributorsCosts(turn);
+    /**
+     * Ranks the producers for every distributor whose producers have to be chosen again, on
+     * the pool, if the plan chooses to
+     *
+     * @return the rankings, in the order of the distributors, or null if the producers are to
+     *         be ranked sequentially, as they are chosen
+     */
+    private List<List<Producer>> rankProducers() {
+        if (plan == null) {
+            return null;
+        }
+        int dirty = 0;
+        for (int i = 0; i < distributors.size(); i++) {
+            if (distributors.get(i).getProducersInfo().getNeedToUpdateProducers()) {
+                dirty++;
+            }
+        }
+        if (dirty == 0 || !plan.choose(ExecutionPlan.Phase.PRODUCER_SELECTION,
+                (long) dirty * producers.size())) {
+            return null;
+        }
+
+        List<ForkJoinTask<List<Producer>>> tasks = new ArrayList<>(dirty);
+        for (int i = 0; i < distributors.size(); i++) {
+            Distributor.ProducersInfo producersInfo = distributors.get(i).getProducersInfo();
+            if (producersInfo.getNeedToUpdateProducers()) {
+                ChooseProducersStrategy strategy = producersInfo.getProducersStrategy();
+                tasks.add(pool.submit(() -> strategy.rank(producers)));
+            }
+        }
+        List<List<Producer>> rankings = new ArrayList<>(dirty);
+        for (ForkJoinTask<List<Producer>> task : tasks) {
+            rankings.add(task.join());
+        }
+        return rankings;
     }
 
-    private void addNewConsumers(final Integer turn) {
-        List<ConsumerInput> newConsumers = monthlyUpdates.get(turn).getNewConsumers();
+    private void updateConsumersAndDistributors() {
+        addNewConsumers();
+        updateDistributorsCosts();
+    }
 
-        for (ConsumerInput newConsumerInput : newConsumers) {
-            EnergyEntity entity = EnergyEntityFactory.getInstance()
-                    .createEnergyEntity(EnergyEntityFactory.EnergyEntityType.CONSUMER,
-                            newConsumerInput);
+    private void addNewConsumers() {
+        if (currentMonthlyUpdate == null) {
+            return;
+        }
+        addConsumers(currentMonthlyUpdate.getNewConsumers());
+    }
 
-            consumers.add((Consumer) entity);
+    private void addConsumers(final List<ConsumerInput> newConsumers) {
+        if (shards != null) {
+            shards.addConsumers(newConsumers);
+            return;
+        }
+        if (sample != null) {
+            sample.addTo(consumers, newConsumers);
+            return;
+        }
+        for (int i = 0; i < newConsumers.size(); i++) {
+            consumers.add(newConsumers.get(i));
         }
     }
 
-    private void updateDistributorsCosts(final Integer turn) {
-        List<DistributorChangesInput> distributorCostChanges
-                = monthlyUpdates.get(turn).getDistributorChanges();
+    private void updateDistributorsCosts() {
+        if (currentMonthlyUpdate != null) {
+            List<DistributorChangesInput> distributorCostChanges
+                    = currentMonthlyUpdate.getDistributorChanges();
 
-        for (DistributorChangesInput costChange : distributorCostChanges) {
-            Distributor distributor = getDistributorById(costChange.getId());
-            if (distributor == null) {
-                System.out.println("Invalid distributor id.");
-                System.exit(1);
-            }
+            for (int i = 0; i < distributorCostChanges.size(); i++) {
+                DistributorChangesInput costChange = distributorCostChanges.get(i);
+                Distributor distributor = getDistributorById(costChange.getId());
+                if (distributor == null) {
+                    System.out.println("Invalid distributor id.");
+                    System.exit(1);
+                }
 
-            distributor.getCosts().setInfrastructureCost(costChange.getInfrastructureCost());
+                distributor.getCosts().setInfrastructureCost(costChange.getInfrastructureCost());
+            }
         }
 
         refreshDistributorsPrices();
     }
 
-    private void updateProducersCosts(final Integer turn) {
+    private void updateProducersCosts() {
+        if (currentMonthlyUpdate == null) {
+            return;
+        }
         List<ProducerChangesInput> producerChanges
-                = monthlyUpdates.get(turn).getProducerChanges();
+                = currentMonthlyUpdate.getProducerChanges();
 
-        for (ProducerChangesInput costChange : producerChanges) {
+        for (int i = 0; i < producerChanges.size(); i++) {
+            ProducerChangesInput costChange = producerChanges.get(i);
             Producer producer = getProducerById(costChange.getId());
             if (producer == null) {
                 System.out.println("Invalid producer id.");
@@ -176,20 +474,23 @@ public final class SimulationDatabase {
         }
     }
 
-    private void updateProducersMonthlyStats(final Integer turn) {
-        for (Producer producer : producers) {
-            producer.addStatsRecord(turn + 1);
+    private void updateProducersMonthlyStats(final int turn) {
+        for (int i = 0; i < producers.size(); i++) {
+            producers.get(i).addStatsRecord(turn + 1);
         }
     }
 
     private void removeNewlyBankruptConsumersContracts() {
-        for (Consumer consumer : consumers) {
-            if (consumer.getBankrupt() && consumer.getContract() != null) {
-                Distributor distributor = consumer.getContract().getDistributor();
-                distributor.getContractsInfo().getContracts().remove(consumer.getContract());
-                consumer.setContract(null);
-            }
-        }
+        consumers.removeBankruptConsumersContracts();
+    }
+
+    /**
+     * Get the stage in which the consumers sign the contracts collected by beginInitialRound
+     * or beginMonth; the stage visits the rows in order, since signing a contract changes the
+     * contracts of the distributors
+     */
+    public ConsumerStage getRenewalStage() {
+        return renewalStage;
     }
 
     /**
@@ -199,22 +500,52 @@ public final class SimulationDatabase {
      * and contract price and the consumers sign their initial contracts
      */
     public void makeInitialUpdates() {
+        beginInitialRound();
+        signContracts();
+    }
+
+    /**
+     * Applies the updates of the start of the simulation, except for the signing of the
+     * contracts, which is left to the renewal stage (see getRenewalStage)
+     */
+    public void beginInitialRound() {
         chooseProducersForDistributors();
         refreshDistributorsPrices();
-        signContracts();
+        collectRenewals(INITIAL_ROUND);
     }
 
     /**
      * Apply the start of month updates, which consist of: adding new consumers, updating
      * distributors' costs and signing of new contracts by consumers
+     * <p>
+     * The updates of the month are requested from the monthly updates source here and are
+     * kept only until the end of the month; months without updates skip straight to
+     * refreshing the prices and signing the contracts
      *
      * @param turn the current month, used for gathering the right monthly updates
      * @return true if the simulation ends (when all distributors are bankrupt), false otherwise
      */
-    public Boolean startOfMonthUpdates(Integer turn) {
-        updateConsumersAndDistributors(turn);
+    public boolean startOfMonthUpdates(final int turn) {
+        boolean allDistributorsBankrupt = beginMonth(turn);
+        signContracts();
+        return allDistributorsBankrupt;
+    }
 
-        return signContracts();
+    /**
+     * Applies the start of month updates, except for the signing of the contracts, which is
+     * left to the renewal stage (see getRenewalStage)
+     *
+     * @param turn the current month, used for gathering the right monthly updates
+     * @return true if the simulation ends (when all distributors are bankrupt), false otherwise
+     */
+    public boolean beginMonth(final int turn) {
+        currentMonthlyUpdate = getMonthlyUpdate(turn);
+        changedEntities = currentMonthlyUpdate != null
+                && (!currentMonthlyUpdate.getNewConsumers().isEmpty()
+                || !currentMonthlyUpdate.getProducerChanges().isEmpty());
+        updateConsumersAndDistributors();
+
+        return collectRenewals(turn);
     }
 
     /**
@@ -222,13 +553,31 @@ public final class SimulationDatabase {
      * updating the energy given by producers, choosing producers for distributors whose producers
      * changed prices, adding a record to all producers for the current month
      *
-     * @param turn the current month, used to selecting the right monthly update and needed for
-     *             adding the monthly stats record to producers
+     * @param turn the current month, needed for adding the monthly stats record to producers
      */
-    public void endOfMonthUpdates(Integer turn) {
+    public void endOfMonthUpdates(final int turn) {
         removeNewlyBankruptConsumersContracts();
-        updateProducersCosts(turn);
+        updateProducersCosts();
         chooseProducersForDistributors();
         updateProducersMonthlyStats(turn);
+        currentMonthlyUpdate = null;
+    }
+
+    /**
+     * Signs the contracts collected at the start of the round, block after block of rows
+     */
+    private final class RenewalStage implements ConsumerStage {
+        @Override
+        public void run(final ConsumerStore consumerStore, final int chunk, final int from,
+                        final int to) {
+            if (renewing) {
+                consumerStore.renewContracts(from, to);
+            }
+        }
+
+        @Override
+        public boolean isOrdered() {
+            return true;
+        }
     }
 }
@@ -0,0 +1,161 @@
+package simulation;
+
+import entities.ConsumerStore;
+import entities.Distributor;
+import entities.Producer;
+import fileio.DeltaStreamWriter;
+import fileio.TurnDelta;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds what changed in the database during every month and hands the changes to a delta
+ * stream writer
+ * <p>
+ * The tracker keeps a snapshot of the state of every entity at the end of the previous month,
+ * in primitive arrays indexed by the position of the entity in the database (the index of the
+ * consumers, whatever row they share in a compressed store). A contract counts as changed
+ * when it is signed or removed; the monthly decrease of its remaining months is implied and
+ * not recorded
+ */
+public final class TurnDeltaTracker implements TurnListener {
+    private static final int NO_CONTRACT = -1;
+
+    private final DeltaStreamWriter writer;
+
+    private int knownConsumers;
+    private int[] consumerBudgets;
+    private boolean[] consumersBankrupt;
+    private int[] contractDistributors;
+    private int[] contractPrices;
+    private int[] contractRemainedMonths;
+
+    private int knownDistributors;
+    private int[] distributorBudgets;
+    private int[] distributorContractCosts;
+    private boolean[] distributorsBankrupt;
+
+    private int[][] producersDistributors;
+
+    public TurnDeltaTracker(final DeltaStreamWriter writer) {
+        this.writer = writer;
+        consumerBudgets = new int[0];
+        consumersBankrupt = new boolean[0];
+        contractDistributors = new int[0];
+        contractPrices = new int[0];
+        contractRemainedMonths = new int[0];
+        distributorBudgets = new int[0];
+        distributorContractCosts = new int[0];
+        distributorsBankrupt = new boolean[0];
+        producersDistributors = new int[0][];
+    }
+
+    @Override
+    public void turnEnded(final int month, final SimulationDatabase database) {
+        TurnDelta delta = new TurnDelta(month);
+        trackConsumers(database.getConsumerStore(), delta);
+        trackDistributors(database.getDistributors(), delta);
+        trackProducers(database.getProducers(), delta);
+        writer.submit(delta);
+    }
+
+    private void trackConsumers(final ConsumerStore consumers, final TurnDelta delta) {
+        int numberOfConsumers = consumers.getNumberOfConsumers();
+        if (numberOfConsumers > consumerBudgets.length) {
+            int capacity = Math.max(numberOfConsumers, consumerBudgets.length * 2);
+            consumerBudgets = Arrays.copyOf(consumerBudgets, capacity);
+            consumersBankrupt = Arrays.copyOf(consumersBankrupt, capacity);
+            contractDistributors = Arrays.copyOf(contractDistributors, capacity);
+            contractPrices = Arrays.copyOf(contractPrices, capacity);
+            contractRemainedMonths = Arrays.copyOf(contractRemainedMonths, capacity);
+        }
+
+        for (int i = 0; i < numberOfConsumers; i++) {
+            boolean known = i < knownConsumers;
+            int row = consumers.getConsumerRow(i);
+            int budget = consumers.getBudget(row);
+            boolean bankrupt = consumers.isBankrupt(row);
+
+            if (!known || budget != consumerBudgets[i] || bankrupt != consumersBankrupt[i]) {
+                delta.addConsumer(consumers.getConsumerId(i), budget, bankrupt);
+                consumerBudgets[i] = budget;
+                consumersBankrupt[i] = bankrupt;
+            }
+
+            trackContract(consumers, i, row, known, delta);
+        }
+        knownConsumers = numberOfConsumers;
+    }
+
+    private void trackContract(final ConsumerStore consumers, final int index, final int row,
+                               final boolean known, final TurnDelta delta) {
+        if (!consumers.hasContract(row)) {
+            if (known && contractDistributors[index] != NO_CONTRACT) {
+                delta.addRemovedContract(consumers.getConsumerId(index));
+            }
+            contractDistributors[index] = NO_CONTRACT;
+            return;
+        }
+
+        int distributorId = consumers.getDistributor(consumers.getContractDistributor(row))
+                .getId();
+        int price = consumers.getContractPrice(row);
+        int remainedMonths = consumers.getRemainedContractMonths(row);
+
+        if (!known || distributorId != contractDistributors[index]
+                || price != contractPrices[index]
+                || remainedMonths != contractRemainedMonths[index] - 1) {
+            delta.addContract(consumers.getConsumerId(index), distributorId, price,
+                    remainedMonths);
+        }
+        contractDistributors[index] = distributorId;
+        contractPrices[index] = price;
+        contractRemainedMonths[index] = remainedMonths;
+    }
+
+    private void trackDistributors(final List<Distributor> distributors, final TurnDelta delta) {
+        if (distributors.size() > distributorBudgets.length) {
+            distributorBudgets = Arrays.copyOf(distributorBudgets, distributors.size());
+            distributorContractCosts = Arrays.copyOf(distributorContractCosts,
+                    distributors.size());
+            distributorsBankrupt = Arrays.copyOf(distributorsBankrupt, distributors.size());
+        }
+
+        for (int i = 0; i < distributors.size(); i++) {
+            Distributor distributor = distributors.get(i);
+            int contractCost = distributor.getContractsInfo().getContractPrice();
+
+            if (i >= knownDistributors || distributor.getBudget() != distributorBudgets[i]
+                    || contractCost != distributorContractCosts[i]
+                    || distributor.getBankrupt() != distributorsBankrupt[i]) {
+                delta.addDistributor(distributor.getId(), distributor.getBudget(), contractCost,
+                        distributor.getBankrupt());
+                distributorBudgets[i] = distributor.getBudget();
+                distributorContractCosts[i] = contractCost;
+                distributorsBankrupt[i] = distributor.getBankrupt();
+            }
+        }
+        knownDistributors = distributors.size();
+    }
+
+    private void trackProducers(final List<Producer> producers, final TurnDelta delta) {
+        if (producers.size() > producersDistributors.length) {
+            producersDistributors = Arrays.copyOf(producersDistributors, producers.size());
+        }
+
+        for (int i = 0; i < producers.size(); i++) {
+            Producer producer = producers.get(i);
+            int[] distributorsIds = producer.getDistributorsInfo().getCurrentDistributors()
+                    .stream()
+                    .mapToInt(Distributor::getId)
+                    .sorted()
+                    .toArray();
+
+            if (!Arrays.equals(distributorsIds, producersDistributors[i])) {
+                delta.addProducer(producer.getId(), distributorsIds);
+                producersDistributors[i] = distributorsIds;
+            }
+        }
+    }
+}
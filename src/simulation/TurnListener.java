@@ -0,0 +1,14 @@
+package simulation;
+
+/**
+ * Listener notified by the simulation every time a month ends
+ */
+public interface TurnListener {
+    /**
+     * Called once the updates and transactions of a month are done
+     *
+     * @param month    the month that ended; the initial round is month 0
+     * @param database the database, in its state at the end of the month
+     */
+    void turnEnded(int month, SimulationDatabase database);
+}
@@ -22,31 +22,52 @@ public abstract class ChooseProducersStrategy {
      */
     public final void chooseProducersFor(final Distributor distributor,
                                          final List<Producer> producers) {
+        chooseFrom(distributor, rank(producers));
+    }
+
+    /**
+     * Sorts a copy of the list of producers by the criteria of the strategy; the ranking
+     * only reads the producers, so the rankings of several distributors may be made at once
+     * on different threads, before choosing from them in order (see chooseFrom)
+     *
+     * @param producers the list of producers currently in the database
+     * @return the sorted copy
+     */
+    public final List<Producer> rank(final List<Producer> producers) {
+        List<Producer> copyProducers =
+                new ArrayList<>(producers);
+        copyProducers.sort(this::compare);
+        return copyProducers;
+    }
+
+    /**
+     * Drops the producers of the distributor and selects the best producers of a ranking that
+     * give the necessary quantity of energy
+     *
+     * @param distributor the distributor to choose the list of producers for
+     * @param ranked      the producers, sorted by the strategy (see rank)
+     */
+    public final void chooseFrom(final Distributor distributor, final List<Producer> ranked) {
         Distributor.ProducersInfo producersInfo = distributor.getProducersInfo();
 
         for (Producer producer : producersInfo.getProducers()) {
             producer.deleteObserver(distributor);
-            producer.getDistributorsInfo().getCurrentDistributors().remove(distributor);
+            producer.getDistributorsInfo().removeDistributor(distributor);
         }
         producersInfo.getProducers().clear();
 
-        List<Producer> copyProducers =
-                new ArrayList<>(producers);
-        copyProducers.sort(this::compare);
-
         int currentEnergy = 0;
 
-        for (Producer producer : copyProducers) {
+        for (Producer producer : ranked) {
             Producer.DistributorsInfo distributorsInfo = producer.getDistributorsInfo();
 
-            if (distributorsInfo.getMaxDistributors()
-                    .equals(distributorsInfo.getCurrentDistributors().size())) {
+            if (distributorsInfo.isFull()) {
                 continue;
             }
 
             currentEnergy += producer.getEnergyInfo().getEnergyPerDistributor();
             producer.addObserver(distributor);
-            distributorsInfo.getCurrentDistributors().add(distributor);
+            distributorsInfo.addDistributor(distributor);
             producersInfo.getProducers().add(producer);
             if (currentEnergy > producersInfo.getEnergyNeededKW()) {
                 break;
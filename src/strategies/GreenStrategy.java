@@ -13,17 +13,19 @@ public final class GreenStrategy extends ChooseProducersStrategy {
 
         if (energyInfo1.getEnergyType().isRenewable()
                 && energyInfo2.getEnergyType().isRenewable()) {
-            if (energyInfo1.getPriceKW().equals(energyInfo2.getPriceKW())) {
+            int priceComparison =
+                    Double.compare(energyInfo1.getPriceKW(), energyInfo2.getPriceKW());
+            if (priceComparison == 0) {
                 if (energyInfo1.getEnergyPerDistributor()
-                        .equals(energyInfo2.getEnergyPerDistributor())) {
-                    return o1.getId().compareTo(o2.getId());
+                        == energyInfo2.getEnergyPerDistributor()) {
+                    return Integer.compare(o1.getId(), o2.getId());
                 }
 
-                return energyInfo2.getEnergyPerDistributor()
-                        .compareTo(energyInfo1.getEnergyPerDistributor());
+                return Integer.compare(energyInfo2.getEnergyPerDistributor(),
+                        energyInfo1.getEnergyPerDistributor());
             }
 
-            return energyInfo1.getPriceKW().compareTo(energyInfo2.getPriceKW());
+            return priceComparison;
         }
 
         if (energyInfo1.getEnergyType().isRenewable()) {
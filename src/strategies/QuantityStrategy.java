@@ -11,11 +11,11 @@ public final class QuantityStrategy extends ChooseProducersStrategy {
         Producer.EnergyInfo energyInfo1 = o1.getEnergyInfo();
         Producer.EnergyInfo energyInfo2 = o2.getEnergyInfo();
 
-        if (energyInfo1.getEnergyPerDistributor().equals(energyInfo2.getEnergyPerDistributor())) {
-            return o1.getId().compareTo(o2.getId());
+        if (energyInfo1.getEnergyPerDistributor() == energyInfo2.getEnergyPerDistributor()) {
+            return Integer.compare(o1.getId(), o2.getId());
         }
 
-        return energyInfo2.getEnergyPerDistributor()
-                .compareTo(energyInfo1.getEnergyPerDistributor());
+        return Integer.compare(energyInfo2.getEnergyPerDistributor(),
+                energyInfo1.getEnergyPerDistributor());
     }
 }